@@ -21,8 +21,11 @@
 
 package br.com.vexit.vexpersistence;
 
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
 import br.com.vexit.vexpersistence.dao.factory.ConcreteDAOFactory;
 import br.com.vexit.vexpersistence.dao.factory.DAOFactory;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import br.com.vexit.vexpersistence.namedquery.factory.ConcreteNamedQueryFactory;
 import br.com.vexit.vexpersistence.namedquery.factory.NamedQueryFactory;
 import br.com.vexit.vexpersistence.storedprocedure.factory.ConcreteStoredProcedureFactory;
@@ -98,7 +101,7 @@ import java.sql.Connection;
  *       .execStoredProcedure( "storedProcedureName", arg1, arg2 );
  * </pre></blockquote>
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see DAOFactory
  * @see NamedQueryFactory
@@ -112,9 +115,15 @@ public class LocalSessionFacade extends PersistentSessionFacade {
 
     private static LocalSessionFacade localSessionFacade;
     private static String aPersistenceUnitName;
+
+    private final PersistenceConnection persistenceConnection;
     
     private LocalSessionFacade() {
-        
+        this(null);
+    }
+
+    private LocalSessionFacade(PersistenceConnection persistenceConnection) {
+        this.persistenceConnection = persistenceConnection;
     }
     
     /**
@@ -141,6 +150,45 @@ public class LocalSessionFacade extends PersistentSessionFacade {
         return LocalSessionFacade.localSessionFacade;
     }
     
+    /**
+     * Retorna uma instância de uma {@link LocalSessionFacade <tt>LocalSessionFacade</tt>} 
+     * para operações persistentes sobre uma conexão informada.
+     * <p>
+     * Cada chamada retorna uma nova Façade vinculada à conexão, de forma que
+     * as Façades de tenants diferentes não interferem entre si.
+     *
+     * @return Uma {@link LocalSessionFacade <tt>LocalSessionFacade</tt>} para acesso a uma Factory Method.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static LocalSessionFacade getInstance(PersistenceConnection persistenceConnection) {
+
+        return new LocalSessionFacade(persistenceConnection);
+    }
+
+    /**
+     * Retorna a {@link PersistenceConnection <tt>conexão</tt>} corrente.
+     *
+     * @return Uma {@link PersistenceConnection <tt>PersistenceConnection</tt>}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private PersistenceConnection getPersistenceConnection() {
+
+        if (persistenceConnection != null) {
+            return persistenceConnection;
+        }
+
+        return PersistenceConnection.getInstance( LocalSessionFacade.aPersistenceUnitName );
+    }
+
     /**
      * Retorna uma instância de uma {@link DAOFactory <tt>Factory Method</tt>} para Data Access Objects.
      *
@@ -152,6 +200,10 @@ public class LocalSessionFacade extends PersistentSessionFacade {
      */
     public DAOFactory getDAOFactory() {
 
+        if (persistenceConnection != null) {
+            return ConcreteDAOFactory.getInstance( persistenceConnection );
+        }
+
         return ConcreteDAOFactory.getInstance( LocalSessionFacade.aPersistenceUnitName );
     }
 
@@ -166,6 +218,10 @@ public class LocalSessionFacade extends PersistentSessionFacade {
      */
     public NamedQueryFactory getNamedQueryFactory() {
 
+        if (persistenceConnection != null) {
+            return ConcreteNamedQueryFactory.getInstance( persistenceConnection );
+        }
+
         return ConcreteNamedQueryFactory.getInstance( LocalSessionFacade.aPersistenceUnitName );
     }
 
@@ -183,4 +239,29 @@ public class LocalSessionFacade extends PersistentSessionFacade {
         return ConcreteStoredProcedureFactory.getInstance( conn );
     }
 
-}
\ No newline at end of file
+    /**
+     * Retorna uma instância de uma {@link StoredProcedureFactory <tt>Factory Method</tt>} para Stored Procedures
+     * cujas conexões são obtidas do pool de conexões da Persistence Unit.
+     *
+     * @return Uma Factory Method para Stored Procedures.
+     *
+     * @throws VexPersistenceException
+     *         Se a Persistence Unit não utilizar o pool de conexões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public StoredProcedureFactory getStoredProcedureFactory() {
+
+        ConnectionPool pool = getPersistenceConnection().getConnectionPool();
+
+        if (pool == null) {
+            throw new VexPersistenceException("Pool de conexões não configurado para a conexão corrente.");
+        }
+
+        return ConcreteStoredProcedureFactory.getInstance( pool );
+    }
+
+}
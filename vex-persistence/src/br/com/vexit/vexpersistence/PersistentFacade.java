@@ -23,15 +23,27 @@ package br.com.vexit.vexpersistence;
 
 import br.com.vexit.vexpersistence.conn.LocalPersistenceConnection;
 import br.com.vexit.vexpersistence.conn.PersistenceConnection;
+import br.com.vexit.vexpersistence.conn.ShutdownReport;
+import br.com.vexit.vexpersistence.conn.WarmUpReport;
 import br.com.vexit.vexpersistence.conn.factory.PersistenceConnectionFactory;
+import br.com.vexit.vexpersistence.conn.factory.TenantConnectionRouter;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 
 /**
  * <tt>PersistentFacade</tt> é uma classe abstrata que atua como fachada que
  * é responsável por fornecer acesso padrão nesta API.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see PersistentSessionFacade
  * @see PersistenceConnection
@@ -79,6 +91,58 @@ public abstract class PersistentFacade implements Serializable {
         return InjectedSessionFacade.getInstance( em );
     }
 
+    /**
+     * Retorna uma instância de uma {@link PersistentSessionFacade <tt>Façade</tt>} para operações persistentes
+     * sobre uma {@link PersistenceConnection <tt>conexão</tt>} informada.
+     *
+     * @return Uma {@link PersistentSessionFacade <tt>Façade</tt>} para operações persistentes.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static PersistentSessionFacade getInstance(PersistenceConnection persistenceConnection) {
+
+        return LocalSessionFacade.getInstance( persistenceConnection );
+    }
+
+    /**
+     * Retorna uma instância de uma {@link PersistentSessionFacade <tt>Façade</tt>} para operações persistentes
+     * sobre a conexão de um tenant.
+     * <p>
+     * A Façade mantém a conexão obtida do roteador de tenants. Se essa conexão
+     * for despejada, as operações passam a falhar e uma nova Façade deve ser
+     * obtida.
+     * <blockquote><pre>
+     *   Entity foo = PersistentFacade
+     *              .getInstance( PERSISTENCE_UNIT_NAME, "tenant" )
+     *              .getDAOFactory()
+     *              .createDAO()
+     *              .get( Entity.class, someValidObjectID );
+     * </pre></blockquote>
+     *
+     * @return Uma {@link PersistentSessionFacade <tt>Façade</tt>} para operações persistentes.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @see PersistenceConnectionFactory#getTenantConnectionRouter(String)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static PersistentSessionFacade getInstance(String persistenceUnitName, String tenant) {
+
+        return getInstance( PersistenceConnectionFactory.createPersistenceConnection(persistenceUnitName, tenant) );
+    }
+
     /**
      * Retorna uma instância de uma {@link LocalPersistenceConnection <tt>conexão local</tt>} para operações persistentes.
      * <p>
@@ -99,4 +163,193 @@ public abstract class PersistentFacade implements Serializable {
         return PersistenceConnectionFactory.createPersistenceConnection(persistenceUnitName);
     }
 
-}
\ No newline at end of file
+    /**
+     * Inicializa antecipadamente, em paralelo, as Persistence Units informadas.
+     * <p>
+     * Cada Persistence Unit tem a sua fábrica de conexão construída, as suas
+     * Named Queries validadas e a primeira conexão com a fonte de dados aberta,
+     * retirando esse custo da primeira requisição. As inicializações são
+     * executadas em um pool limitado ao número de processadores disponíveis.
+     * <blockquote><pre>
+     *   WarmUpReport report = PersistentFacade.warmUp( "unitA", "unitB" );
+     * </pre></blockquote>
+     *
+     * @return Um {@link WarmUpReport <tt>relatório</tt>} com o tempo de inicialização de cada Persistence Unit.
+     *
+     * @param persistenceUnitNames
+     *        Nomes de Persistence Units válidas para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static WarmUpReport warmUp(String ... persistenceUnitNames) {
+
+        WarmUpReport report = new WarmUpReport();
+
+        if (persistenceUnitNames.length == 0) {
+            return report;
+        }
+
+        long start = System.nanoTime();
+
+        int threads = Math.min(persistenceUnitNames.length, Runtime.getRuntime().availableProcessors());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+
+            List<Future<Long>> tasks = new ArrayList<Future<Long>>(persistenceUnitNames.length);
+
+            for (final String persistenceUnitName: persistenceUnitNames) {
+
+                tasks.add(executor.submit(new Callable<Long>() {
+
+                    public Long call() throws Exception {
+                        return PersistenceConnection.getInstance(persistenceUnitName).warmUp();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < persistenceUnitNames.length; i++) {
+
+                try {
+
+                    report.addTime(persistenceUnitNames[i], tasks.get(i).get());
+
+                } catch (ExecutionException e) {
+
+                    report.addFailure(persistenceUnitNames[i], e.getCause());
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+
+                    report.addFailure(persistenceUnitNames[i], e);
+                }
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        report.setTotalTime((System.nanoTime() - start) / 1000000L);
+
+        return report;
+    }
+
+    /**
+     * Inicia em segundo plano as conexões das Persistence Units informadas,
+     * retornando imediatamente.
+     * <p>
+     * A construção das fábricas de conexão deixa de acontecer na primeira
+     * requisição. O estado de cada conexão pode ser consultado através de
+     * {@link PersistenceConnection#isReady()} ou aguardado com
+     * {@link #awaitReady(long, TimeUnit, String...)}.
+     * <blockquote><pre>
+     *   PersistentFacade.startup( "unitA", "unitB" );
+     * </pre></blockquote>
+     *
+     * @param persistenceUnitNames
+     *        Nomes de Persistence Units válidas para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void startup(String ... persistenceUnitNames) {
+
+        for (String persistenceUnitName: persistenceUnitNames) {
+            PersistenceConnection.register(persistenceUnitName);
+        }
+    }
+
+    /**
+     * Aguarda, no máximo pelo tempo informado, as conexões das Persistence Units
+     * informadas ficarem prontas para uso.
+     *
+     * @param timeout
+     *        Tempo máximo de espera, compartilhado por todas as Persistence Units.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @param persistenceUnitNames
+     *        Nomes de Persistence Units válidas para operações persistentes.
+     *
+     * @throws br.com.vexit.vexpersistence.exception.VexPersistenceException
+     *         Se o tempo se esgotar ou se alguma conexão não puder ser iniciada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void awaitReady(long timeout, TimeUnit unit, String ... persistenceUnitNames) {
+
+        startup(persistenceUnitNames);
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (String persistenceUnitName: persistenceUnitNames) {
+            PersistenceConnection.getInstance(persistenceUnitName).awaitReady(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Desliga de forma coordenada todas as Persistence Units registradas,
+     * inclusive as conexões dos tenants.
+     * <p>
+     * Primeiro todas as conexões deixam de admitir novas sessões. Em seguida
+     * as transações em andamento são aguardadas até o prazo informado e, por
+     * fim, são fechadas as sessões mantidas para reutilização, as fábricas de
+     * conexão e as conexões JDBC ainda em uso.
+     * <blockquote><pre>
+     *   ShutdownReport report = PersistentFacade.shutdown( 30, TimeUnit.SECONDS );
+     * </pre></blockquote>
+     *
+     * @return Um {@link ShutdownReport <tt>relatório</tt>} com o que foi abortado em cada Persistence Unit.
+     *
+     * @param timeout
+     *        Tempo máximo de espera, compartilhado por todas as Persistence Units.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ShutdownReport shutdown(long timeout, TimeUnit unit) {
+
+        ShutdownReport report = new ShutdownReport();
+
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+
+        Collection<PersistenceConnection> connections = PersistenceConnection.getInstances();
+        Collection<TenantConnectionRouter> routers = PersistenceConnectionFactory.getTenantConnectionRouters();
+
+        // nenhuma conexão admite novas sessões enquanto as demais são aguardadas.
+        for (PersistenceConnection connection: connections) {
+            connection.drain();
+        }
+
+        for (TenantConnectionRouter router: routers) {
+            router.drain();
+        }
+
+        for (PersistenceConnection connection: connections) {
+            connection.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, report);
+        }
+
+        for (TenantConnectionRouter router: routers) {
+            router.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, report);
+        }
+
+        report.setTotalTime((System.nanoTime() - start) / 1000000L);
+
+        return report;
+    }
+
+}
@@ -22,6 +22,7 @@
 package br.com.vexit.vexpersistence;
 
 import br.com.vexit.vexpersistence.dao.factory.DAOFactory;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import br.com.vexit.vexpersistence.namedquery.factory.NamedQueryFactory;
 import br.com.vexit.vexpersistence.storedprocedure.factory.StoredProcedureFactory;
 import java.io.Serializable;
@@ -96,7 +97,7 @@ import java.sql.Connection;
  *       .execStoredProcedure( "storedProcedureName", arg1, arg2 );
  * </pre></blockquote>
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see DAOFactory
  * @see NamedQueryFactory
@@ -141,4 +142,22 @@ public abstract class PersistentSessionFacade implements Serializable {
      */
     public abstract StoredProcedureFactory getStoredProcedureFactory(Connection conn);
 
+    /**
+     * Retorna uma instância de uma {@link StoredProcedureFactory <tt>Factory Method</tt>} para Stored Procedures
+     * cujas conexões são obtidas do pool de conexões da Persistence Unit.
+     *
+     * @return Uma Factory Method para Stored Procedures.
+     *
+     * @throws VexPersistenceException
+     *         Se não houver pool de conexões disponível.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public StoredProcedureFactory getStoredProcedureFactory() {
+
+        throw new VexPersistenceException("Pool de conexões não disponível para esta sessão.");
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.cache;
+
+import java.io.Serializable;
+
+/**
+ * <tt>CacheStats</tt> é uma classe concreta responsável por manter uma
+ * fotografia das estatísticas de um {@link EntityCache <tt>cache de entidades</tt>}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see EntityCache#getStats()
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class CacheStats implements Serializable {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long invalidationCount;
+    private final int size;
+
+    /**
+     * Cria uma fotografia das estatísticas de um cache.
+     *
+     * @param hitCount
+     *        Leituras atendidas pelo cache.
+     *
+     * @param missCount
+     *        Leituras não atendidas pelo cache.
+     *
+     * @param putCount
+     *        Entidades armazenadas.
+     *
+     * @param evictionCount
+     *        Entidades descartadas pela política de capacidade.
+     *
+     * @param expirationCount
+     *        Entidades descartadas por expiração.
+     *
+     * @param invalidationCount
+     *        Entidades descartadas por escrita.
+     *
+     * @param size
+     *        Quantidade de entidades no cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CacheStats(long hitCount, long missCount, long putCount, long evictionCount, long expirationCount, long invalidationCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+    }
+
+    /**
+     * Retorna a quantidade de leituras atendidas pelo cache.
+     *
+     * @return Quantidade de acertos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Retorna a quantidade de leituras não atendidas pelo cache.
+     *
+     * @return Quantidade de falhas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Retorna a proporção de leituras atendidas pelo cache.
+     *
+     * @return Um valor entre 0 e 1.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public double getHitRate() {
+
+        long requests = hitCount + missCount;
+
+        return ( (requests == 0) ? 1.0 : ((double) hitCount / requests) );
+    }
+
+    /**
+     * Retorna a quantidade de entidades armazenadas no cache.
+     *
+     * @return Quantidade de inclusões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * Retorna a quantidade de entidades descartadas pela política de
+     * capacidade, incluindo as recusadas na admissão.
+     *
+     * @return Quantidade de descartes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Retorna a quantidade de entidades descartadas por expiração.
+     *
+     * @return Quantidade de expirações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Retorna a quantidade de entidades descartadas por escrita.
+     *
+     * @return Quantidade de invalidações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Retorna a quantidade de entidades no cache.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount
+                + ", evictions=" + evictionCount + ", expirations=" + expirationCount
+                + ", invalidations=" + invalidationCount + ", size=" + size + "]";
+    }
+
+}
@@ -0,0 +1,839 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.persistence.Entity;
+
+/**
+ * <tt>EntityCache</tt> é uma classe concreta responsável por manter em memória
+ * as entidades lidas por chave primária, evitando o acesso ao banco de dados
+ * nas leituras repetidas de entidades pouco alteradas, como as tabelas de
+ * domínio.
+ * <p>
+ * Somente as classes habilitadas através de {@link #enable(Class, long, TimeUnit)}
+ * são mantidas no cache, cada uma com o seu tempo de vida. As entradas são
+ * identificadas pela classe raiz da hierarquia de entidades e pela chave
+ * primária.
+ * <p>
+ * A capacidade é limitada pela política W-TinyLFU: as entidades novas entram
+ * em uma janela LRU pequena e, ao sair dela, só substituem a entidade menos
+ * recente da área principal se forem acessadas com mais frequência, o que
+ * protege as entidades populares de varreduras ocasionais.
+ * <p>
+ * As leituras não utilizam bloqueios: as entidades são consultadas em um
+ * mapa concorrente e os acessos são registrados em um buffer, aplicado à
+ * política de capacidade pela thread que obtiver o bloqueio. Acessos
+ * descartados com o buffer cheio apenas reduzem a precisão da política.
+ * <p>
+ * O cache mantém uma cópia serializada de cada entidade e cada leitura
+ * recebe uma nova instância, que pode ser alterada sem afetar as demais
+ * threads; alterações descartadas não chegam ao cache. Por isso somente
+ * entidades serializáveis são mantidas. As escritas feitas através dos DAOs locais
+ * invalidam as entradas correspondentes; as escritas feitas por outros meios,
+ * como Named Queries de atualização, só são refletidas após a expiração ou
+ * através de {@link #invalidateAll(Class)}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see CacheStats
+ * @see br.com.vexit.vexpersistence.conn.PersistenceConnection#getEntityCache()
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class EntityCache {
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int DRAIN_THRESHOLD = 32;
+
+    private final int maximumSize;
+    private final int windowSize;
+
+    // entradas agrupadas pela classe raiz da hierarquia de entidades.
+    private final ConcurrentMap<Class<?>, Region> regions = new ConcurrentHashMap<Class<?>, Region>();
+
+    // a política de capacidade só é acessada com o bloqueio obtido.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedHashMap<Key, Boolean> window = new LinkedHashMap<Key, Boolean>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Boolean> main = new LinkedHashMap<Key, Boolean>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final Queue<Key> readBuffer = new ConcurrentLinkedQueue<Key>();
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+
+    private final ConcurrentMap<Class<?>, Long> timeToLive = new ConcurrentHashMap<Class<?>, Long>();
+    private final ConcurrentMap<Class<?>, Class<?>> roots = new ConcurrentHashMap<Class<?>, Class<?>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong putCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Cria um cache com capacidade para a quantidade de entidades informada.
+     *
+     * @param maximumSize
+     *        Quantidade máxima de entidades mantidas no cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityCache(int maximumSize) {
+
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize: " + maximumSize);
+        }
+
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Habilita o cache das entidades de uma classe e das suas subclasses.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param ttl
+     *        Tempo de vida das entidades; zero para entidades que só deixam o
+     *        cache por capacidade ou escrita.
+     *
+     * @param unit
+     *        Unidade do tempo de vida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void enable(Class<?> clazz, long ttl, TimeUnit unit) {
+        timeToLive.put(clazz, Math.max(0L, unit.toNanos(ttl)));
+    }
+
+    /**
+     * Desabilita o cache das entidades de uma classe, descartando as
+     * entidades da classe já mantidas no cache.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void disable(Class<?> clazz) {
+
+        timeToLive.remove(clazz);
+
+        invalidateAll(clazz);
+    }
+
+    /**
+     * Informa se as entidades de uma classe são mantidas no cache.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @return true - As entidades da classe são mantidas no cache.
+     *         false - As entidades da classe não são mantidas no cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isCacheable(Class<?> clazz) {
+        return (getTimeToLive(clazz) >= 0);
+    }
+
+    /**
+     * Retorna uma entidade do cache, sem bloqueios.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @return A entidade ou <tt>null</tt> se a entidade não está no cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T> T get(Class<T> clazz, Object id) {
+
+        if ( (id == null) || (!isCacheable(clazz)) ) {
+            return null;
+        }
+
+        Key key = new Key(getRoot(clazz), id);
+
+        Map<Object, Entry> entries = region(key.root).entries;
+
+        Entry entry = entries.get(id);
+
+        if ( (entry != null) && entry.isExpired(System.nanoTime()) ) {
+
+            // a política descarta a chave ao processar o acesso registrado abaixo.
+            if (entries.remove(id, entry)) {
+                expirationCount.incrementAndGet();
+            }
+
+            entry = null;
+        }
+
+        recordRead(key);
+
+        Object value = ( ( (entry != null) && clazz.isAssignableFrom(entry.type) ) ? entry.copy() : null );
+
+        if (value == null) {
+
+            missCount.incrementAndGet();
+
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+
+        return clazz.cast(value);
+    }
+
+    /**
+     * Registra um acesso no buffer de leituras, aplicando o buffer à política
+     * de capacidade quando ele acumula acessos suficientes e o bloqueio está livre.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void recordRead(Key key) {
+
+        if (readBufferSize.incrementAndGet() > READ_BUFFER_SIZE) {
+
+            // buffer cheio: o acesso é descartado.
+            readBufferSize.decrementAndGet();
+
+        } else {
+
+            readBuffer.offer(key);
+        }
+
+        if ( (readBufferSize.get() >= DRAIN_THRESHOLD) && lock.tryLock() ) {
+
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Aplica os acessos registrados à frequência e à recência da política de
+     * capacidade. Deve ser chamado com o bloqueio obtido.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void drainReadBuffer() {
+
+        Key key;
+
+        while ((key = readBuffer.poll()) != null) {
+
+            readBufferSize.decrementAndGet();
+
+            sketch.increment(key);
+
+            if (!contains(key)) {
+
+                // entrada expirada ou invalidada fora do bloqueio.
+                window.remove(key);
+                main.remove(key);
+
+            } else if (window.get(key) == null) {
+
+                main.get(key);
+            }
+        }
+    }
+
+    /**
+     * Retorna a marca a ser informada em {@link #put(Class, Object, Object, long)}
+     * e que deve ser obtida antes da leitura da entidade no banco de dados.
+     * <p>
+     * As marcas são mantidas por hierarquia de entidades: somente as
+     * invalidações da mesma hierarquia recusam as leituras em andamento.
+     *
+     * @param clazz
+     *        Classe de entidade a ser lida.
+     *
+     * @return A marca corrente das invalidações da hierarquia da classe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long mark(Class<?> clazz) {
+        return region(getRoot(clazz)).sequence;
+    }
+
+    /**
+     * Armazena uma entidade lida do banco de dados.
+     * <p>
+     * A entidade é ignorada se alguma invalidação da sua hierarquia ocorreu
+     * após a obtenção da marca, pois a leitura pode ter sido feita antes de uma escrita
+     * concorrente. O cache armazena uma cópia serializada da entidade, e
+     * alterações posteriores na instância informada não o afetam.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @param entity
+     *        Entidade serializável lida do banco de dados, que não pode ser um proxy.
+     *
+     * @param mark
+     *        Marca obtida através de {@link #mark(Class)} antes da leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void put(Class<?> clazz, Object id, Object entity, long mark) {
+
+        long ttl = getTimeToLive(clazz);
+
+        if ( (id == null) || (!(entity instanceof Serializable)) || (ttl < 0) ) {
+            return;
+        }
+
+        byte[] state = Entry.serialize(entity);
+
+        // entidades com atributos não serializáveis não são mantidas.
+        if (state == null) {
+            return;
+        }
+
+        Key key = new Key(getRoot(clazz), id);
+
+        Entry entry = new Entry(entity.getClass(), state, ( (ttl == 0) ? Long.MAX_VALUE : System.nanoTime() + ttl ));
+
+        lock.lock();
+
+        try {
+
+            // a marca é comparada com o bloqueio obtido, como nas invalidações.
+            Region region = region(key.root);
+
+            if (mark != region.sequence) {
+                return;
+            }
+
+            drainReadBuffer();
+
+            putCount.incrementAndGet();
+
+            region.entries.put(id, entry);
+
+            if ( main.containsKey(key) || window.containsKey(key) ) {
+                return;
+            }
+
+            window.put(key, Boolean.TRUE);
+
+            if (window.size() > windowSize) {
+                admit();
+            }
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Transfere a entidade menos recente da janela para a área principal se
+     * ela for acessada com mais frequência que a vítima da área principal.
+     * Deve ser chamado com o bloqueio obtido.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void admit() {
+
+        Iterator<Key> candidates = window.keySet().iterator();
+
+        Key candidate = candidates.next();
+
+        candidates.remove();
+
+        // chave de uma entrada invalidada em conjunto: não disputa espaço.
+        if (!contains(candidate)) {
+            return;
+        }
+
+        Iterator<Key> victims = main.keySet().iterator();
+
+        // chaves de entradas já expiradas ou invalidadas liberam espaço sem disputa.
+        while ( (main.size() >= (maximumSize - windowSize)) && victims.hasNext() ) {
+
+            Key victim = victims.next();
+
+            if (contains(victim)) {
+
+                if (sketch.frequency(candidate) <= sketch.frequency(victim)) {
+
+                    remove(candidate);
+
+                    evictionCount.incrementAndGet();
+
+                    return;
+                }
+
+                remove(victim);
+
+                evictionCount.incrementAndGet();
+            }
+
+            victims.remove();
+        }
+
+        main.put(candidate, Boolean.TRUE);
+    }
+
+    /**
+     * Descarta uma entidade do cache.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void invalidate(Class<?> clazz, Object id) {
+
+        Key key = new Key(getRoot(clazz), id);
+
+        lock.lock();
+
+        try {
+
+            region(key.root).sequence++;
+
+            window.remove(key);
+            main.remove(key);
+
+            if (remove(key)) {
+                invalidationCount.incrementAndGet();
+            }
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Descarta todas as entidades de uma classe e das suas subclasses. Apenas
+     * as entradas da hierarquia da classe são percorridas; para a classe raiz
+     * as entradas são descartadas de uma só vez, e as suas chaves deixam a
+     * política de capacidade aos poucos.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void invalidateAll(Class<?> clazz) {
+
+        Class<?> root = getRoot(clazz);
+
+        // subclasses geradas para os proxies não são instâncias das entidades mantidas.
+        while ( (!clazz.isAnnotationPresent(Entity.class)) && (clazz != root) ) {
+            clazz = clazz.getSuperclass();
+        }
+
+        lock.lock();
+
+        try {
+
+            Region region = region(root);
+
+            region.sequence++;
+
+            if (clazz == root) {
+
+                invalidationCount.addAndGet(region.entries.size());
+
+                region.entries = new ConcurrentHashMap<Object, Entry>();
+
+                return;
+            }
+
+            for (Iterator<Map.Entry<Object, Entry>> i = region.entries.entrySet().iterator(); i.hasNext(); ) {
+
+                Map.Entry<Object, Entry> e = i.next();
+
+                if (clazz.isAssignableFrom(e.getValue().type)) {
+
+                    i.remove();
+
+                    Key key = new Key(root, e.getKey());
+
+                    window.remove(key);
+                    main.remove(key);
+
+                    invalidationCount.incrementAndGet();
+                }
+            }
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Descarta todas as entidades do cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void clear() {
+
+        lock.lock();
+
+        try {
+
+            for (Region region: regions.values()) {
+
+                region.sequence++;
+
+                invalidationCount.addAndGet(region.entries.size());
+
+                region.entries = new ConcurrentHashMap<Object, Entry>();
+            }
+
+            window.clear();
+            main.clear();
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retorna a quantidade de entidades no cache.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int size() {
+
+        int size = 0;
+
+        for (Region region: regions.values()) {
+            size += region.entries.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Retorna a quantidade máxima de entidades do cache.
+     *
+     * @return Capacidade do cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Retorna as estatísticas acumuladas do cache.
+     *
+     * @return Uma fotografia das estatísticas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hitCount.get(), missCount.get(), putCount.get(), evictionCount.get(), expirationCount.get(), invalidationCount.get(), size());
+    }
+
+    /**
+     * Retorna o tempo de vida, em nanossegundos, das entidades de uma classe,
+     * herdado da superclasse habilitada mais próxima.
+     *
+     * @return O tempo de vida ou -1 se a classe não é mantida no cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private long getTimeToLive(Class<?> clazz) {
+
+        for (Class<?> c = clazz; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            Long ttl = timeToLive.get(c);
+
+            if (ttl != null) {
+                return ttl.longValue();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Retorna a classe raiz da hierarquia de entidades de uma classe,
+     * desconsiderando as subclasses geradas para os proxies.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private Class<?> getRoot(Class<?> clazz) {
+
+        Class<?> root = roots.get(clazz);
+
+        if (root == null) {
+
+            root = clazz;
+
+            while ( (root.getSuperclass() != null)
+                    && ( root.getSuperclass().isAnnotationPresent(Entity.class) || (!root.isAnnotationPresent(Entity.class)) )
+                    && (root.getSuperclass() != Object.class) ) {
+
+                root = root.getSuperclass();
+            }
+
+            roots.put(clazz, root);
+        }
+
+        return root;
+    }
+
+    /**
+     * Retorna as entradas de uma hierarquia de entidades, criando-as se necessário.
+     */
+    private Region region(Class<?> root) {
+
+        Region region = regions.get(root);
+
+        if (region == null) {
+
+            region = new Region();
+
+            Region registered = regions.putIfAbsent(root, region);
+
+            if (registered != null) {
+                region = registered;
+            }
+        }
+
+        return region;
+    }
+
+    private boolean contains(Key key) {
+        return region(key.root).entries.containsKey(key.id);
+    }
+
+    private boolean remove(Key key) {
+        return (region(key.root).entries.remove(key.id) != null);
+    }
+
+    /**
+     * Entradas de uma hierarquia de entidades e a marca das suas invalidações,
+     * alterada somente com o bloqueio obtido.
+     */
+    private static final class Region {
+
+        private volatile ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+        private volatile long sequence;
+    }
+
+    /**
+     * Chave de uma entidade no cache.
+     */
+    private static final class Key {
+
+        private final Class<?> root;
+        private final Object id;
+
+        private Key(Class<?> root, Object id) {
+            this.root = root;
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * root.hashCode() + id.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+
+            return ( (root == k.root) && id.equals(k.id) );
+        }
+    }
+
+    /**
+     * Cópia serializada de uma entidade mantida no cache e o instante da sua expiração.
+     */
+    private static final class Entry {
+
+        private final Class<?> type;
+        private final byte[] state;
+        private final long expiresAt;
+
+        private Entry(Class<?> type, byte[] state, long expiresAt) {
+            this.type = type;
+            this.state = state;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return ( (expiresAt != Long.MAX_VALUE) && ((now - expiresAt) >= 0) );
+        }
+
+        /**
+         * Serializa uma entidade.
+         *
+         * @return O estado serializado ou <tt>null</tt> se a entidade não puder ser serializada.
+         */
+        private static byte[] serialize(Object entity) {
+
+            try {
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+                out.writeObject(entity);
+                out.close();
+
+                return bytes.toByteArray();
+
+            } catch (IOException e) {
+
+                return null;
+            }
+        }
+
+        /**
+         * Reconstrói uma nova instância da entidade, resolvendo as classes
+         * pelo class loader da entidade.
+         *
+         * @return A nova instância ou <tt>null</tt> se o estado não puder ser lido.
+         */
+        private Object copy() {
+
+            try {
+
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state)) {
+
+                    @Override
+                    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+
+                        ClassLoader loader = type.getClassLoader();
+
+                        if (loader == null) {
+                            return super.resolveClass(desc);
+                        }
+
+                        try {
+                            return Class.forName(desc.getName(), false, loader);
+                        } catch (ClassNotFoundException e) {
+                            return super.resolveClass(desc);
+                        }
+                    }
+                };
+
+                try {
+                    return in.readObject();
+                } finally {
+                    in.close();
+                }
+
+            } catch (IOException e) {
+
+                return null;
+
+            } catch (ClassNotFoundException e) {
+
+                return null;
+            }
+        }
+    }
+
+}
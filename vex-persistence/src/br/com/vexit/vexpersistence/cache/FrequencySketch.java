@@ -0,0 +1,185 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.cache;
+
+/**
+ * <tt>FrequencySketch</tt> é uma classe concreta responsável por estimar a
+ * frequência de acesso das chaves do {@link EntityCache <tt>cache de entidades</tt>}.
+ * <p>
+ * É um Count-Min Sketch com quatro contadores de 4 bits por chave. Quando a
+ * quantidade de incrementos atinge dez vezes a capacidade do cache todos os
+ * contadores são divididos por dois, de forma que a frequência reflita os
+ * acessos recentes.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see EntityCache
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * Cria um sketch dimensionado para a capacidade do cache.
+     *
+     * @param maximumSize
+     *        Quantidade máxima de entradas do cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    FrequencySketch(int maximumSize) {
+
+        int capacity = Math.max(maximumSize, 16);
+
+        int length = Integer.highestOneBit(capacity);
+
+        if (length < capacity) {
+            length <<= 1;
+        }
+
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    /**
+     * Retorna a frequência estimada de uma chave, entre 0 e 15.
+     *
+     * @param key
+     *        Chave do cache.
+     *
+     * @return A frequência estimada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    int frequency(Object key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        int frequency = 15;
+
+        for (int i = 0; i < 4; i++) {
+
+            int index = indexOf(hash, i);
+
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Incrementa a frequência de uma chave.
+     *
+     * @param key
+     *        Chave do cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void increment(Object key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if ( added && (++size == sampleSize) ) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+
+        int offset = counter << 2;
+
+        long mask = 0xfL << offset;
+
+        if ((table[index] & mask) != mask) {
+
+            table[index] += 1L << offset;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private void reset() {
+
+        int odd = 0;
+
+        for (int i = 0; i < table.length; i++) {
+
+            odd += Long.bitCount(table[i] & ONE_MASK);
+
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+
+        h += h >>> 32;
+
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+
+        return (x >>> 16) ^ x;
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.conn;
+
+/**
+ * <tt>AccessMode</tt> é uma enumeração responsável por definir a forma de
+ * acesso de um DAO ou de uma Named Query ao banco de dados.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see br.com.vexit.vexpersistence.dao.factory.DAOFactory#createDAO(AccessMode)
+ * @see br.com.vexit.vexpersistence.namedquery.factory.NamedQueryFactory#createNamedQuery(AccessMode)
+ * @see ReadOnlyTransaction
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public enum AccessMode {
+
+    /**
+     * Leituras e escritas.
+     */
+    READ_WRITE,
+
+    /**
+     * Somente leituras, feitas em transações somente leitura, sem
+     * <tt>flush</tt> automático e sem as cópias mantidas pela sessão para a
+     * verificação de alterações. As operações de escrita são recusadas.
+     */
+    READ_ONLY
+
+}
@@ -0,0 +1,784 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.conn;
+
+import br.com.vexit.vexpersistence.exception.CircuitBreakerOpenException;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+
+/**
+ * <tt>CircuitBreaker</tt> é uma classe concreta responsável por recusar
+ * rapidamente as operações de uma Persistence Unit enquanto a fonte de dados
+ * estiver indisponível.
+ * <p>
+ * O resultado das últimas operações é mantido em uma janela deslizante. Quando
+ * a taxa de falhas ou a taxa de operações lentas atinge o limite configurado o
+ * circuito é aberto e as operações de DAO, Named Query e Stored Procedure
+ * passam a ser recusadas com uma {@link CircuitBreakerOpenException}, sem
+ * acessar a fonte de dados. Após o tempo de abertura uma sondagem é executada
+ * em segundo plano (estado meio-aberto) e, se bem sucedida, fecha o circuito.
+ * As sondagens de Persistence Units distintas são executadas em paralelo, por
+ * um conjunto limitado de threads.
+ * Sem sondagem, uma única operação de teste é admitida no estado meio-aberto.
+ * <blockquote><pre>
+ *   LocalPersistenceConnection conn = (LocalPersistenceConnection) PersistenceConnection.getInstance( "unit" );
+ *
+ *   conn.enableCircuitBreaker().setOpenTimeout( 10000 );
+ * </pre></blockquote>
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see LocalPersistenceConnection#enableCircuitBreaker()
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class CircuitBreaker implements Serializable {
+
+    /**
+     * Estados de um circuit breaker.
+     */
+    public enum State {
+
+        /** As operações são admitidas e os seus resultados registrados. */
+        CLOSED,
+
+        /** As operações são recusadas. */
+        OPEN,
+
+        /** A fonte de dados está sendo sondada. */
+        HALF_OPEN
+    }
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private static final int MAX_PROBES = 4;
+
+    // agenda as sondagens, que são executadas pelo conjunto de threads abaixo.
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vexpersistence-breaker"));
+
+    private static final ThreadPoolExecutor probers = new ThreadPoolExecutor(MAX_PROBES, MAX_PROBES, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(64), new DaemonThreadFactory("vexpersistence-breaker-probe"));
+
+    private final String name;
+    private final Runnable probe;
+
+    private volatile int windowSize = 20;
+    private volatile int minimumCalls = 10;
+    private volatile int failureRateThreshold = 50;
+    private volatile long slowCallThreshold;
+    private volatile int slowCallRateThreshold = 100;
+    private volatile long openTimeout = 5000;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+
+    // janela deslizante: bit 0 indica falha e bit 1 indica lentidão.
+    private byte[] outcomes = new byte[windowSize];
+    private int index;
+    private int count;
+    private int failureCount;
+    private int slowCount;
+
+    private final AtomicBoolean trial = new AtomicBoolean();
+    private ScheduledFuture<?> pending;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+
+    /**
+     * Cria um circuit breaker sem sondagem em segundo plano.
+     *
+     * @param name
+     *        Nome da Persistence Unit protegida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CircuitBreaker(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Cria um circuit breaker com sondagem em segundo plano.
+     *
+     * @param name
+     *        Nome da Persistence Unit protegida.
+     *
+     * @param probe
+     *        Sondagem da fonte de dados; deve lançar uma exceção se a fonte
+     *        continuar indisponível.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CircuitBreaker(String name, Runnable probe) {
+        this.name = name;
+        this.probe = probe;
+    }
+
+    /**
+     * Registra um circuit breaker, tornando-o acessível pelo seu nome.
+     *
+     * @param breaker
+     *        Circuit breaker a ser registrado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void register(CircuitBreaker breaker) {
+        breakers.put(breaker.getName(), breaker);
+    }
+
+    /**
+     * Remove o registro de um circuit breaker e cancela a sua sondagem.
+     *
+     * @param breaker
+     *        Circuit breaker a ser removido.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void unregister(CircuitBreaker breaker) {
+
+        breakers.remove(breaker.getName(), breaker);
+
+        breaker.close();
+    }
+
+    /**
+     * Retorna o circuit breaker registrado com o nome informado.
+     *
+     * @param name
+     *        Nome da Persistence Unit protegida.
+     *
+     * @return Um circuit breaker ou <tt>null</tt> se não houver registro.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static CircuitBreaker lookup(String name) {
+        return ( (name != null) ? breakers.get(name) : null );
+    }
+
+    /**
+     * Solicita a admissão de uma operação.
+     *
+     * @return Instante, em nanossegundos, do início da operação.
+     *
+     * @throws CircuitBreakerOpenException
+     *         Se o circuito estiver aberto.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long acquire() throws CircuitBreakerOpenException {
+
+        State s = state;
+
+        if (s == State.CLOSED) {
+            return System.nanoTime();
+        }
+
+        // sem sondagem, uma única operação de teste é admitida após o tempo de abertura.
+        if (probe == null) {
+
+            if ( (s == State.OPEN) && ((System.currentTimeMillis() - openedAt) >= openTimeout) ) {
+                halfOpen();
+            }
+
+            if ( (state == State.HALF_OPEN) && trial.compareAndSet(false, true) ) {
+                return System.nanoTime();
+            }
+        }
+
+        rejectedCount.incrementAndGet();
+
+        throw new CircuitBreakerOpenException("O circuit breaker da Persistence Unit " + name + " está aberto");
+    }
+
+    /**
+     * Registra o sucesso de uma operação admitida.
+     *
+     * @param start
+     *        Instante retornado por {@link #acquire()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void success(long start) {
+        record(false, start);
+    }
+
+    /**
+     * Registra a falha de uma operação admitida. Exceções que não indicam
+     * indisponibilidade da fonte de dados são registradas como sucesso.
+     *
+     * @param start
+     *        Instante retornado por {@link #acquire()}.
+     *
+     * @param cause
+     *        Causa da falha.
+     *
+     * @see #isFailure(Throwable)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void failure(long start, Throwable cause) {
+        record(isFailure(cause), start);
+    }
+
+    /**
+     * Indica se uma exceção representa indisponibilidade da fonte de dados.
+     * <p>
+     * São consideradas falhas as exceções de persistência e de JDBC, exceto
+     * as que indicam erros de negócio (entidade inexistente ou duplicada,
+     * conflito de versão, resultado vazio ou não único) e as violações de
+     * dados, de restrições e de sintaxe SQL.
+     *
+     * @param cause
+     *        Exceção lançada pela operação.
+     *
+     * @return true se a exceção deve contar como falha.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    protected boolean isFailure(Throwable cause) {
+
+        boolean failure = false;
+
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+
+            if ( (t instanceof CircuitBreakerOpenException)
+                    || (t instanceof NoResultException)
+                    || (t instanceof NonUniqueResultException)
+                    || (t instanceof EntityExistsException)
+                    || (t instanceof EntityNotFoundException)
+                    || (t instanceof OptimisticLockException) ) {
+                return false;
+            }
+
+            if (t instanceof SQLException) {
+
+                String sqlState = ((SQLException) t).getSQLState();
+
+                // 22: dados inválidos, 23: violação de restrição, 42: sintaxe ou acesso.
+                if ( (sqlState != null) && (sqlState.startsWith("22") || sqlState.startsWith("23") || sqlState.startsWith("42")) ) {
+                    return false;
+                }
+
+                failure = true;
+            }
+
+            if (t instanceof PersistenceException) {
+                failure = true;
+            }
+
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+
+        return failure;
+    }
+
+    private synchronized void record(boolean failure, long start) {
+
+        boolean slow = (slowCallThreshold > 0) && (((System.nanoTime() - start) / 1000000L) >= slowCallThreshold);
+
+        if (state == State.HALF_OPEN) {
+
+            // com sondagem o estado é decidido por ela.
+            if (probe != null) {
+                return;
+            }
+
+            // resultado da operação de teste.
+            if (failure || slow) {
+                open();
+            } else {
+                close();
+            }
+
+            return;
+        }
+
+        // operações iniciadas antes da abertura do circuito são ignoradas.
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        if (count == outcomes.length) {
+
+            byte oldest = outcomes[index];
+
+            if ((oldest & 1) != 0) {
+                failureCount--;
+            }
+
+            if ((oldest & 2) != 0) {
+                slowCount--;
+            }
+
+        } else {
+
+            count++;
+        }
+
+        outcomes[index] = (byte) ( (failure ? 1 : 0) | (slow ? 2 : 0) );
+
+        index = (index + 1) % outcomes.length;
+
+        if (failure) {
+            failureCount++;
+        }
+
+        if (slow) {
+            slowCount++;
+        }
+
+        if (count >= minimumCalls) {
+
+            if ( ((failureCount * 100) >= (failureRateThreshold * count))
+                    || ((slowCallThreshold > 0) && ((slowCount * 100) >= (slowCallRateThreshold * count))) ) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Abre o circuito e agenda a sondagem da fonte de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void open() {
+
+        clear();
+
+        cancel();
+
+        openedAt = System.currentTimeMillis();
+
+        trial.set(false);
+
+        state = State.OPEN;
+
+        openCount.incrementAndGet();
+
+        if (probe != null) {
+            schedule();
+        }
+    }
+
+    /**
+     * Agenda a sondagem para o término do tempo de abertura. A sondagem é
+     * entregue ao conjunto de threads de sondagem, para que uma fonte de dados
+     * lenta não atrase as sondagens das demais.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private synchronized void schedule() {
+
+        pending = scheduler.schedule(new Runnable() {
+
+            public void run() {
+
+                try {
+
+                    probers.execute(new Runnable() {
+
+                        public void run() {
+                            probe();
+                        }
+                    });
+
+                } catch (RejectedExecutionException e) {
+
+                    // sondagens demais em andamento: nova tentativa após o tempo de abertura.
+                    synchronized (CircuitBreaker.this) {
+                        if (state == State.OPEN) {
+                            schedule();
+                        }
+                    }
+                }
+            }
+        }, Math.max(1, openTimeout), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fecha o circuito, descartando os resultados registrados e cancelando uma
+     * sondagem agendada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void close() {
+
+        clear();
+
+        cancel();
+
+        state = State.CLOSED;
+    }
+
+    private synchronized void halfOpen() {
+
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+        }
+    }
+
+    private void probe() {
+
+        synchronized (this) {
+
+            if (state != State.OPEN) {
+                return;
+            }
+
+            pending = null;
+
+            state = State.HALF_OPEN;
+        }
+
+        try {
+
+            probe.run();
+
+            synchronized (this) {
+                if (state == State.HALF_OPEN) {
+                    close();
+                }
+            }
+
+        } catch (Throwable e) {
+
+            // inclusive erros: o circuito não pode permanecer meio-aberto sem sondagem.
+            synchronized (this) {
+                if (state == State.HALF_OPEN) {
+                    open();
+                }
+            }
+        }
+    }
+
+    private void cancel() {
+
+        if (pending != null) {
+            pending.cancel(false);
+
+            pending = null;
+        }
+    }
+
+    private void clear() {
+
+        if (outcomes.length != windowSize) {
+            outcomes = new byte[windowSize];
+        }
+
+        index = 0;
+        count = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+
+    /**
+     * Retorna o nome da Persistence Unit protegida.
+     *
+     * @return Nome da Persistence Unit.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retorna o estado do circuito.
+     *
+     * @return Estado do circuito.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Retorna a quantidade de operações recusadas.
+     *
+     * @return Quantidade de operações recusadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Retorna a quantidade de vezes em que o circuito foi aberto.
+     *
+     * @return Quantidade de aberturas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * Retorna a quantidade de operações mantidas na janela deslizante.
+     *
+     * @return Tamanho da janela.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Define a quantidade de operações mantidas na janela deslizante. Aplicada
+     * na próxima mudança de estado.
+     *
+     * @param windowSize
+     *        Tamanho da janela.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * Retorna a quantidade mínima de operações registradas antes de avaliar as taxas.
+     *
+     * @return Quantidade mínima de operações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Define a quantidade mínima de operações registradas antes de avaliar as taxas.
+     *
+     * @param minimumCalls
+     *        Quantidade mínima de operações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = Math.max(1, minimumCalls);
+    }
+
+    /**
+     * Retorna a taxa de falhas, em percentual, que abre o circuito.
+     *
+     * @return Taxa de falhas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Define a taxa de falhas, em percentual, que abre o circuito.
+     *
+     * @param failureRateThreshold
+     *        Taxa de falhas entre 1 e 100.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = Math.min(100, Math.max(1, failureRateThreshold));
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, a partir do qual uma operação é considerada lenta.
+     *
+     * @return Tempo em milissegundos ou zero se a lentidão não for avaliada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getSlowCallThreshold() {
+        return slowCallThreshold;
+    }
+
+    /**
+     * Define o tempo, em milissegundos, a partir do qual uma operação é
+     * considerada lenta. Com o valor zero (padrão) a lentidão não é avaliada.
+     *
+     * @param slowCallThreshold
+     *        Tempo em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setSlowCallThreshold(long slowCallThreshold) {
+        this.slowCallThreshold = Math.max(0, slowCallThreshold);
+    }
+
+    /**
+     * Retorna a taxa de operações lentas, em percentual, que abre o circuito.
+     *
+     * @return Taxa de operações lentas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Define a taxa de operações lentas, em percentual, que abre o circuito.
+     *
+     * @param slowCallRateThreshold
+     *        Taxa de operações lentas entre 1 e 100.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = Math.min(100, Math.max(1, slowCallRateThreshold));
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, em que o circuito permanece aberto
+     * antes da sondagem.
+     *
+     * @return Tempo em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getOpenTimeout() {
+        return openTimeout;
+    }
+
+    /**
+     * Define o tempo, em milissegundos, em que o circuito permanece aberto
+     * antes da sondagem.
+     *
+     * @param openTimeout
+     *        Tempo em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setOpenTimeout(long openTimeout) {
+        this.openTimeout = Math.max(0, openTimeout);
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[name=" + name + ", state=" + state + ", rejected=" + rejectedCount.get() + ", opened=" + openCount.get() + "]";
+    }
+
+    /**
+     * Cria as threads de sondagem como daemons, que não impedem o término da aplicação.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+
+            Thread t = new Thread(r, name);
+
+            t.setDaemon(true);
+
+            return t;
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * <tt>EntityManagerPool</tt> é uma classe concreta responsável por manter
+ * instâncias de {@link EntityManager <tt>EntityManager</tt>} para reutilização
+ * por sessões de curta duração de uma mesma Persistence Unit.
+ * <p>
+ * Uma EntityManager devolvida ao pool tem a sua transação cancelada, se ativa,
+ * e o seu contexto de persistência limpo antes de ser reutilizada. O pool é
+ * limitado: as instâncias devolvidas além da capacidade são fechadas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see LocalPersistenceConnection#setEntityManagerPoolSize(int)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class EntityManagerPool {
+
+    private final EntityManagerFactory emf;
+    private final int maxSize;
+
+    private final ConcurrentLinkedQueue<EntityManager> idle = new ConcurrentLinkedQueue<EntityManager>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Cria um pool de EntityManagers para uma fábrica de conexão.
+     *
+     * @param emf
+     *        Fábrica de conexão da Persistence Unit.
+     *
+     * @param maxSize
+     *        Quantidade máxima de EntityManagers mantidas no pool.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManagerPool(EntityManagerFactory emf, int maxSize) {
+        this.emf = emf;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Retorna uma {@link EntityManager <tt>EntityManager</tt>} do pool ou uma
+     * nova instância se não houver nenhuma disponível.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager borrow() {
+
+        EntityManager em;
+
+        while ( (em = idle.poll()) != null ) {
+
+            size.decrementAndGet();
+
+            if (em.isOpen()) {
+                hits.incrementAndGet();
+
+                return em;
+            }
+        }
+
+        misses.incrementAndGet();
+
+        return emf.createEntityManager();
+    }
+
+    /**
+     * Devolve uma {@link EntityManager <tt>EntityManager</tt>} ao pool,
+     * cancelando a sua transação ativa e limpando o seu contexto de persistência.
+     *
+     * @param em
+     *        EntityManager obtida através de {@link #borrow()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void release(EntityManager em) {
+
+        if ( (em == null) || (!em.isOpen()) ) {
+            return;
+        }
+
+        try {
+
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+
+            em.clear();
+
+        } catch (RuntimeException e) {
+
+            em.close();
+
+            return;
+        }
+
+        if (!closed) {
+
+            if (size.incrementAndGet() <= maxSize) {
+
+                idle.offer(em);
+
+                // o pool pode ter sido fechado durante a devolução.
+                if (closed) {
+                    close();
+                }
+
+                return;
+            }
+
+            size.decrementAndGet();
+        }
+
+        em.close();
+    }
+
+    /**
+     * Fecha todas as EntityManagers mantidas no pool.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void close() {
+
+        closed = true;
+
+        EntityManager em;
+
+        while ( (em = idle.poll()) != null ) {
+
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Retorna a quantidade de EntityManagers disponíveis no pool.
+     *
+     * @return Quantidade de EntityManagers disponíveis.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Retorna a quantidade de EntityManagers reaproveitadas do pool.
+     *
+     * @return Quantidade de EntityManagers reaproveitadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Retorna a quantidade de EntityManagers criadas por falta de instâncias no pool.
+     *
+     * @return Quantidade de EntityManagers criadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
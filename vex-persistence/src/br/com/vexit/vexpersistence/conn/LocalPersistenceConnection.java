@@ -21,6 +21,24 @@
 
 package br.com.vexit.vexpersistence.conn;
 
+import br.com.vexit.vexpersistence.cache.EntityCache;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
@@ -31,7 +49,7 @@ import javax.persistence.Persistence;
  * conexão se der como recurso local, ou seja, quando a conexão não foi obtida
  * através de Dependency Injection.
  *
- * @version 1.4.3, 28/10/09
+ * @version 1.5, 17/10/26
  * 
  * @see PersistentFacade
  * 
@@ -40,131 +58,1279 @@ import javax.persistence.Persistence;
  * @author Roberto Vezzoni
  */
 public class LocalPersistenceConnection extends PersistenceConnection {
+
+    /**
+     * Estados de inicialização de uma conexão local.
+     */
+    public enum State {
+
+        /** A fábrica de conexão ainda não foi construída. */
+        NEW,
+
+        /** A fábrica de conexão está sendo construída. */
+        STARTING,
+
+        /** A fábrica de conexão está pronta para uso. */
+        READY,
+
+        /** A última tentativa de construir a fábrica de conexão falhou. */
+        FAILED,
+
+        /** A conexão foi desligada e não pode mais ser utilizada. */
+        CLOSED
+    }
+
+    private static final ExecutorService bootstrapExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        public Thread newThread(Runnable r) {
+
+            Thread t = new Thread(r, "vexpersistence-bootstrap");
+
+            t.setDaemon(true);
+
+            return t;
+        }
+    });
     
     private String persistenceUnitName;
+
+    private Map<String, String> properties;
     
-    private EntityManagerFactory emf;
-    private EntityManager em;
+    private volatile EntityManagerFactory emf;
+    private volatile FutureTask<EntityManagerFactory> bootstrap;
+    private volatile Throwable failure;
+
+    private volatile SessionScope scope = new ThreadSessionScope();
+
+    private volatile int entityManagerPoolSize;
+    private volatile EntityManagerPool entityManagerPool;
+
+    private volatile long bootstrapTime = -1;
+
+    private volatile CircuitBreaker breaker;
+
+    private volatile EntityCache entityCache;
+
+    private volatile boolean draining;
+    private volatile boolean closed;
+    private final ConcurrentMap<EntityManager, Boolean> transactions = new ConcurrentHashMap<EntityManager, Boolean>();
+
+    private final ThreadLocal<int[]> unitOfWork = new ThreadLocal<int[]>();
+
+    // invalidações do cache adiadas até o término da unidade de trabalho: {classe, chave primária}.
+    private final ThreadLocal<List<Object[]>> invalidations = new ThreadLocal<List<Object[]>>();
     
     /**
      * Creates a new instance of PersistenceConnection
      */
     public LocalPersistenceConnection(String persistenceUnitName) {
+        this(persistenceUnitName, null);
+    }
+
+    /**
+     * Cria uma conexão local para uma Persistence Unit, sobrescrevendo
+     * propriedades declaradas no arquivo <tt>persistence.xml</tt>.
+     * <p>
+     * A propriedade {@link ConnectionPool#UNIT} identifica o pool de conexões
+     * desta conexão e, se omitida, assume o nome da Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param properties
+     *        Propriedades que sobrescrevem as da Persistence Unit.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public LocalPersistenceConnection(String persistenceUnitName, Map<String, String> properties) {
+
         this.persistenceUnitName = persistenceUnitName;
+
+        this.properties = new HashMap<String, String>();
+
+        if (properties != null) {
+            this.properties.putAll(properties);
+        }
+
+        if (!this.properties.containsKey(ConnectionPool.UNIT)) {
+            this.properties.put(ConnectionPool.UNIT, persistenceUnitName);
+        }
     }
     
     /**
      * Inicia uma conexão com a fonte de dados.
+     * <p>
+     * A fábrica de conexão é construída uma única vez por Persistence Unit e
+     * reaproveitada até que {@link #shutdown()} seja chamado.
+     *
+     * @return EntityManagerFactory.
      *
      * @since  1.0
      *
      * @author Roberto Vezzoni
      */
-    private void init() {
-        
+    private EntityManagerFactory init() {
+
+        long start = System.nanoTime();
+
+        // inicialização da conexão com a fonte de dados.
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory( persistenceUnitName, properties );
+
+        synchronized (this) {
+
+            bootstrapTime = (System.nanoTime() - start) / 1000000L;
+
+            if (entityManagerPoolSize > 0) {
+                entityManagerPool = new EntityManagerPool(factory, entityManagerPoolSize);
+            }
+
+            failure = null;
+
+            emf = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * Retorna a tarefa de construção da fábrica de conexão, criando-a se necessário.
+     *
+     * @return A tarefa de construção da fábrica de conexão.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private synchronized FutureTask<EntityManagerFactory> getBootstrap() {
+
+        // uma conexão desligada não reconstrói a fábrica de conexão.
+        checkOpen();
+
+        if (bootstrap == null) {
+
+            bootstrap = new FutureTask<EntityManagerFactory>(new Callable<EntityManagerFactory>() {
+
+                public EntityManagerFactory call() throws Exception {
+
+                    try {
+
+                        return init();
+
+                    } catch (RuntimeException e) {
+
+                        failure = e;
+
+                        throw e;
+                    }
+                }
+            });
+        }
+
+        return bootstrap;
+    }
+
+    /**
+     * Aguarda a conclusão da tarefa de construção da fábrica de conexão.
+     * Em caso de falha a tarefa é descartada, permitindo uma nova tentativa.
+     *
+     * @return EntityManagerFactory.
+     *
+     * @param task
+     *        Tarefa de construção da fábrica de conexão.
+     *
+     * @param timeout
+     *        Tempo máximo de espera em nanossegundos; um valor negativo indica espera sem limite.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private EntityManagerFactory await(FutureTask<EntityManagerFactory> task, long timeout) throws VexPersistenceException {
+
         try {
-            
-            // inicialização da conexão com a fonte de dados.
-            emf = Persistence.createEntityManagerFactory( persistenceUnitName );
 
-        } catch (Throwable t) {
+            if (timeout < 0) {
+                return task.get();
+            }
 
-            t.printStackTrace();
+            return task.get(timeout, TimeUnit.NANOSECONDS);
 
-            emf = null;
+        } catch (ExecutionException e) {
+
+            synchronized (this) {
+
+                failure = e.getCause();
+
+                if (bootstrap == task) {
+                    bootstrap = null;
+                }
+            }
+
+            throw new VexPersistenceException("Não foi possível iniciar a Persistence Unit " + persistenceUnitName, e.getCause());
+
+        } catch (TimeoutException e) {
+
+            throw new VexPersistenceException("Tempo esgotado aguardando a Persistence Unit " + persistenceUnitName, e);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new VexPersistenceException("Interrompido aguardando a Persistence Unit " + persistenceUnitName, e);
         }
     }
-    
+
     /**
-     * Retorna uma instância de uma {@link EntityManager <tt>EntityManager</tt>} 
-     * responsável por disponibilizar operações sobre banco de dados.
+     * Retorna a {@link EntityManagerFactory <tt>fábrica de conexão</tt>} da
+     * Persistence Unit, construindo-a na primeira chamada.
+     * <p>
+     * Se a construção já tiver sido iniciada em segundo plano, aguarda a sua conclusão.
      *
-     * @return EntityManager.
+     * @return EntityManagerFactory.
      *
-     * @since  1.0
+     * @throws VexPersistenceException
+     *         Se a fábrica não puder ser construída.
+     *
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public EntityManager getEntityManager() {
-        
+    public EntityManagerFactory getEntityManagerFactory() throws VexPersistenceException {
+
+        EntityManagerFactory factory = emf;
+
+        if (factory != null) {
+            return factory;
+        }
+
+        FutureTask<EntityManagerFactory> task = getBootstrap();
+
+        // executa a construção na thread corrente, se ainda não foi iniciada.
+        task.run();
+
+        return await(task, -1);
+    }
+
+    /**
+     * Inicia em segundo plano a construção da fábrica de conexão, retornando
+     * imediatamente.
+     *
+     * @see #isReady()
+     * @see #awaitReady(long, TimeUnit)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void startup() {
+        startup(bootstrapExecutor);
+    }
+
+    /**
+     * Inicia a construção da fábrica de conexão através de um executor,
+     * retornando imediatamente.
+     *
+     * @param executor
+     *        Executor responsável pela construção.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void startup(Executor executor) {
+
+        checkOpen();
+
+        draining = false;
+
         if (emf == null) {
-            init();
+            executor.execute(getBootstrap());
         }
+    }
 
-        if ( (emf != null) && ( (em == null) || (!em.isOpen()) ) ) {
-            em = emf.createEntityManager();
-            emf.close();
+    /**
+     * Indica se a fábrica de conexão está pronta para uso.
+     *
+     * @return true se a fábrica de conexão estiver pronta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public boolean isReady() {
+        return (emf != null);
+    }
+
+    /**
+     * Aguarda, no máximo pelo tempo informado, a fábrica de conexão ficar
+     * pronta para uso, iniciando a sua construção em segundo plano se necessário.
+     *
+     * @param timeout
+     *        Tempo máximo de espera.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @throws VexPersistenceException
+     *         Se o tempo se esgotar ou se a fábrica não puder ser construída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void awaitReady(long timeout, TimeUnit unit) throws VexPersistenceException {
+
+        if (emf != null) {
+            return;
         }
 
-        return em;
+        FutureTask<EntityManagerFactory> task = getBootstrap();
+
+        bootstrapExecutor.execute(task);
+
+        await(task, Math.max(0, unit.toNanos(timeout)));
     }
-    
+
     /**
-     * Fecha a instância ativa de uma {@link EntityManager <tt>EntityManager</tt>} 
-     * responsável por disponibilizar operações sobre banco de dados.
+     * Retorna o estado de inicialização da conexão.
      *
-     * @return EntityManager.
+     * @return Estado de inicialização.
      *
-     * @since  1.1
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public void closeEntityManager() {
-        if (em.isOpen()) {
-            em.close();
+    public synchronized State getState() {
+
+        if (closed) {
+            return State.CLOSED;
+        }
+
+        if (emf != null) {
+            return State.READY;
+        }
+
+        if ( (bootstrap != null) && (!bootstrap.isDone()) ) {
+            return State.STARTING;
+        }
+
+        if (failure != null) {
+            return State.FAILED;
         }
+
+        return State.NEW;
     }
-    
+
     /**
-     * Inicia uma transação com o banco de dados corrente.
+     * Retorna a causa da última falha na construção da fábrica de conexão.
      *
-     * @since  1.0
+     * @return Causa da falha ou <tt>null</tt> se não houve falha.
+     *
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public void startTransaction() {
-        getEntityManager().getTransaction().begin();
+    public Throwable getFailure() {
+        return failure;
     }
-    
+
     /**
-     * Confirma uma transação já iniciada com o banco de dados corrente.
+     * Define o {@link EntityCache <tt>cache de entidades</tt>} consultado nas
+     * leituras por chave primária dos DAOs da conexão.
      *
-     * @since  1.0
+     * @param entityCache
+     *        Um cache de entidades ou <tt>null</tt> para desabilitar o cache.
+     *
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public void commit() {
-        if (getEntityManager().getTransaction().isActive()) {
-            getEntityManager().getTransaction().commit();
-        }
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
     }
-    
+
     /**
-     * Cancela uma transação já iniciada com o banco de dados corrente.
+     * Retorna o {@link EntityCache <tt>cache de entidades</tt>} da conexão.
      *
-     * @since  1.0
+     * @return Um cache de entidades ou <tt>null</tt> se a conexão não mantém cache.
+     *
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public void rollback() {
-        // cancela uma transação iniciada com o banco de dados corrente.
-        if (getEntityManager().getTransaction().isActive()) {
-            getEntityManager().getTransaction().rollback();
+    @Override
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Protege a conexão com um {@link CircuitBreaker <tt>circuit breaker</tt>},
+     * criando-o se necessário. A sondagem do circuito aberto é feita através
+     * de {@link #warmUp()}, que também reconstrói a fábrica de conexão se a
+     * sua construção falhou.
+     * <p>
+     * O circuit breaker é registrado com o nome do pool de conexões da
+     * conexão, protegendo também as Stored Procedures executadas nesse pool.
+     *
+     * @return O circuit breaker da conexão.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized CircuitBreaker enableCircuitBreaker() {
+
+        if (breaker == null) {
+
+            CircuitBreaker b = new CircuitBreaker(properties.get(ConnectionPool.UNIT), new Runnable() {
+
+                public void run() {
+                    warmUp();
+                }
+            });
+
+            CircuitBreaker.register(b);
+
+            breaker = b;
         }
+
+        return breaker;
     }
-    
+
     /**
-     * Desliga a conexão banco de dados corrente.
+     * Remove o {@link CircuitBreaker <tt>circuit breaker</tt>} da conexão.
      *
-     * @since  1.0
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public void shutdown() {
-        // fecha a fábrica de conexão.
-        if (emf != null) {
-            emf.close();
+    public synchronized void disableCircuitBreaker() {
+
+        if (breaker != null) {
+
+            CircuitBreaker.unregister(breaker);
+
+            breaker = null;
         }
     }
+
+    /**
+     * Retorna o {@link CircuitBreaker <tt>circuit breaker</tt>} da conexão.
+     *
+     * @return Um circuit breaker ou <tt>null</tt> se a conexão não é protegida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Retorna o {@link ConnectionPool <tt>pool de conexões</tt>} da Persistence
+     * Unit, construindo a fábrica de conexão se necessário.
+     *
+     * @return Um pool de conexões ou <tt>null</tt> se a Persistence Unit não
+     *         utiliza o {@link br.com.vexit.vexpersistence.conn.pool.PooledConnectionProvider}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public ConnectionPool getConnectionPool() {
+
+        getEntityManagerFactory();
+
+        return ConnectionPool.lookup(properties.get(ConnectionPool.UNIT));
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, gasto na construção da fábrica de
+     * conexão da Persistence Unit.
+     *
+     * @return Tempo de inicialização em milissegundos ou -1 se a fábrica ainda não foi construída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getBootstrapTime() {
+        return bootstrapTime;
+    }
     
-}
\ No newline at end of file
+    /**
+     * Retorna o {@link SessionScope <tt>escopo</tt>} ao qual as sessões desta
+     * conexão são associadas.
+     *
+     * @return O escopo das sessões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public SessionScope getSessionScope() {
+        return scope;
+    }
+
+    /**
+     * Define o {@link SessionScope <tt>escopo</tt>} ao qual as sessões desta
+     * conexão são associadas. Por padrão é utilizado um {@link ThreadSessionScope}.
+     * <p>
+     * Deve ser definido antes de qualquer sessão ser aberta.
+     *
+     * @param scope
+     *        Escopo das sessões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setSessionScope(SessionScope scope) {
+        this.scope = ( (scope != null) ? scope : new ThreadSessionScope() );
+    }
+
+    /**
+     * Define a quantidade máxima de {@link EntityManager <tt>EntityManagers</tt>}
+     * mantidas para reutilização. Com o valor zero (padrão) as EntityManagers
+     * são fechadas ao final de cada sessão.
+     *
+     * @param size
+     *        Quantidade máxima de EntityManagers mantidas para reutilização.
+     *
+     * @see EntityManagerPool
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void setEntityManagerPoolSize(int size) {
+
+        entityManagerPoolSize = Math.max(0, size);
+
+        if (entityManagerPool != null) {
+            entityManagerPool.close();
+
+            entityManagerPool = null;
+        }
+
+        if ( (emf != null) && (entityManagerPoolSize > 0) ) {
+            entityManagerPool = new EntityManagerPool(emf, entityManagerPoolSize);
+        }
+    }
+
+    /**
+     * Retorna o {@link EntityManagerPool <tt>pool de EntityManagers</tt>} desta conexão.
+     *
+     * @return Um pool de EntityManagers ou <tt>null</tt> se a reutilização estiver desligada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManagerPool getEntityManagerPool() {
+        return entityManagerPool;
+    }
+
+    /**
+     * Retorna uma instância de uma {@link EntityManager <tt>EntityManager</tt>} 
+     * responsável por disponibilizar operações sobre banco de dados.
+     * <p>
+     * A instância retornada pertence ao {@link SessionScope <tt>escopo</tt>} corrente.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager getEntityManager() {
+
+        checkOpen();
+        
+        EntityManager em = scope.get();
+
+        if ( (em == null) || (!em.isOpen()) ) {
+
+            if (draining) {
+                throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " está sendo desligada");
+            }
+
+            EntityManagerFactory factory = getEntityManagerFactory();
+
+            EntityManagerPool pool = entityManagerPool;
+
+            em = ( (pool != null) ? pool.borrow() : factory.createEntityManager() );
+
+            scope.bind(em);
+        }
+
+        return em;
+    }
+    
+    /**
+     * Cria uma {@link EntityManager <tt>EntityManager</tt>} dedicada, que não
+     * pertence ao escopo corrente nem ao pool de reutilização e deve ser
+     * fechada por quem a criou.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager createEntityManager() {
+
+        checkOpen();
+
+        if (draining) {
+            throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " está sendo desligada");
+        }
+
+        return getEntityManagerFactory().createEntityManager();
+    }
+
+    /**
+     * Inicia uma transação em uma EntityManager dedicada, criada através de
+     * {@link #createEntityManager()}, e passa a acompanhá-la como as demais
+     * transações, de modo que o desligamento aguarde o seu término.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beginTransaction(EntityManager em) {
+
+        if (draining) {
+            throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " está sendo desligada");
+        }
+
+        em.getTransaction().begin();
+
+        transactions.put(em, Boolean.TRUE);
+    }
+
+    /**
+     * Deixa de acompanhar a transação de uma EntityManager dedicada, iniciada
+     * através de {@link #beginTransaction(EntityManager)}, depois que ela foi
+     * concluída ou a EntityManager foi fechada.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void endTransaction(EntityManager em) {
+        finished(em);
+    }
+
+    /**
+     * Fecha a instância ativa de uma {@link EntityManager <tt>EntityManager</tt>} 
+     * responsável por disponibilizar operações sobre banco de dados.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.1
+     *
+     * @author Roberto Vezzoni
+     */
+    public void closeEntityManager() {
+
+        // a sessão de uma unidade de trabalho é fechada somente ao seu término.
+        if (isInUnitOfWork()) {
+            return;
+        }
+
+        EntityManager em = scope.get();
+
+        if (em != null) {
+
+            EntityManagerPool pool = entityManagerPool;
+
+            if (pool != null) {
+                pool.release(em);
+            } else if (em.isOpen()) {
+                em.close();
+            }
+
+            scope.unbind();
+        }
+    }
+    
+    /**
+     * Inicia uma transação com o banco de dados corrente.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public void startTransaction() {
+
+        // a operação participa da transação da unidade de trabalho.
+        if (isInUnitOfWork()) {
+            return;
+        }
+
+        if (draining) {
+            throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " está sendo desligada");
+        }
+
+        EntityManager em = getEntityManager();
+
+        em.getTransaction().begin();
+
+        transactions.put(em, Boolean.TRUE);
+    }
+    
+    /**
+     * Confirma uma transação já iniciada com o banco de dados corrente.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public void commit() {
+
+        // a confirmação é feita ao término da unidade de trabalho.
+        if (isInUnitOfWork()) {
+            return;
+        }
+
+        EntityManager em = getEntityManager();
+
+        try {
+
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().commit();
+            }
+
+        } finally {
+
+            finished(em);
+        }
+    }
+    
+    /**
+     * Cancela uma transação já iniciada com o banco de dados corrente.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public void rollback() {
+
+        EntityManager em = getEntityManager();
+
+        // a falha de uma operação cancela toda a unidade de trabalho.
+        if (isInUnitOfWork()) {
+
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().setRollbackOnly();
+            }
+
+            return;
+        }
+
+        try {
+            // cancela uma transação iniciada com o banco de dados corrente.
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+
+        } finally {
+
+            finished(em);
+        }
+    }
+
+    /**
+     * Inicia uma unidade de trabalho na thread corrente. A unidade de
+     * trabalho mais externa inicia a transação; as internas apenas participam
+     * dela.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void beginUnitOfWork() {
+
+        int[] depth = unitOfWork.get();
+
+        if (depth != null) {
+
+            depth[0]++;
+
+            return;
+        }
+
+        startTransaction();
+
+        unitOfWork.set(new int[] {1});
+    }
+
+    /**
+     * Encerra a unidade de trabalho da thread corrente. Ao encerrar a unidade
+     * de trabalho mais externa as alterações são enviadas ao banco de dados e
+     * a transação é confirmada, ou cancelada se alguma operação falhou.
+     *
+     * @param commit
+     *        true - O trabalho foi concluído e a transação deve ser confirmada.
+     *        false - O trabalho falhou e a transação deve ser cancelada.
+     *
+     * @throws VexPersistenceException
+     *         Se não há unidade de trabalho ativa ou se a transação foi
+     *         cancelada por uma operação que falhou.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void endUnitOfWork(boolean commit) throws VexPersistenceException {
+
+        int[] depth = unitOfWork.get();
+
+        if (depth == null) {
+            throw new VexPersistenceException("Não há unidade de trabalho ativa");
+        }
+
+        if (!commit) {
+            rollback();
+        }
+
+        if (--depth[0] > 0) {
+            return;
+        }
+
+        unitOfWork.remove();
+
+        List<Object[]> pending = invalidations.get();
+
+        invalidations.remove();
+
+        try {
+
+            EntityManager em = getEntityManager();
+
+            if ( em.getTransaction().isActive() && em.getTransaction().getRollbackOnly() ) {
+
+                rollback();
+
+                if (commit) {
+                    throw new VexPersistenceException("A unidade de trabalho foi cancelada por uma operação que falhou");
+                }
+
+                return;
+            }
+
+            try {
+
+                em.flush();
+
+                commit();
+
+            } catch (RuntimeException e) {
+
+                rollback();
+
+                throw e;
+            }
+
+        } finally {
+
+            // leituras concorrentes que obtiveram a marca do cache antes da
+            // confirmação não voltam a armazenar as versões anteriores.
+            if (pending != null) {
+
+                for (Object[] i: pending) {
+
+                    if (i[1] == null) {
+                        invalidateAll((Class<?>) i[0]);
+                    } else {
+                        invalidate((Class<?>) i[0], i[1]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Descarta uma entidade do cache da conexão. Na unidade de trabalho, o
+     * descarte é adiado até o seu término, após a confirmação da transação.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void invalidate(Class<?> clazz, Object id) {
+
+        if (!defer(clazz, id)) {
+            super.invalidate(clazz, id);
+        }
+    }
+
+    /**
+     * Descarta todas as entidades de uma classe do cache da conexão. Na
+     * unidade de trabalho, o descarte é adiado até o seu término, após a
+     * confirmação da transação.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void invalidateAll(Class<?> clazz) {
+
+        if (!defer(clazz, null)) {
+            super.invalidateAll(clazz);
+        }
+    }
+
+    /**
+     * Registra uma invalidação do cache na unidade de trabalho da thread corrente.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade ou <tt>null</tt> para todas as entidades da classe.
+     *
+     * @return true - A invalidação foi adiada.
+     *         false - Não há unidade de trabalho ativa ou a conexão não mantém cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private boolean defer(Class<?> clazz, Object id) {
+
+        if ( (entityCache == null) || (!isInUnitOfWork()) ) {
+            return false;
+        }
+
+        List<Object[]> pending = invalidations.get();
+
+        if (pending == null) {
+            pending = new ArrayList<Object[]>();
+            invalidations.set(pending);
+        }
+
+        pending.add(new Object[] {clazz, id});
+
+        return true;
+    }
+
+    /**
+     * Informa se há uma unidade de trabalho ativa na thread corrente.
+     *
+     * @return true - Há uma unidade de trabalho ativa.
+     *         false - Não há unidade de trabalho ativa.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public boolean isInUnitOfWork() {
+
+        return (unitOfWork.get() != null);
+    }
+
+    /**
+     * Deixa de acompanhar a transação de uma EntityManager, se ela terminou,
+     * e avisa um desligamento que esteja aguardando.
+     *
+     * @param em
+     *        EntityManager da transação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void finished(EntityManager em) {
+
+        if ( (!em.isOpen()) || (!em.getTransaction().isActive()) ) {
+
+            if (transactions.remove(em) != null) {
+
+                synchronized (transactions) {
+                    transactions.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deixa de admitir novas sessões e transações. As sessões já abertas
+     * podem concluir as suas transações. A admissão é retomada por
+     * {@link #startup()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void drain() {
+        draining = true;
+    }
+
+    /**
+     * Indica se a conexão deixou de admitir novas sessões.
+     *
+     * @return true se a conexão estiver sendo desligada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Indica se a conexão foi desligada. Uma conexão desligada não pode mais
+     * ser utilizada.
+     *
+     * @return true se a conexão foi desligada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Recusa o uso de uma conexão desligada.
+     *
+     * @throws VexPersistenceException
+     *         Se a conexão foi desligada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void checkOpen() throws VexPersistenceException {
+
+        if (closed) {
+            throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " foi desligada");
+        }
+    }
+
+    /**
+     * Retorna a quantidade de transações em andamento.
+     *
+     * @return Quantidade de transações em andamento.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public int getActiveTransactionCount() {
+        return transactions.size();
+    }
+
+    /**
+     * Desliga a conexão de forma coordenada: deixa de admitir novas sessões,
+     * aguarda, no máximo pelo tempo informado, o término das transações em
+     * andamento e então fecha as sessões mantidas para reutilização, a fábrica
+     * de conexão e as conexões JDBC ainda em uso, nesta ordem.
+     *
+     * @param timeout
+     *        Tempo máximo de espera pelas transações em andamento.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @param report
+     *        Relatório que recebe as transações e conexões abortadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void shutdown(long timeout, TimeUnit unit, ShutdownReport report) {
+
+        String name = properties.get(ConnectionPool.UNIT);
+
+        drain();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        try {
+
+            synchronized (transactions) {
+
+                long remaining;
+
+                while ( (!transactions.isEmpty()) && ((remaining = deadline - System.nanoTime()) > 0) ) {
+                    TimeUnit.NANOSECONDS.timedWait(transactions, remaining);
+                }
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        int abortedTransactions = transactions.size();
+        int abortedConnections = 0;
+
+        try {
+
+            ConnectionPool pool = ConnectionPool.lookup(name);
+
+            shutdown();
+
+            // conexões que permaneceram em uso após o fechamento da fábrica.
+            if (pool != null) {
+                pool.close();
+
+                abortedConnections = pool.abortActive();
+            }
+
+            report.addUnit(name, abortedTransactions, abortedConnections);
+
+        } catch (RuntimeException e) {
+
+            report.addFailure(name, e);
+
+        } finally {
+
+            transactions.clear();
+        }
+    }
+
+    /**
+     * Desliga a conexão banco de dados corrente.
+     * <p>
+     * Uma construção da fábrica de conexão em andamento é aguardada antes do
+     * desligamento. O desligamento é definitivo: a conexão passa ao estado
+     * {@link State#CLOSED} e deixa de fornecer sessões.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public void shutdown() {
+
+        FutureTask<EntityManagerFactory> task = bootstrap;
+
+        if (task != null) {
+
+            try {
+                await(task, -1);
+            } catch (VexPersistenceException e) {
+                // a falha já foi registrada e não há fábrica a ser fechada.
+            }
+        }
+
+        close();
+    }
+
+    /**
+     * Fecha a fábrica de conexão e as sessões mantidas para reutilização. O
+     * fechamento é definitivo: as sessões e fábricas solicitadas em seguida
+     * são recusadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private synchronized void close() {
+
+        closed = true;
+        draining = true;
+
+
+        // fecha as sessões mantidas para reutilização.
+        if (entityManagerPool != null) {
+            entityManagerPool.close();
+
+            entityManagerPool = null;
+        }
+
+        // fecha a fábrica de conexão.
+        if (emf != null) {
+            emf.close();
+
+            emf = null;
+            bootstrapTime = -1;
+        }
+
+        bootstrap = null;
+
+        // a sondagem não deve reconstruir a fábrica de uma conexão desligada.
+        if (breaker != null) {
+            breaker.close();
+        }
+
+        // as entidades lidas não sobrevivem à fábrica de conexão.
+        if (entityCache != null) {
+            entityCache.clear();
+        }
+    }
+    
+    /**
+     * Inicializa antecipadamente a conexão com o banco de dados corrente.
+     * <p>
+     * A construção da fábrica de conexão valida as Named Queries declaradas
+     * na Persistence Unit. Em seguida uma sessão é aberta e uma transação é
+     * iniciada e cancelada, obrigando a obtenção da primeira conexão JDBC.
+     *
+     * @return Tempo, em milissegundos, gasto na inicialização.
+     *
+     * @throws VexPersistenceException
+     *         Se a fábrica de conexão não puder ser construída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long warmUp() throws VexPersistenceException {
+
+        long start = System.nanoTime();
+
+        EntityManagerFactory factory = getEntityManagerFactory();
+
+        EntityManager em = factory.createEntityManager();
+
+        try {
+
+            em.getTransaction().begin();
+            em.getTransaction().rollback();
+
+        } finally {
+
+            em.close();
+        }
+
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+}
@@ -22,7 +22,14 @@
 package br.com.vexit.vexpersistence.conn;
 
 import br.com.vexit.vexpersistence.PersistentFacade;
+import br.com.vexit.vexpersistence.cache.EntityCache;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import br.com.vexit.vexpersistence.exception.CircuitBreakerOpenException;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 
 /**
@@ -31,7 +38,7 @@ import javax.persistence.EntityManager;
  * conexão se der como recurso local, ou seja, quando a conexão não foi obtida
  * através de Injeção de Dependência.
  *
- * @version  1.4, 25/11/08
+ * @version 1.5, 17/10/26
  * 
  * @see PersistentFacade
  * @see LocalPersistenceConnection
@@ -43,14 +50,10 @@ import javax.persistence.EntityManager;
  */
 public abstract class PersistenceConnection implements Serializable {
 
-    private static ServiceLocator locator;
+    private static final ServiceLocator locator = new ServiceLocator();
 
     private static ServiceLocator getLocator() {
 
-        if (locator == null) {
-            locator = new ServiceLocator();
-        }
-
         return locator;
     }
 
@@ -75,6 +78,78 @@ public abstract class PersistenceConnection implements Serializable {
         return getLocator().getPersistenceConnection(persistenceUnitName);
     }
 
+    /**
+     * Retorna as {@link LocalPersistenceConnection <tt>conexões locais</tt>} já
+     * obtidas através de {@link #getInstance(String)}.
+     *
+     * @return Conexões registradas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static Collection<PersistenceConnection> getInstances() {
+
+        return new ArrayList<PersistenceConnection>(getLocator().getPersistenceConnections());
+    }
+
+    /**
+     * Registra uma Persistence Unit e inicia em segundo plano a sua conexão,
+     * retornando imediatamente. Falhas são reportadas no primeiro uso da
+     * conexão ou em {@link #awaitReady(long, TimeUnit)}.
+     *
+     * @return Uma {@link LocalPersistenceConnection <tt>conexão local</tt>} para operações persistentes.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static PersistenceConnection register(String persistenceUnitName) {
+
+        PersistenceConnection connection = getInstance(persistenceUnitName);
+
+        connection.startup();
+
+        return connection;
+    }
+
+    /**
+     * Retorna a conexão que deve atender uma operação. Por padrão a própria
+     * conexão atende todas as operações.
+     *
+     * @return A conexão que deve atender a operação.
+     *
+     * @param readOnly
+     *        true se a operação for somente de leitura.
+     *
+     * @see ReadWriteRoutingConnection
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public PersistenceConnection route(boolean readOnly) {
+
+        return this;
+    }
+
+    /**
+     * Informa o término de uma operação atendida por uma conexão obtida
+     * através de {@link #route(boolean)}.
+     *
+     * @param routed
+     *        Conexão que atendeu a operação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void release(PersistenceConnection routed) {
+    }
+
     /**
      * Retorna uma instância de uma {@link EntityManager <tt>EntityManager</tt>}
      * responsável por disponibilizar operações sobre banco de dados.
@@ -99,6 +174,58 @@ public abstract class PersistenceConnection implements Serializable {
      */
     public abstract void closeEntityManager();
 
+    /**
+     * Cria uma {@link EntityManager <tt>EntityManager</tt>} dedicada, que não
+     * pertence ao escopo corrente e deve ser fechada por quem a criou.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract EntityManager createEntityManager();
+
+    /**
+     * Inicia uma transação em uma EntityManager dedicada, criada através de
+     * {@link #createEntityManager()}, e passa a acompanhá-la como as demais
+     * transações, de modo que o desligamento aguarde o seu término.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void beginTransaction(EntityManager em);
+
+    /**
+     * Deixa de acompanhar a transação de uma EntityManager dedicada, iniciada
+     * através de {@link #beginTransaction(EntityManager)}, depois que ela foi
+     * concluída ou a EntityManager foi fechada.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void endTransaction(EntityManager em);
+
+    /**
+     * Retorna o {@link ConnectionPool <tt>pool de conexões</tt>} compartilhado
+     * pelas operações JPA e pelas Stored Procedures.
+     *
+     * @return Um pool de conexões ou <tt>null</tt> se não houver pool configurado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract ConnectionPool getConnectionPool();
+
     /**
      * Inicia uma transação com o banco de dados corrente.
      *
@@ -134,5 +261,296 @@ public abstract class PersistenceConnection implements Serializable {
      * @author Roberto Vezzoni
      */
     public abstract void shutdown();
+
+    /**
+     * Inicializa antecipadamente a conexão com o banco de dados corrente:
+     * constrói a fábrica de conexão, o que também valida as Named Queries
+     * declaradas, e abre a primeira conexão com a fonte de dados.
+     *
+     * @return Tempo, em milissegundos, gasto na inicialização.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract long warmUp();
+
+    /**
+     * Inicia em segundo plano a conexão com o banco de dados corrente,
+     * retornando imediatamente. Por padrão não há inicialização em segundo plano.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void startup() {
+    }
+
+    /**
+     * Indica se a conexão com o banco de dados corrente está pronta para uso.
+     *
+     * @return true se a conexão estiver pronta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isReady() {
+
+        return true;
+    }
+
+    /**
+     * Aguarda, no máximo pelo tempo informado, a conexão com o banco de dados
+     * corrente ficar pronta para uso.
+     *
+     * @param timeout
+     *        Tempo máximo de espera.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void awaitReady(long timeout, TimeUnit unit) {
+    }
    
-}
\ No newline at end of file
+    /**
+     * Deixa de admitir novas sessões e transações na conexão com o banco de
+     * dados corrente. Por padrão não há controle de admissão.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void drain() {
+    }
+
+    /**
+     * Retorna a quantidade de transações em andamento.
+     *
+     * @return Quantidade de transações em andamento.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getActiveTransactionCount() {
+
+        return 0;
+    }
+
+    /**
+     * Desliga a conexão com o banco de dados corrente de forma coordenada,
+     * aguardando, no máximo pelo tempo informado, o término das transações em
+     * andamento. Por padrão apenas chama {@link #shutdown()}.
+     *
+     * @param timeout
+     *        Tempo máximo de espera pelas transações em andamento.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @param report
+     *        Relatório que recebe as transações e conexões abortadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void shutdown(long timeout, TimeUnit unit, ShutdownReport report) {
+
+        shutdown();
+    }
+
+    /**
+     * Inicia uma {@link UnitOfWork <tt>unidade de trabalho</tt>} na thread
+     * corrente. Enquanto ela estiver ativa, as transações iniciadas e
+     * confirmadas na thread participam da transação da unidade de trabalho.
+     * Por padrão a conexão não suporta unidades de trabalho.
+     *
+     * @throws VexPersistenceException
+     *         Se a conexão não suporta unidades de trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beginUnitOfWork() throws VexPersistenceException {
+
+        throw new VexPersistenceException("A conexão não suporta unidades de trabalho");
+    }
+
+    /**
+     * Encerra a {@link UnitOfWork <tt>unidade de trabalho</tt>} da thread
+     * corrente. A transação é confirmada ou cancelada somente ao encerrar a
+     * unidade de trabalho mais externa.
+     *
+     * @param commit
+     *        true - O trabalho foi concluído e a transação deve ser confirmada.
+     *        false - O trabalho falhou e a transação deve ser cancelada.
+     *
+     * @throws VexPersistenceException
+     *         Se a conexão não suporta unidades de trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void endUnitOfWork(boolean commit) throws VexPersistenceException {
+
+        throw new VexPersistenceException("A conexão não suporta unidades de trabalho");
+    }
+
+    /**
+     * Informa se há uma {@link UnitOfWork <tt>unidade de trabalho</tt>} ativa
+     * na thread corrente.
+     *
+     * @return true - Há uma unidade de trabalho ativa.
+     *         false - Não há unidade de trabalho ativa.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isInUnitOfWork() {
+
+        return false;
+    }
+
+    /**
+     * Retorna o {@link EntityCache <tt>cache de entidades</tt>} consultado nas
+     * leituras por chave primária da conexão.
+     *
+     * @return Um cache de entidades ou <tt>null</tt> se a conexão não mantém cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityCache getEntityCache() {
+
+        return null;
+    }
+
+    /**
+     * Descarta uma entidade alterada ou removida do {@link EntityCache
+     * <tt>cache de entidades</tt>} da conexão.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void invalidate(Class<?> clazz, Object id) {
+
+        EntityCache cache = getEntityCache();
+
+        if (cache != null) {
+            cache.invalidate(clazz, id);
+        }
+    }
+
+    /**
+     * Descarta todas as entidades de uma classe do {@link EntityCache
+     * <tt>cache de entidades</tt>} da conexão.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void invalidateAll(Class<?> clazz) {
+
+        EntityCache cache = getEntityCache();
+
+        if (cache != null) {
+            cache.invalidateAll(clazz);
+        }
+    }
+
+    /**
+     * Retorna o {@link CircuitBreaker <tt>circuit breaker</tt>} que protege a
+     * conexão com o banco de dados corrente.
+     *
+     * @return Um circuit breaker ou <tt>null</tt> se a conexão não é protegida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CircuitBreaker getCircuitBreaker() {
+
+        return null;
+    }
+
+    /**
+     * Solicita a admissão de uma operação ao circuit breaker da conexão.
+     *
+     * @return Instante, em nanossegundos, do início da operação.
+     *
+     * @throws CircuitBreakerOpenException
+     *         Se o circuito estiver aberto.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long admit() throws CircuitBreakerOpenException {
+
+        CircuitBreaker breaker = getCircuitBreaker();
+
+        return ( (breaker != null) ? breaker.acquire() : System.nanoTime() );
+    }
+
+    /**
+     * Registra o sucesso de uma operação admitida por {@link #admit()}.
+     *
+     * @param start
+     *        Instante retornado por {@link #admit()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void succeeded(long start) {
+
+        CircuitBreaker breaker = getCircuitBreaker();
+
+        if (breaker != null) {
+            breaker.success(start);
+        }
+    }
+
+    /**
+     * Registra a falha de uma operação admitida por {@link #admit()}.
+     *
+     * @param start
+     *        Instante retornado por {@link #admit()}.
+     *
+     * @param cause
+     *        Causa da falha.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void failed(long start, Throwable cause) {
+
+        CircuitBreaker breaker = getCircuitBreaker();
+
+        if (breaker != null) {
+            breaker.failure(start, cause);
+        }
+    }
+
+}
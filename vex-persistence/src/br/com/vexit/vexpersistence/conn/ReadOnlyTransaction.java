@@ -0,0 +1,293 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.conn;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.Query;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+/**
+ * <tt>ReadOnlyTransaction</tt> é uma classe concreta responsável por preparar
+ * uma sessão com o banco de dados para as leituras de um DAO ou de uma Named
+ * Query {@link AccessMode#READ_ONLY <tt>somente leitura</tt>}.
+ * <p>
+ * Se nenhuma transação estiver em andamento, é iniciada uma transação com a
+ * conexão JDBC marcada como somente leitura e sem <tt>flush</tt> antes das
+ * consultas, que é encerrada ao término; caso contrário, a transação em
+ * andamento é reaproveitada sem alterações. Somente na transação iniciada,
+ * as entidades carregadas são marcadas como somente leitura e a sessão
+ * descarta as cópias mantidas para a verificação de alterações; ao término,
+ * elas voltam a ser verificadas, pois a sessão pode ser reaproveitada por
+ * operações de escrita.
+ * <blockquote><pre>
+ *   ReadOnlyTransaction tx = ReadOnlyTransaction.begin( em );
+ *
+ *   try {
+ *       result = tx.track( tx.hint( em.createQuery( ql ) ).getResultList() );
+ *   } finally {
+ *       tx.end();
+ *   }
+ * </pre></blockquote>
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see AccessMode
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public final class ReadOnlyTransaction {
+
+    /**
+     * Hint do Hibernate que carrega as entidades de uma consulta como somente leitura.
+     */
+    public static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+
+    private final EntityManager em;
+    private final Session session;
+
+    private FlushMode flushMode;
+    private FlushModeType flushModeType;
+
+    private Connection connection;
+    private boolean started;
+
+    private final List<Object> tracked = new ArrayList<Object>();
+
+    private ReadOnlyTransaction(EntityManager em) {
+
+        this.em = em;
+
+        Object delegate = em.getDelegate();
+
+        this.session = ( (delegate instanceof Session) ? (Session) delegate : null );
+    }
+
+    /**
+     * Prepara uma sessão para leituras somente leitura.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @return A transação somente leitura, que deve ser encerrada através de {@link #end()}.
+     *
+     * @throws VexPersistenceException
+     *         Se a conexão JDBC não puder ser marcada como somente leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ReadOnlyTransaction begin(EntityManager em) throws VexPersistenceException {
+
+        ReadOnlyTransaction tx = new ReadOnlyTransaction(em);
+
+        tx.start();
+
+        return tx;
+    }
+
+    private void start() {
+
+        // a transação de uma unidade de trabalho ou de outra operação é reaproveitada,
+        // preservando o flush das alterações pendentes antes das consultas.
+        if (em.getTransaction().isActive()) {
+            return;
+        }
+
+        try {
+
+            if (session != null) {
+
+                // o modo somente leitura deve ser definido antes do início da transação.
+                connection = session.connection();
+
+                connection.setReadOnly(true);
+            }
+
+            em.getTransaction().begin();
+
+        } catch (SQLException e) {
+
+            end();
+
+            throw new VexPersistenceException(e);
+        }
+
+        started = true;
+
+        if (session != null) {
+
+            flushMode = session.getFlushMode();
+
+            session.setFlushMode(FlushMode.MANUAL);
+
+        } else {
+
+            flushModeType = em.getFlushMode();
+
+            em.setFlushMode(FlushModeType.COMMIT);
+        }
+    }
+
+    /**
+     * Aplica à consulta o hint que carrega as entidades como somente leitura,
+     * se a transação somente leitura foi iniciada por esta instância. As
+     * entidades carregadas devem ser informadas em {@link #track(Object)};
+     * por isso, o hint não deve ser aplicado a consultas que carregam
+     * associações, cujas entidades também seriam somente leitura.
+     *
+     * @param q
+     *        Consulta a ser executada.
+     *
+     * @return A própria consulta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Query hint(Query q) {
+
+        if ( started && (session != null) ) {
+            q.setHint(READ_ONLY_HINT, Boolean.TRUE);
+        }
+
+        return q;
+    }
+
+    /**
+     * Marca como somente leitura as entidades carregadas, descartando as
+     * cópias mantidas pela sessão para a verificação de alterações, se a
+     * transação somente leitura foi iniciada por esta instância.
+     *
+     * @param result
+     *        Uma entidade, uma coleção ou um mapa de entidades.
+     *
+     * @return O próprio resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T> T track(T result) {
+
+        if ( (!started) || (session == null) || (result == null) ) {
+            return result;
+        }
+
+        if (result instanceof Collection) {
+
+            for (Object e: (Collection<?>) result) {
+                markReadOnly(e);
+            }
+
+        } else if (result instanceof Map) {
+
+            for (Object e: ((Map<?, ?>) result).values()) {
+                markReadOnly(e);
+            }
+
+        } else {
+
+            markReadOnly(result);
+        }
+
+        return result;
+    }
+
+    private void markReadOnly(Object entity) {
+
+        if ( (entity != null) && session.contains(entity) ) {
+
+            session.setReadOnly(entity, true);
+
+            tracked.add(entity);
+        }
+    }
+
+    /**
+     * Encerra a transação somente leitura iniciada, restaurando o modo da
+     * conexão JDBC e do <tt>flush</tt> da sessão e a verificação de alterações
+     * das entidades marcadas como somente leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void end() {
+
+        try {
+
+            if ( started && em.isOpen() ) {
+
+                // sem flush, a confirmação apenas encerra a transação e mantém as
+                // entidades carregadas na sessão, ao contrário do cancelamento.
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().commit();
+                }
+
+                if (session != null) {
+
+                    // as entidades continuam na sessão, que pode ser usada por um DAO de escrita.
+                    for (Object entity: tracked) {
+
+                        if (session.contains(entity)) {
+                            session.setReadOnly(entity, false);
+                        }
+                    }
+
+                    session.setFlushMode(flushMode);
+
+                } else {
+                    em.setFlushMode(flushModeType);
+                }
+            }
+
+            // o modo da conexão só pode ser alterado fora da transação.
+            if (connection != null) {
+                connection.setReadOnly(false);
+            }
+
+        } catch (SQLException e) {
+
+            throw new VexPersistenceException(e);
+
+        } finally {
+
+            started = false;
+            connection = null;
+
+            tracked.clear();
+        }
+    }
+
+}
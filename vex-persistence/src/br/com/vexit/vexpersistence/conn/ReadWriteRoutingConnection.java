@@ -0,0 +1,777 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import br.com.vexit.vexpersistence.cache.EntityCache;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+
+/**
+ * <tt>ReadWriteRoutingConnection</tt> é uma classe concreta responsável por
+ * direcionar as operações de leitura para réplicas e as operações de escrita
+ * para a conexão primária.
+ * <p>
+ * As leituras (<tt>get</tt>, <tt>getAll</tt> e <tt>findByNamedQuery</tt>) são
+ * distribuídas entre as réplicas em rodízio ou para a réplica com menos
+ * requisições em andamento. As escritas (<tt>save</tt>, <tt>remove</tt> e
+ * <tt>execByNamedQuery</tt>) e as transações vão sempre para a primária.
+ * Com a fixação ligada, após uma escrita feita dentro de um
+ * {@link #pin() <tt>escopo de fixação</tt>} as leituras da mesma thread também
+ * vão para a primária até o término do escopo, garantindo a leitura das
+ * próprias escritas. Fora de um escopo as escritas não fixam as leituras, que
+ * assim não ficam presas à primária em threads reaproveitadas por um pool.
+ * <blockquote><pre>
+ *   PersistenceConnection conn = new ReadWriteRoutingConnection(
+ *           PersistenceConnection.getInstance( "primary" ),
+ *           PersistenceConnection.getInstance( "replica1" ),
+ *           PersistenceConnection.getInstance( "replica2" ) );
+ *
+ *   List foo = PersistentFacade
+ *              .getInstance( conn )
+ *              .getDAOFactory()
+ *              .createDAO()
+ *              .getAll( Entity.class );
+ * </pre></blockquote>
+ * Um escopo de fixação por requisição:
+ * <blockquote><pre>
+ *   ReadWriteRoutingConnection.PinScope scope = conn.pin();
+ *
+ *   try {
+ *       dao.save( foo );
+ *       foo = dao.get( Entity.class, foo.getId() );
+ *   } finally {
+ *       scope.close();
+ *   }
+ * </pre></blockquote>
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see PersistenceConnection#route(boolean)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class ReadWriteRoutingConnection extends PersistenceConnection {
+
+    /**
+     * Estratégias de distribuição das leituras entre as réplicas.
+     */
+    public enum Balancing {
+
+        /** Distribui as leituras em rodízio. */
+        ROUND_ROBIN,
+
+        /** Direciona cada leitura para a réplica com menos requisições em andamento. */
+        LEAST_OUTSTANDING
+    }
+
+    private final PersistenceConnection primary;
+    private final PersistenceConnection[] replicas;
+    private final AtomicInteger[] outstanding;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile Balancing balancing = Balancing.ROUND_ROBIN;
+    private volatile boolean pinning;
+
+    // escopo de fixação da thread: {profundidade, 1 se houve escrita}.
+    private final ThreadLocal<int[]> pinned = new ThreadLocal<int[]>();
+
+    /**
+     * Cria uma conexão que direciona as leituras para as réplicas informadas.
+     *
+     * @param primary
+     *        Conexão primária, para escritas e transações.
+     *
+     * @param replicas
+     *        Conexões réplicas, para leituras.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public ReadWriteRoutingConnection(PersistenceConnection primary, PersistenceConnection ... replicas) {
+
+        this.primary = primary;
+        this.replicas = replicas.clone();
+        this.outstanding = new AtomicInteger[replicas.length];
+
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Retorna a conexão que deve atender uma operação: uma réplica para as
+     * leituras e a primária para as escritas.
+     *
+     * @return A conexão que deve atender a operação.
+     *
+     * @param readOnly
+     *        true se a operação for somente de leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public PersistenceConnection route(boolean readOnly) {
+
+        // as leituras de uma unidade de trabalho devem enxergar as suas escritas.
+        if ( (!readOnly) || primary.isInUnitOfWork() ) {
+
+            int[] scope = pinned.get();
+
+            if ( (!readOnly) && pinning && (scope != null) ) {
+                scope[1] = 1;
+            }
+
+            return primary;
+        }
+
+        if ( (replicas.length == 0) || isPinned() ) {
+            return primary;
+        }
+
+        int index;
+
+        if (balancing == Balancing.LEAST_OUTSTANDING) {
+
+            // o ponto de partida varia para não favorecer sempre a primeira réplica.
+            int start = (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+
+            index = start;
+
+            for (int i = 1; i < replicas.length; i++) {
+
+                int candidate = (start + i) % replicas.length;
+
+                if (outstanding[candidate].get() < outstanding[index].get()) {
+                    index = candidate;
+                }
+            }
+
+        } else {
+
+            index = (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+        }
+
+        outstanding[index].incrementAndGet();
+
+        return replicas[index];
+    }
+
+    /**
+     * Informa o término de uma operação atendida por uma conexão obtida
+     * através de {@link #route(boolean)}.
+     *
+     * @param routed
+     *        Conexão que atendeu a operação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void release(PersistenceConnection routed) {
+
+        for (int i = 0; i < replicas.length; i++) {
+
+            if (replicas[i] == routed) {
+                outstanding[i].decrementAndGet();
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Abre um escopo de fixação na thread corrente. Dentro do escopo, após uma
+     * escrita, as leituras da thread vão para a conexão primária. Escopos
+     * aninhados participam do escopo mais externo, e a fixação é desfeita ao
+     * fechá-lo. O escopo deve ser fechado em um bloco <tt>finally</tt>.
+     *
+     * @return O escopo de fixação aberto.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public PinScope pin() {
+
+        int[] scope = pinned.get();
+
+        if (scope == null) {
+            pinned.set(new int[] {1, 0});
+        } else {
+            scope[0]++;
+        }
+
+        return new PinScope();
+    }
+
+    /**
+     * Desfaz a fixação das leituras da thread corrente na conexão primária,
+     * mantendo o escopo aberto.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void unpin() {
+
+        int[] scope = pinned.get();
+
+        if (scope != null) {
+            scope[1] = 0;
+        }
+    }
+
+    /**
+     * Informa se as leituras da thread corrente estão fixadas na conexão primária.
+     *
+     * @return true - Houve uma escrita no escopo de fixação corrente.
+     *         false - As leituras são distribuídas entre as réplicas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isPinned() {
+
+        int[] scope = pinned.get();
+
+        return ( pinning && (scope != null) && (scope[1] != 0) );
+    }
+
+    /**
+     * <tt>PinScope</tt> é o escopo de fixação aberto através de {@link ReadWriteRoutingConnection#pin()}.
+     */
+    public final class PinScope {
+
+        private boolean closed;
+
+        private PinScope() {
+        }
+
+        /**
+         * Fecha o escopo. Ao fechar o escopo mais externo, as leituras da
+         * thread voltam a ser distribuídas entre as réplicas.
+         *
+         * @since  1.5
+         *
+         * @author Roberto Vezzoni
+         */
+        public void close() {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            int[] scope = pinned.get();
+
+            if ( (scope != null) && (--scope[0] <= 0) ) {
+                pinned.remove();
+            }
+        }
+    }
+
+    /**
+     * Retorna a estratégia de distribuição das leituras.
+     *
+     * @return Estratégia de distribuição.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    /**
+     * Define a estratégia de distribuição das leituras.
+     *
+     * @param balancing
+     *        Estratégia de distribuição.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setBalancing(Balancing balancing) {
+        this.balancing = ( (balancing != null) ? balancing : Balancing.ROUND_ROBIN );
+    }
+
+    /**
+     * Indica se as leituras são fixadas na primária após uma escrita.
+     *
+     * @return true se a fixação estiver ligada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isPinning() {
+        return pinning;
+    }
+
+    /**
+     * Liga ou desliga a fixação das leituras na primária após uma escrita
+     * feita em um {@link #pin() <tt>escopo de fixação</tt>}.
+     *
+     * @param pinning
+     *        true para ligar a fixação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setPinning(boolean pinning) {
+        this.pinning = pinning;
+    }
+
+    /**
+     * Retorna a conexão primária.
+     *
+     * @return Conexão primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public PersistenceConnection getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Retorna a EntityManager da conexão primária.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager getEntityManager() {
+        return primary.getEntityManager();
+    }
+
+    /**
+     * Fecha a EntityManager da conexão primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void closeEntityManager() {
+        primary.closeEntityManager();
+    }
+
+    /**
+     * Cria uma EntityManager dedicada da conexão primária.
+     *
+     * @return EntityManager.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager createEntityManager() {
+        return primary.createEntityManager();
+    }
+
+    /**
+     * Inicia e acompanha a transação de uma EntityManager dedicada da conexão
+     * primária.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beginTransaction(EntityManager em) {
+        primary.beginTransaction(em);
+    }
+
+    /**
+     * Deixa de acompanhar a transação de uma EntityManager dedicada da conexão
+     * primária.
+     *
+     * @param em
+     *        EntityManager dedicada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void endTransaction(EntityManager em) {
+        primary.endTransaction(em);
+    }
+
+    /**
+     * Retorna o pool de conexões da conexão primária.
+     *
+     * @return Um pool de conexões ou <tt>null</tt> se não houver pool configurado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public ConnectionPool getConnectionPool() {
+        return primary.getConnectionPool();
+    }
+
+    /**
+     * Inicia uma transação na conexão primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void startTransaction() {
+        primary.startTransaction();
+    }
+
+    /**
+     * Confirma uma transação da conexão primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void commit() {
+        primary.commit();
+    }
+
+    /**
+     * Cancela uma transação da conexão primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void rollback() {
+        primary.rollback();
+    }
+
+    /**
+     * Desliga a conexão primária e as réplicas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void shutdown() {
+
+        primary.shutdown();
+
+        for (PersistenceConnection replica: replicas) {
+            replica.shutdown();
+        }
+    }
+
+    /**
+     * Inicializa antecipadamente a conexão primária e as réplicas.
+     *
+     * @return Tempo, em milissegundos, gasto na inicialização.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long warmUp() {
+
+        long time = primary.warmUp();
+
+        for (PersistenceConnection replica: replicas) {
+            time += replica.warmUp();
+        }
+
+        return time;
+    }
+
+    /**
+     * Inicia em segundo plano a conexão primária e as réplicas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void startup() {
+
+        primary.startup();
+
+        for (PersistenceConnection replica: replicas) {
+            replica.startup();
+        }
+    }
+
+    /**
+     * Indica se a conexão primária e todas as réplicas estão prontas para uso.
+     *
+     * @return true se todas as conexões estiverem prontas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public boolean isReady() {
+
+        if (!primary.isReady()) {
+            return false;
+        }
+
+        for (PersistenceConnection replica: replicas) {
+            if (!replica.isReady()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Aguarda, no máximo pelo tempo informado, a conexão primária e todas as
+     * réplicas ficarem prontas para uso.
+     *
+     * @param timeout
+     *        Tempo máximo de espera, compartilhado por todas as conexões.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void awaitReady(long timeout, TimeUnit unit) {
+
+        // inicia todas as conexões antes de aguardar a primeira.
+        startup();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        primary.awaitReady(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+        for (PersistenceConnection replica: replicas) {
+            replica.awaitReady(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Deixa de admitir novas sessões na conexão primária e nas réplicas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void drain() {
+
+        primary.drain();
+
+        for (PersistenceConnection replica: replicas) {
+            replica.drain();
+        }
+    }
+
+    /**
+     * Retorna a quantidade de transações em andamento na conexão primária e nas réplicas.
+     *
+     * @return Quantidade de transações em andamento.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public int getActiveTransactionCount() {
+
+        int count = primary.getActiveTransactionCount();
+
+        for (PersistenceConnection replica: replicas) {
+            count += replica.getActiveTransactionCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Desliga de forma coordenada a conexão primária e as réplicas.
+     *
+     * @param timeout
+     *        Tempo máximo de espera, compartilhado por todas as conexões.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @param report
+     *        Relatório que recebe as transações e conexões abortadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void shutdown(long timeout, TimeUnit unit, ShutdownReport report) {
+
+        // nenhuma conexão admite novas sessões enquanto as demais são aguardadas.
+        drain();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        primary.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, report);
+
+        for (PersistenceConnection replica: replicas) {
+            replica.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, report);
+        }
+    }
+
+    /**
+     * Retorna o {@link CircuitBreaker <tt>circuit breaker</tt>} da conexão
+     * primária. As réplicas são protegidas pelos seus próprios circuit breakers.
+     *
+     * @return Um circuit breaker ou <tt>null</tt> se a primária não é protegida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+
+        return primary.getCircuitBreaker();
+    }
+
+    /**
+     * Retorna o {@link EntityCache <tt>cache de entidades</tt>} da conexão
+     * primária, compartilhado pelas leituras feitas nas réplicas.
+     *
+     * @return Um cache de entidades ou <tt>null</tt> se a conexão não mantém cache.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public EntityCache getEntityCache() {
+
+        return primary.getEntityCache();
+    }
+
+    /**
+     * Descarta uma entidade do cache da conexão primária, respeitando a sua
+     * unidade de trabalho.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void invalidate(Class<?> clazz, Object id) {
+
+        primary.invalidate(clazz, id);
+    }
+
+    /**
+     * Descarta todas as entidades de uma classe do cache da conexão primária,
+     * respeitando a sua unidade de trabalho.
+     *
+     * @param clazz
+     *        Classe de entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void invalidateAll(Class<?> clazz) {
+
+        primary.invalidateAll(clazz);
+    }
+
+    /**
+     * Inicia uma unidade de trabalho na conexão primária. Enquanto ela estiver
+     * ativa, as leituras da thread corrente também são feitas na primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void beginUnitOfWork() {
+
+        primary.beginUnitOfWork();
+    }
+
+    /**
+     * Encerra a unidade de trabalho da conexão primária.
+     *
+     * @param commit
+     *        true - O trabalho foi concluído e a transação deve ser confirmada.
+     *        false - O trabalho falhou e a transação deve ser cancelada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public void endUnitOfWork(boolean commit) {
+
+        primary.endUnitOfWork(commit);
+    }
+
+    /**
+     * Informa se há uma unidade de trabalho ativa na conexão primária.
+     *
+     * @return true - Há uma unidade de trabalho ativa.
+     *         false - Não há unidade de trabalho ativa.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public boolean isInUnitOfWork() {
+
+        return primary.isInUnitOfWork();
+    }
+
+}
@@ -22,14 +22,20 @@
 package br.com.vexit.vexpersistence.conn;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <tt>ServiceLocator</tt> é uma classe concreta responsável por
  * disponibilizar instâncias de {@link LocalPersistenceConnection <tt>LocalPersistenceConnection</tt>}.
+ * <p>
+ * O registro pode ser acessado concorrentemente: a leitura não bloqueia e
+ * cada Persistence Unit é registrada no máximo uma vez.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see LocalPersistenceConnection
  *
@@ -39,7 +45,7 @@ import java.util.Map;
  */
 public class ServiceLocator implements Serializable {
 
-    private Map<String, LocalPersistenceConnection> connections = new HashMap<String, LocalPersistenceConnection>();
+    private final ConcurrentMap<String, LocalPersistenceConnection> connections = new ConcurrentHashMap<String, LocalPersistenceConnection>();
 
     /**
      * Retorna uma instância de uma {@link LocalPersistenceConnection <tt>conexão local</tt>} para operações persistentes.
@@ -68,24 +74,34 @@ public class ServiceLocator implements Serializable {
         return conn;
     }
 
+    /**
+     * Retorna as {@link LocalPersistenceConnection <tt>conexões locais</tt>} registradas.
+     *
+     * @return Conexões locais registradas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Collection<LocalPersistenceConnection> getPersistenceConnections() {
+
+        return Collections.unmodifiableCollection(new ArrayList<LocalPersistenceConnection>(connections.values()));
+    }
+
     private LocalPersistenceConnection lookup(String persistenceUnitName) {
 
-        LocalPersistenceConnection conn = null;
-        
-        if (connections.containsKey(persistenceUnitName)) {
-            conn = connections.get(persistenceUnitName);
-        }
-        
-        return conn;
+        return connections.get(persistenceUnitName);
     }
 
     private LocalPersistenceConnection addConnection(String persistenceUnitName) {
         
         LocalPersistenceConnection conn = new LocalPersistenceConnection(persistenceUnitName);
 
-        connections.put(persistenceUnitName, conn);
+        // a conexão só inicia a fábrica no primeiro uso, portanto uma
+        // instância descartada na disputa não chega a ser inicializada.
+        LocalPersistenceConnection registered = connections.putIfAbsent(persistenceUnitName, conn);
 
-        return conn;
+        return ( (registered != null) ? registered : conn );
     }
     
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import javax.persistence.EntityManager;
+
+/**
+ * <tt>SessionScope</tt> é uma classe abstrata responsável por definir
+ * o escopo em que uma {@link EntityManager <tt>EntityManager</tt>} de uma
+ * {@link LocalPersistenceConnection <tt>conexão local</tt>} permanece associada.
+ * <p>
+ * Como uma EntityManager não é thread-safe, cada escopo deve garantir que
+ * chamadas concorrentes não compartilhem o mesmo contexto de persistência.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see LocalPersistenceConnection
+ * @see ThreadSessionScope
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public abstract class SessionScope {
+
+    /**
+     * Retorna a {@link EntityManager <tt>EntityManager</tt>} associada ao escopo corrente.
+     *
+     * @return EntityManager ou <tt>null</tt> se não houver sessão associada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract EntityManager get();
+
+    /**
+     * Associa uma {@link EntityManager <tt>EntityManager</tt>} ao escopo corrente.
+     *
+     * @param em
+     *        Uma EntityManager válida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void bind(EntityManager em);
+
+    /**
+     * Desfaz a associação da {@link EntityManager <tt>EntityManager</tt>} do escopo corrente.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void unbind();
+
+}
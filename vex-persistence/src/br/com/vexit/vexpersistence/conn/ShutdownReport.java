@@ -0,0 +1,222 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.conn;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <tt>ShutdownReport</tt> é uma classe concreta responsável por reunir o
+ * resultado do desligamento coordenado de Persistence Units.
+ * <p>
+ * Para cada Persistence Unit é registrada a quantidade de transações que não
+ * terminaram dentro do prazo e a quantidade de conexões JDBC fechadas à força,
+ * ou a falha ocorrida no desligamento.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see br.com.vexit.vexpersistence.PersistentFacade#shutdown(long, java.util.concurrent.TimeUnit)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class ShutdownReport implements Serializable {
+
+    private final Map<String, Integer> abortedTransactions = new LinkedHashMap<String, Integer>();
+    private final Map<String, Integer> abortedConnections = new LinkedHashMap<String, Integer>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+    private long totalTime;
+
+    /**
+     * Registra o desligamento de uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @param transactions
+     *        Quantidade de transações abortadas.
+     *
+     * @param connections
+     *        Quantidade de conexões JDBC fechadas à força.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void addUnit(String persistenceUnitName, int transactions, int connections) {
+        abortedTransactions.put(persistenceUnitName, transactions);
+        abortedConnections.put(persistenceUnitName, connections);
+    }
+
+    /**
+     * Registra a falha no desligamento de uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @param cause
+     *        Causa da falha.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void addFailure(String persistenceUnitName, Throwable cause) {
+        failures.put(persistenceUnitName, cause);
+    }
+
+    /**
+     * Retorna os nomes das Persistence Units desligadas.
+     *
+     * @return Nomes das Persistence Units.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized Set<String> getUnits() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(abortedTransactions.keySet()));
+    }
+
+    /**
+     * Retorna a quantidade de transações de uma Persistence Unit que não
+     * terminaram dentro do prazo.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @return Quantidade de transações abortadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized int getAbortedTransactions(String persistenceUnitName) {
+
+        Integer count = abortedTransactions.get(persistenceUnitName);
+
+        return ( (count != null) ? count.intValue() : 0 );
+    }
+
+    /**
+     * Retorna a quantidade de conexões JDBC de uma Persistence Unit fechadas à força.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @return Quantidade de conexões fechadas à força.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized int getAbortedConnections(String persistenceUnitName) {
+
+        Integer count = abortedConnections.get(persistenceUnitName);
+
+        return ( (count != null) ? count.intValue() : 0 );
+    }
+
+    /**
+     * Retorna as falhas ocorridas, indexadas pelo nome da Persistence Unit.
+     *
+     * @return Falhas ocorridas no desligamento.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(failures));
+    }
+
+    /**
+     * Indica se todas as Persistence Units foram desligadas sem abortar
+     * transações ou conexões e sem falhas.
+     *
+     * @return true se o desligamento foi limpo.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized boolean isClean() {
+
+        if (!failures.isEmpty()) {
+            return false;
+        }
+
+        for (Integer count: abortedTransactions.values()) {
+            if (count.intValue() > 0) {
+                return false;
+            }
+        }
+
+        for (Integer count: abortedConnections.values()) {
+            if (count.intValue() > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Retorna o tempo total, em milissegundos, gasto no desligamento.
+     *
+     * @return Tempo total em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Define o tempo total, em milissegundos, gasto no desligamento.
+     *
+     * @param totalTime
+     *        Tempo total em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ShutdownReport[abortedTransactions=" + abortedTransactions + ", abortedConnections=" + abortedConnections
+                + ", failures=" + failures.keySet() + ", totalTime=" + totalTime + "]";
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import javax.persistence.EntityManager;
+
+/**
+ * <tt>ThreadSessionScope</tt> é uma classe concreta que associa uma
+ * {@link EntityManager <tt>EntityManager</tt>} a cada thread, de forma que
+ * cada thread trabalhe com o seu próprio contexto de persistência.
+ * <p>
+ * É o escopo padrão de uma {@link LocalPersistenceConnection <tt>conexão local</tt>}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see SessionScope
+ * @see LocalPersistenceConnection
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class ThreadSessionScope extends SessionScope {
+
+    private final ThreadLocal<EntityManager> session = new ThreadLocal<EntityManager>();
+
+    /**
+     * Retorna a {@link EntityManager <tt>EntityManager</tt>} associada à thread corrente.
+     *
+     * @return EntityManager ou <tt>null</tt> se não houver sessão associada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public EntityManager get() {
+        return session.get();
+    }
+
+    /**
+     * Associa uma {@link EntityManager <tt>EntityManager</tt>} à thread corrente.
+     *
+     * @param em
+     *        Uma EntityManager válida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void bind(EntityManager em) {
+        session.set(em);
+    }
+
+    /**
+     * Desfaz a associação da {@link EntityManager <tt>EntityManager</tt>} da thread corrente.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void unbind() {
+        session.remove();
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.conn;
+
+/**
+ * <tt>UnitOfWork</tt> é uma interface responsável por definir um trabalho
+ * composto por várias operações persistentes que devem ser confirmadas ou
+ * canceladas em uma única transação.
+ * <p>
+ * As operações dos DAOs e das Named Queries executadas pelo trabalho, na
+ * mesma thread, participam da transação da unidade de trabalho em vez de
+ * iniciar e confirmar as suas próprias transações.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see br.com.vexit.vexpersistence.dao.intf.DAOIntf#inTransaction(UnitOfWork)
+ * @see br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf#inTransaction(UnitOfWork)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public interface UnitOfWork<T> {
+
+    /**
+     * Executa as operações persistentes da unidade de trabalho.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @throws Exception
+     *         Qualquer exceção cancela a transação da unidade de trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    T execute() throws Exception;
+
+}
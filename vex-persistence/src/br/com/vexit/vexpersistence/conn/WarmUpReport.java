@@ -0,0 +1,178 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <tt>WarmUpReport</tt> é uma classe concreta responsável por reunir o
+ * resultado da inicialização antecipada de Persistence Units.
+ * <p>
+ * Para cada Persistence Unit é registrado o tempo, em milissegundos, gasto na
+ * inicialização ou a falha que a impediu.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see PersistenceConnection#warmUp()
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class WarmUpReport implements Serializable {
+
+    private final Map<String, Long> times = new LinkedHashMap<String, Long>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+    private long totalTime;
+
+    /**
+     * Registra o tempo de inicialização de uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @param time
+     *        Tempo de inicialização em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void addTime(String persistenceUnitName, long time) {
+        times.put(persistenceUnitName, time);
+    }
+
+    /**
+     * Registra a falha na inicialização de uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @param cause
+     *        Causa da falha.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void addFailure(String persistenceUnitName, Throwable cause) {
+        failures.put(persistenceUnitName, cause);
+    }
+
+    /**
+     * Retorna os nomes das Persistence Units inicializadas com sucesso.
+     *
+     * @return Nomes das Persistence Units.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized Set<String> getUnits() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(times.keySet()));
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, gasto na inicialização de uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome da Persistence Unit.
+     *
+     * @return Tempo em milissegundos ou -1 se a Persistence Unit não foi inicializada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized long getTime(String persistenceUnitName) {
+
+        Long time = times.get(persistenceUnitName);
+
+        return ( (time != null) ? time.longValue() : -1 );
+    }
+
+    /**
+     * Retorna as falhas ocorridas, indexadas pelo nome da Persistence Unit.
+     *
+     * @return Falhas ocorridas na inicialização.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(failures));
+    }
+
+    /**
+     * Indica se todas as Persistence Units foram inicializadas com sucesso.
+     *
+     * @return true se não houve falhas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Retorna o tempo total, em milissegundos, gasto na inicialização.
+     *
+     * @return Tempo total em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Define o tempo total, em milissegundos, gasto na inicialização.
+     *
+     * @param totalTime
+     *        Tempo total em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public synchronized void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WarmUpReport[times=" + times + ", failures=" + failures.keySet() + ", totalTime=" + totalTime + "]";
+    }
+
+}
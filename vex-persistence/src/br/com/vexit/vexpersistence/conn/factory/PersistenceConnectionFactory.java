@@ -23,13 +23,21 @@ package br.com.vexit.vexpersistence.conn.factory;
 
 import br.com.vexit.vexpersistence.conn.PersistenceConnection;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <tt>PersistenceConnectionFactory</tt> é uma Factory Method
  * responsável por disponibilizar uma instância de uma
  * {@link PersistenceConnection <tt>PersistenceConnection</tt>}.
+ * <p>
+ * Em um ambiente multi-tenant cada tenant recebe a sua própria conexão,
+ * derivada da Persistence Unit através de um
+ * {@link TenantConnectionRouter <tt>TenantConnectionRouter</tt>}.
  *
- * @version 1.4.1, 05/15/08
+ * @version 1.5, 17/10/26
  *
  * @see PersistenceConnection
  *
@@ -39,7 +47,7 @@ import java.io.Serializable;
  */
 public class PersistenceConnectionFactory implements Serializable {
 
-    private static PersistenceConnection persistenceConnection;
+    private static final ConcurrentMap<String, TenantConnectionRouter> routers = new ConcurrentHashMap<String, TenantConnectionRouter>();
     
     /**
      * Retorna uma instância de uma {@link PersistenceConnection <tt>PersistenceConnection</tt>}
@@ -56,11 +64,76 @@ public class PersistenceConnectionFactory implements Serializable {
      */
     public static PersistenceConnection createPersistenceConnection(String persistenceUnitName) {
 
-        if (PersistenceConnectionFactory.persistenceConnection == null) {
-            PersistenceConnectionFactory.persistenceConnection = PersistenceConnection.getInstance(persistenceUnitName);
+        return PersistenceConnection.getInstance(persistenceUnitName);
+    }
+
+    /**
+     * Retorna a {@link PersistenceConnection <tt>PersistenceConnection</tt>}
+     * de um tenant para operações persistentes.
+     *
+     * @return Uma {@link PersistenceConnection <tt>PersistenceConnection</tt>}.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @see #getTenantConnectionRouter(String)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static PersistenceConnection createPersistenceConnection(String persistenceUnitName, String tenant) {
+
+        return getTenantConnectionRouter(persistenceUnitName).getPersistenceConnection(tenant);
+    }
+
+    /**
+     * Retorna o {@link TenantConnectionRouter <tt>roteador de tenants</tt>} de
+     * uma Persistence Unit, através do qual o limite de conexões abertas e o
+     * tempo de ociosidade podem ser configurados.
+     *
+     * @return Um {@link TenantConnectionRouter <tt>TenantConnectionRouter</tt>}.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static TenantConnectionRouter getTenantConnectionRouter(String persistenceUnitName) {
+
+        TenantConnectionRouter router = routers.get(persistenceUnitName);
+
+        if (router == null) {
+
+            router = new TenantConnectionRouter(persistenceUnitName);
+
+            TenantConnectionRouter registered = routers.putIfAbsent(persistenceUnitName, router);
+
+            if (registered != null) {
+                router = registered;
+            }
         }
 
-        return persistenceConnection;
+        return router;
     }
     
+    /**
+     * Retorna os {@link TenantConnectionRouter <tt>TenantConnectionRouters</tt>} já criados.
+     *
+     * @return Os roteadores de tenants.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static Collection<TenantConnectionRouter> getTenantConnectionRouters() {
+
+        return new ArrayList<TenantConnectionRouter>(routers.values());
+    }
+
 }
@@ -0,0 +1,570 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn.factory;
+
+import br.com.vexit.vexpersistence.conn.LocalPersistenceConnection;
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
+import br.com.vexit.vexpersistence.conn.ShutdownReport;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <tt>TenantConnectionRouter</tt> é uma classe concreta responsável por
+ * direcionar cada tenant para a sua própria
+ * {@link PersistenceConnection <tt>PersistenceConnection</tt>}, derivada de uma
+ * mesma Persistence Unit.
+ * <p>
+ * A quantidade de conexões abertas é limitada: ao atingir o limite, a conexão
+ * usada há mais tempo é fechada. Conexões ociosas além do tempo configurado
+ * também são fechadas. Por padrão cada tenant corresponde a um schema da
+ * fonte de dados (propriedade <tt>hibernate.default_schema</tt>); outras
+ * estratégias podem ser obtidas sobrescrevendo {@link #getTenantProperties(String)}.
+ * <p>
+ * Uma conexão despejada é desligada em segundo plano, de forma coordenada:
+ * as transações em andamento têm até o {@link #setCloseTimeout(long) <tt>tempo
+ * de fechamento</tt>} para terminar. Em seguida ela é desligada
+ * definitivamente: os DAOs e Façades que
+ * ainda a mantêm recebem uma {@link br.com.vexit.vexpersistence.exception.VexPersistenceException
+ * <tt>VexPersistenceException</tt>} em vez de reconstruir, fora do controle do
+ * roteador, a fábrica de conexão. O próximo acesso do tenant através do
+ * roteador abre uma nova conexão.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see PersistenceConnectionFactory
+ * @see TenantStatistics
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class TenantConnectionRouter implements Serializable {
+
+    /** Limite padrão de conexões abertas. */
+    public static final int DEFAULT_MAX_TENANTS = 32;
+
+    /** Tempo padrão, em milissegundos, de espera pelas transações de uma conexão despejada. */
+    public static final long DEFAULT_CLOSE_TIMEOUT = 30000;
+
+    private static final Executor closer = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        public Thread newThread(Runnable r) {
+
+            Thread t = new Thread(r, "vexpersistence-tenant-close");
+
+            t.setDaemon(true);
+
+            return t;
+        }
+    });
+
+    private final String persistenceUnitName;
+
+    private volatile int maxTenants = DEFAULT_MAX_TENANTS;
+    private volatile long idleTimeout;
+    private volatile long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+
+    private volatile boolean drained;
+
+    private final LinkedHashMap<String, Entry> tenants = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final ConcurrentMap<String, TenantStatistics> statistics = new ConcurrentHashMap<String, TenantStatistics>();
+
+    /**
+     * Cria um roteador de tenants para uma Persistence Unit.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public TenantConnectionRouter(String persistenceUnitName) {
+        this.persistenceUnitName = persistenceUnitName;
+    }
+
+    /**
+     * Retorna a {@link PersistenceConnection <tt>conexão</tt>} de um tenant,
+     * abrindo-a se necessário.
+     *
+     * @return Uma {@link PersistenceConnection <tt>PersistenceConnection</tt>}.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @throws VexPersistenceException
+     *         Se o roteador está sendo desligado e a conexão do tenant não está aberta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public PersistenceConnection getPersistenceConnection(String tenant) throws VexPersistenceException {
+
+        TenantStatistics stats = getStatistics(tenant);
+
+        List<Entry> evicted = null;
+
+        PersistenceConnection conn;
+
+        synchronized (tenants) {
+
+            long now = System.currentTimeMillis();
+
+            Entry entry = tenants.get(tenant);
+
+            if (entry != null) {
+
+                stats.hit();
+
+                entry.lastAccess = now;
+
+                return entry.connection;
+            }
+
+            stats.miss();
+
+            // um roteador desligado não abre conexões para novos tenants.
+            if (drained) {
+                throw new VexPersistenceException("A Persistence Unit " + persistenceUnitName + " está sendo desligada");
+            }
+
+            evicted = new ArrayList<Entry>();
+
+            // despejo das conexões ociosas, da menos para a mais recentemente usada.
+            if (idleTimeout > 0) {
+
+                Iterator<Entry> it = tenants.values().iterator();
+
+                while (it.hasNext()) {
+
+                    Entry e = it.next();
+
+                    if ( (now - e.lastAccess) <= idleTimeout ) {
+                        break;
+                    }
+
+                    it.remove();
+
+                    evicted.add(e);
+                }
+            }
+
+            entry = new Entry(tenant, createPersistenceConnection(tenant), now);
+
+            tenants.put(tenant, entry);
+
+            // despejo da conexão usada há mais tempo ao exceder o limite.
+            Iterator<Entry> it = tenants.values().iterator();
+
+            while ( (tenants.size() > maxTenants) && it.hasNext() ) {
+
+                Entry e = it.next();
+
+                if (e != entry) {
+                    it.remove();
+
+                    evicted.add(e);
+                }
+            }
+
+            conn = entry.connection;
+        }
+
+        close(evicted);
+
+        return conn;
+    }
+
+    /**
+     * Fecha a conexão de um tenant, se estiver aberta.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void evict(String tenant) {
+
+        Entry entry;
+
+        synchronized (tenants) {
+            entry = tenants.remove(tenant);
+        }
+
+        if (entry != null) {
+            close(Collections.singletonList(entry));
+        }
+    }
+
+    /**
+     * Fecha as conexões de todos os tenants.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void evictAll() {
+
+        List<Entry> evicted;
+
+        synchronized (tenants) {
+            evicted = new ArrayList<Entry>(tenants.values());
+
+            tenants.clear();
+        }
+
+        close(evicted);
+    }
+
+    /**
+     * Deixa de admitir novas sessões nas conexões de todos os tenants e deixa
+     * de abrir conexões para novos tenants.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void drain() {
+
+        List<Entry> entries;
+
+        synchronized (tenants) {
+
+            drained = true;
+
+            entries = new ArrayList<Entry>(tenants.values());
+        }
+
+        for (Entry e: entries) {
+            e.connection.drain();
+        }
+    }
+
+    /**
+     * Indica se o roteador deixou de abrir conexões para novos tenants.
+     *
+     * @return true se o roteador estiver sendo desligado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    /**
+     * Desliga de forma coordenada as conexões de todos os tenants,
+     * aguardando, no máximo pelo tempo informado, o término das transações em
+     * andamento. Em seguida o roteador não abre conexões para novos tenants.
+     *
+     * @param timeout
+     *        Tempo máximo de espera, compartilhado por todos os tenants.
+     *
+     * @param unit
+     *        Unidade do tempo de espera.
+     *
+     * @param report
+     *        Relatório que recebe as transações e conexões abortadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void shutdown(long timeout, TimeUnit unit, ShutdownReport report) {
+
+        List<Entry> evicted;
+
+        synchronized (tenants) {
+
+            drained = true;
+
+            evicted = new ArrayList<Entry>(tenants.values());
+
+            tenants.clear();
+        }
+
+        // nenhum tenant admite novas sessões enquanto os demais são aguardados.
+        for (Entry e: evicted) {
+            e.connection.drain();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (Entry e: evicted) {
+
+            getStatistics(e.tenant).evict();
+
+            e.connection.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, report);
+        }
+    }
+
+    /**
+     * Retorna as propriedades que derivam a conexão de um tenant a partir da
+     * Persistence Unit. Por padrão define o schema do tenant.
+     *
+     * @return Propriedades que sobrescrevem as da Persistence Unit.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    protected Map<String, String> getTenantProperties(String tenant) {
+
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put("hibernate.default_schema", tenant);
+
+        return properties;
+    }
+
+    private PersistenceConnection createPersistenceConnection(String tenant) {
+
+        Map<String, String> properties = getTenantProperties(tenant);
+
+        properties.put(ConnectionPool.UNIT, persistenceUnitName + "#" + tenant);
+
+        return new LocalPersistenceConnection(persistenceUnitName, properties);
+    }
+
+    private void close(List<Entry> evicted) {
+
+        for (final Entry e: evicted) {
+
+            getStatistics(e.tenant).evict();
+
+            // o desligamento aguarda as transações em andamento fora da thread da requisição.
+            closer.execute(new Runnable() {
+
+                public void run() {
+
+                    ShutdownReport report = new ShutdownReport();
+
+                    try {
+                        e.connection.shutdown(closeTimeout, TimeUnit.MILLISECONDS, report);
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+
+                    for (Throwable cause: report.getFailures().values()) {
+                        cause.printStackTrace();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Retorna os contadores de acesso de um tenant.
+     *
+     * @return Os contadores do tenant.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public TenantStatistics getStatistics(String tenant) {
+
+        TenantStatistics stats = statistics.get(tenant);
+
+        if (stats == null) {
+
+            stats = new TenantStatistics(tenant);
+
+            TenantStatistics registered = statistics.putIfAbsent(tenant, stats);
+
+            if (registered != null) {
+                stats = registered;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Retorna os contadores de acesso de todos os tenants.
+     *
+     * @return Os contadores indexados pelo identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Map<String, TenantStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Retorna a quantidade de conexões de tenants abertas.
+     *
+     * @return Quantidade de conexões abertas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getTenantCount() {
+
+        synchronized (tenants) {
+            return tenants.size();
+        }
+    }
+
+    /**
+     * Retorna o nome da Persistence Unit da qual as conexões são derivadas.
+     *
+     * @return Nome da Persistence Unit.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public String getPersistenceUnitName() {
+        return persistenceUnitName;
+    }
+
+    /**
+     * Retorna o limite de conexões de tenants abertas.
+     *
+     * @return Limite de conexões abertas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getMaxTenants() {
+        return maxTenants;
+    }
+
+    /**
+     * Define o limite de conexões de tenants abertas.
+     *
+     * @param maxTenants
+     *        Limite de conexões abertas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setMaxTenants(int maxTenants) {
+        this.maxTenants = Math.max(1, maxTenants);
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, após o qual uma conexão ociosa é fechada.
+     *
+     * @return Tempo de ociosidade em milissegundos; zero indica que não há limite.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Define o tempo, em milissegundos, após o qual uma conexão ociosa é fechada.
+     *
+     * @param idleTimeout
+     *        Tempo de ociosidade em milissegundos; zero indica que não há limite.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = Math.max(0, idleTimeout);
+    }
+
+    /**
+     * Retorna o tempo, em milissegundos, que uma conexão despejada aguarda o
+     * término das suas transações antes de ser desligada.
+     *
+     * @return Tempo de espera em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    /**
+     * Define o tempo, em milissegundos, que uma conexão despejada aguarda o
+     * término das suas transações antes de ser desligada.
+     *
+     * @param closeTimeout
+     *        Tempo de espera em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setCloseTimeout(long closeTimeout) {
+        this.closeTimeout = Math.max(0, closeTimeout);
+    }
+
+    /**
+     * Conexão aberta de um tenant.
+     */
+    private static class Entry implements Serializable {
+
+        private final String tenant;
+        private final PersistenceConnection connection;
+
+        private long lastAccess;
+
+        private Entry(String tenant, PersistenceConnection connection, long lastAccess) {
+            this.tenant = tenant;
+            this.connection = connection;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn.factory;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <tt>TenantStatistics</tt> é uma classe concreta responsável por manter os
+ * contadores de acesso às conexões de um tenant.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see TenantConnectionRouter
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class TenantStatistics implements Serializable {
+
+    private final String tenant;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Cria os contadores de um tenant.
+     *
+     * @param tenant
+     *        Identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public TenantStatistics(String tenant) {
+        this.tenant = tenant;
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void evict() {
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Retorna o identificador do tenant.
+     *
+     * @return Identificador do tenant.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Retorna a quantidade de acessos atendidos por uma conexão já aberta.
+     *
+     * @return Quantidade de acertos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Retorna a quantidade de acessos que exigiram a abertura de uma conexão.
+     *
+     * @return Quantidade de faltas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Retorna a quantidade de vezes em que a conexão do tenant foi fechada por despejo.
+     *
+     * @return Quantidade de despejos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TenantStatistics[" + tenant + ": hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+}
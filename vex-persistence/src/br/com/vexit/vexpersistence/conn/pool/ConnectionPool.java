@@ -0,0 +1,926 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn.pool;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <tt>ConnectionPool</tt> é uma classe concreta responsável por manter um
+ * pool de conexões JDBC para uma Persistence Unit.
+ * <p>
+ * O pool é utilizado tanto pelas operações JPA, através do
+ * {@link PooledConnectionProvider <tt>PooledConnectionProvider</tt>}, quanto
+ * pelas Stored Procedures. Para ativá-lo basta declarar no arquivo
+ * <tt>persistence.xml</tt>:
+ * <blockquote><pre>
+ *   &lt;property name="hibernate.connection.provider_class"
+ *             value="br.com.vexit.vexpersistence.conn.pool.PooledConnectionProvider"/&gt;
+ *   &lt;property name="vexpersistence.pool.minSize" value="2"/&gt;
+ *   &lt;property name="vexpersistence.pool.maxSize" value="20"/&gt;
+ *   &lt;property name="vexpersistence.pool.maxWait" value="30000"/&gt;
+ *   &lt;property name="vexpersistence.pool.idleTimeout" value="600000"/&gt;
+ *   &lt;property name="vexpersistence.pool.leakThreshold" value="60000"/&gt;
+ *   &lt;property name="vexpersistence.pool.validationQuery" value="select 1"/&gt;
+ * </pre></blockquote>
+ * Os tempos são expressos em milissegundos. Um <tt>leakThreshold</tt> igual a
+ * zero desliga a detecção de conexões não devolvidas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see PooledConnectionProvider
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class ConnectionPool implements Serializable {
+
+    /** Prefixo das propriedades de configuração do pool. */
+    public static final String PREFIX = "vexpersistence.pool.";
+
+    /** Propriedade com o nome da Persistence Unit dona do pool. */
+    public static final String UNIT = PREFIX + "unit";
+
+    private static final ConcurrentMap<String, ConnectionPool> pools = new ConcurrentHashMap<String, ConnectionPool>();
+
+    private final String name;
+    private final String url;
+    private final Properties connectionProperties;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWait;
+    private final long idleTimeout;
+    private final long leakThreshold;
+    private final String validationQuery;
+    private final boolean validateOnBorrow;
+    private final boolean autoCommit;
+    private final Integer isolation;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+    private final ConcurrentMap<PooledConnection, Boolean> borrowed = new ConcurrentHashMap<PooledConnection, Boolean>();
+
+    private int total;
+    private boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    private transient Timer evictor;
+
+    /**
+     * Cria um pool de conexões a partir das propriedades de uma Persistence Unit.
+     *
+     * @param name
+     *        Nome do pool, normalmente o nome da Persistence Unit.
+     *
+     * @param url
+     *        URL JDBC da fonte de dados.
+     *
+     * @param user
+     *        Usuário da fonte de dados.
+     *
+     * @param password
+     *        Senha do usuário da fonte de dados.
+     *
+     * @param props
+     *        Propriedades de configuração do pool, com o prefixo {@link #PREFIX}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public ConnectionPool(String name, String url, String user, String password, Properties props) {
+
+        this.name = name;
+        this.url = url;
+
+        this.connectionProperties = new Properties();
+
+        if (user != null) {
+            connectionProperties.setProperty("user", user);
+        }
+
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+
+        this.maxSize = Math.max(1, getInt(props, "maxSize", 10));
+        this.minSize = Math.min(maxSize, Math.max(0, getInt(props, "minSize", 0)));
+        this.maxWait = getLong(props, "maxWait", 30000L);
+        this.idleTimeout = getLong(props, "idleTimeout", 600000L);
+        this.leakThreshold = getLong(props, "leakThreshold", 0L);
+        this.validationQuery = props.getProperty(PREFIX + "validationQuery");
+        this.validateOnBorrow = Boolean.valueOf(props.getProperty(PREFIX + "validateOnBorrow", "true")).booleanValue();
+        this.autoCommit = Boolean.valueOf(props.getProperty("hibernate.connection.autocommit", "false")).booleanValue();
+
+        String level = props.getProperty("hibernate.connection.isolation");
+
+        this.isolation = ( (level != null) ? Integer.valueOf(level.trim()) : null );
+
+        startEvictor();
+    }
+
+    /**
+     * Registra um pool de conexões com o nome informado, fechando o pool
+     * anteriormente registrado com o mesmo nome, se houver.
+     *
+     * @param pool
+     *        Pool de conexões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void register(ConnectionPool pool) {
+
+        ConnectionPool previous = pools.put(pool.getName(), pool);
+
+        if ( (previous != null) && (previous != pool) ) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Remove o registro de um pool de conexões.
+     *
+     * @param pool
+     *        Pool de conexões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void unregister(ConnectionPool pool) {
+        pools.remove(pool.getName(), pool);
+    }
+
+    /**
+     * Retorna o pool de conexões registrado com o nome informado.
+     *
+     * @param name
+     *        Nome do pool, normalmente o nome da Persistence Unit.
+     *
+     * @return Um pool de conexões ou <tt>null</tt> se não houver pool registrado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ConnectionPool lookup(String name) {
+        return pools.get(name);
+    }
+
+    /**
+     * Obtém uma conexão do pool, aguardando no máximo <tt>maxWait</tt>
+     * milissegundos por uma conexão livre. A conexão deve ser devolvida ao
+     * pool através de {@link Connection#close()}.
+     *
+     * @return Uma conexão JDBC.
+     *
+     * @throws SQLException
+     *         Se o pool estiver fechado, se o tempo de espera se esgotar ou
+     *         se não for possível abrir uma nova conexão.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Connection getConnection() throws SQLException {
+
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(maxWait);
+
+        while (true) {
+
+            PooledConnection pc = null;
+            boolean create = false;
+
+            lock.lock();
+
+            try {
+
+                while (true) {
+
+                    if (closed) {
+                        throw new SQLException("Pool de conexões " + name + " fechado.");
+                    }
+
+                    if (!idle.isEmpty()) {
+                        pc = idle.removeLast();
+                        break;
+                    }
+
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+
+                        throw new SQLException("Tempo de espera por uma conexão do pool " + name + " esgotado (" + maxWait + " ms).");
+                    }
+
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                        throw new SQLException("Espera por uma conexão do pool " + name + " interrompida.");
+                    }
+                }
+
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+
+                try {
+                    pc = new PooledConnection(openConnection());
+                } catch (SQLException e) {
+                    discard(null);
+
+                    throw e;
+                } catch (RuntimeException e) {
+                    discard(null);
+
+                    throw e;
+                }
+
+            } else if (validateOnBorrow && !isValid(pc)) {
+
+                discard(pc);
+
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+
+            borrowCount.incrementAndGet();
+            waitTime.addAndGet(waited);
+
+            long max = maxWaitTime.get();
+
+            while ( (waited > max) && !maxWaitTime.compareAndSet(max, waited) ) {
+                max = maxWaitTime.get();
+            }
+
+            return lease(pc);
+        }
+    }
+
+    /**
+     * Fecha o pool e todas as conexões livres. As conexões em uso são
+     * fechadas quando devolvidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void close() {
+
+        List<PooledConnection> discarded;
+
+        lock.lock();
+
+        try {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            discarded = new ArrayList<PooledConnection>(idle);
+
+            idle.clear();
+            total -= discarded.size();
+
+            available.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
+
+        if (evictor != null) {
+            evictor.cancel();
+        }
+
+        for (PooledConnection pc: discarded) {
+            closeQuietly(pc.physical);
+        }
+
+        unregister(this);
+    }
+
+    /**
+     * Fecha as conexões em uso que ainda não foram devolvidas ao pool.
+     *
+     * @return Quantidade de conexões fechadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int abortActive() {
+
+        int count = 0;
+
+        for (PooledConnection pc: borrowed.keySet()) {
+
+            if (borrowed.remove(pc) != null) {
+
+                closeQuietly(pc.physical);
+
+                discard(null);
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private Connection openConnection() throws SQLException {
+
+        Connection conn = DriverManager.getConnection(url, connectionProperties);
+
+        try {
+
+            conn.setAutoCommit(autoCommit);
+
+            if (isolation != null) {
+                conn.setTransactionIsolation(isolation.intValue());
+            }
+
+        } catch (SQLException e) {
+
+            closeQuietly(conn);
+
+            throw e;
+        }
+
+        return conn;
+    }
+
+    private boolean isValid(PooledConnection pc) {
+
+        try {
+
+            if (pc.physical.isClosed()) {
+                return false;
+            }
+
+            if (validationQuery != null) {
+
+                Statement st = pc.physical.createStatement();
+
+                try {
+                    st.execute(validationQuery);
+                } finally {
+                    st.close();
+                }
+
+                if (!autoCommit) {
+                    pc.physical.rollback();
+                }
+            }
+
+            return true;
+
+        } catch (SQLException e) {
+
+            return false;
+        }
+    }
+
+    private Connection lease(PooledConnection pc) {
+
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.borrowStack = ( (leakThreshold > 0) ? new Throwable("Conexão obtida do pool " + name) : null );
+        pc.leakReported = false;
+
+        borrowed.put(pc, Boolean.TRUE);
+
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class[] { Connection.class },
+                new Lease(pc));
+    }
+
+    private void release(PooledConnection pc) {
+
+        if (borrowed.remove(pc) == null) {
+            return;
+        }
+
+        boolean reusable;
+
+        try {
+
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+            }
+
+            pc.physical.setAutoCommit(autoCommit);
+            pc.physical.setReadOnly(false);
+            pc.physical.clearWarnings();
+
+            reusable = !pc.physical.isClosed();
+
+        } catch (SQLException e) {
+
+            reusable = false;
+        }
+
+        if (!reusable) {
+            discard(pc);
+
+            return;
+        }
+
+        pc.lastUsed = System.currentTimeMillis();
+        pc.borrowStack = null;
+
+        lock.lock();
+
+        try {
+
+            if (!closed) {
+
+                idle.addLast(pc);
+
+                available.signal();
+
+                return;
+            }
+
+        } finally {
+            lock.unlock();
+        }
+
+        discard(pc);
+    }
+
+    private void discard(PooledConnection pc) {
+
+        if (pc != null) {
+            closeQuietly(pc.physical);
+        }
+
+        lock.lock();
+
+        try {
+            total--;
+
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startEvictor() {
+
+        long period = idleTimeout;
+
+        if ( (leakThreshold > 0) && ( (period <= 0) || (leakThreshold < period) ) ) {
+            period = leakThreshold;
+        }
+
+        if ( (period <= 0) && (minSize == 0) ) {
+            return;
+        }
+
+        period = Math.max(1000L, ( (period > 0) ? period / 2 : 30000L ));
+
+        evictor = new Timer("vexpersistence-pool-" + name, true);
+
+        evictor.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                evict();
+            }
+        }, 0, period);
+    }
+
+    /**
+     * Fecha as conexões ociosas há mais de <tt>idleTimeout</tt> milissegundos,
+     * completa o tamanho mínimo do pool e reporta as conexões em uso há mais
+     * de <tt>leakThreshold</tt> milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    protected void evict() {
+
+        long now = System.currentTimeMillis();
+
+        List<PooledConnection> expired = new ArrayList<PooledConnection>();
+
+        int missing;
+
+        lock.lock();
+
+        try {
+
+            if (closed) {
+                return;
+            }
+
+            if (idleTimeout > 0) {
+
+                Iterator<PooledConnection> it = idle.iterator();
+
+                while ( it.hasNext() && ( (total - expired.size()) > minSize ) ) {
+
+                    PooledConnection pc = it.next();
+
+                    if ( (now - pc.lastUsed) > idleTimeout ) {
+                        it.remove();
+
+                        expired.add(pc);
+                    }
+                }
+            }
+
+            total -= expired.size();
+
+            missing = minSize - total;
+
+            if (missing > 0) {
+                total += missing;
+            }
+
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pc: expired) {
+            closeQuietly(pc.physical);
+        }
+
+        for (int i = 0; i < missing; i++) {
+
+            try {
+
+                PooledConnection pc = new PooledConnection(openConnection());
+
+                lock.lock();
+
+                try {
+
+                    // o pool pode ter sido fechado durante a abertura da conexão.
+                    if (!closed) {
+
+                        idle.addLast(pc);
+
+                        available.signal();
+
+                        continue;
+                    }
+
+                } finally {
+                    lock.unlock();
+                }
+
+                discard(pc);
+
+                // as vagas reservadas que restam também são devolvidas.
+                for (int j = i + 1; j < missing; j++) {
+                    discard(null);
+                }
+
+                break;
+
+            } catch (SQLException e) {
+
+                discard(null);
+            }
+        }
+
+        if (leakThreshold > 0) {
+
+            for (PooledConnection pc: borrowed.keySet()) {
+
+                if ( !pc.leakReported && ( (now - pc.borrowedAt) > leakThreshold ) ) {
+
+                    pc.leakReported = true;
+
+                    leakCount.incrementAndGet();
+
+                    Throwable stack = pc.borrowStack;
+
+                    if (stack != null) {
+                        stack.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retorna o nome do pool.
+     *
+     * @return Nome do pool.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retorna a quantidade de conexões em uso.
+     *
+     * @return Quantidade de conexões em uso.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Retorna a quantidade de conexões livres.
+     *
+     * @return Quantidade de conexões livres.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getIdleCount() {
+
+        lock.lock();
+
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retorna a quantidade total de conexões abertas pelo pool.
+     *
+     * @return Quantidade total de conexões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getTotalCount() {
+
+        lock.lock();
+
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retorna a quantidade de conexões obtidas do pool.
+     *
+     * @return Quantidade de conexões obtidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Retorna o tempo total, em milissegundos, gasto aguardando conexões.
+     *
+     * @return Tempo total de espera em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+
+    /**
+     * Retorna o maior tempo, em milissegundos, gasto aguardando uma conexão.
+     *
+     * @return Maior tempo de espera em milissegundos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+    }
+
+    /**
+     * Retorna a quantidade de esperas por conexão que se esgotaram.
+     *
+     * @return Quantidade de esperas esgotadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Retorna a quantidade de conexões reportadas como não devolvidas.
+     *
+     * @return Quantidade de conexões não devolvidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * Indica se o pool está fechado.
+     *
+     * @return true se o pool estiver fechado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isClosed() {
+
+        lock.lock();
+
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[" + name + ": active=" + getActiveCount() + ", idle=" + getIdleCount()
+                + ", borrowed=" + getBorrowCount() + ", waitTime=" + getWaitTime() + "ms, leaks=" + getLeakCount() + "]";
+    }
+
+    private static int getInt(Properties props, String key, int defaultValue) {
+
+        String value = props.getProperty(PREFIX + key);
+
+        return ( (value != null) ? Integer.parseInt(value.trim()) : defaultValue );
+    }
+
+    private static long getLong(Properties props, String key, long defaultValue) {
+
+        String value = props.getProperty(PREFIX + key);
+
+        return ( (value != null) ? Long.parseLong(value.trim()) : defaultValue );
+    }
+
+    private static void closeQuietly(Connection conn) {
+
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // a conexão já está sendo descartada.
+        }
+    }
+
+    /**
+     * Conexão física mantida pelo pool.
+     */
+    private static class PooledConnection {
+
+        private final Connection physical;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Throwable borrowStack;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * Empréstimo de uma conexão: devolve a conexão ao pool quando fechado.
+     */
+    private class Lease implements InvocationHandler {
+
+        private final PooledConnection pc;
+
+        private volatile boolean released;
+
+        private Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            String methodName = method.getName();
+
+            if (methodName.equals("close")) {
+
+                if (!released) {
+                    released = true;
+
+                    release(pc);
+                }
+
+                return null;
+            }
+
+            if (methodName.equals("isClosed")) {
+                return Boolean.valueOf(released || pc.physical.isClosed());
+            }
+
+            if (methodName.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+
+            if (methodName.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+
+            if (methodName.equals("toString")) {
+                return "PooledConnection[" + name + ", " + pc.physical + "]";
+            }
+
+            if (released) {
+                throw new SQLException("Conexão já devolvida ao pool " + name + ".");
+            }
+
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.hibernate.HibernateException;
+import org.hibernate.connection.ConnectionProvider;
+
+/**
+ * <tt>PooledConnectionProvider</tt> é uma classe concreta responsável por
+ * fornecer ao Hibernate as conexões de um {@link ConnectionPool <tt>ConnectionPool</tt>},
+ * de forma que as operações JPA e as Stored Procedures compartilhem o mesmo pool.
+ * <p>
+ * O pool é registrado com o nome da Persistence Unit e pode ser obtido através
+ * de {@link br.com.vexit.vexpersistence.conn.PersistenceConnection#getConnectionPool()}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see ConnectionPool
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+    private ConnectionPool pool;
+
+    /**
+     * Cria o {@link ConnectionPool <tt>pool de conexões</tt>} a partir das
+     * propriedades da Persistence Unit.
+     *
+     * @param props
+     *        Propriedades da Persistence Unit.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void configure(Properties props) throws HibernateException {
+
+        String driver = props.getProperty("hibernate.connection.driver_class");
+        String url = props.getProperty("hibernate.connection.url");
+
+        if (url == null) {
+            throw new HibernateException("Propriedade hibernate.connection.url não informada.");
+        }
+
+        if (driver != null) {
+
+            try {
+                Class.forName(driver.trim(), true, Thread.currentThread().getContextClassLoader());
+            } catch (ClassNotFoundException e) {
+
+                try {
+                    Class.forName(driver.trim());
+                } catch (ClassNotFoundException ex) {
+                    throw new HibernateException("Driver JDBC não encontrado: " + driver, ex);
+                }
+            }
+        }
+
+        pool = new ConnectionPool(
+                props.getProperty(ConnectionPool.UNIT, url),
+                url,
+                props.getProperty("hibernate.connection.username"),
+                props.getProperty("hibernate.connection.password"),
+                props);
+
+        ConnectionPool.register(pool);
+    }
+
+    /**
+     * Obtém uma conexão do pool.
+     *
+     * @return Uma conexão JDBC.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Devolve uma conexão ao pool.
+     *
+     * @param conn
+     *        Conexão obtida através de {@link #getConnection()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void closeConnection(Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    /**
+     * Fecha o pool de conexões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void close() throws HibernateException {
+
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * O pool não suporta a liberação agressiva de conexões.
+     *
+     * @return false.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+}
@@ -23,13 +23,14 @@ package br.com.vexit.vexpersistence.dao;
 
 import br.com.vexit.vexpersistence.dao.impl.DAOInjectedSession;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import java.util.Collection;
 import javax.persistence.EntityManager;
 
 /**
  * <tt>DAOInjectedSessionHandler</tt> é uma classe concreta responsável por
  * uma instância para um {@link DAOIntf <tt>DAO concreto</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see DAOIntf
  * @see DAOInjectedSession
@@ -191,4 +192,68 @@ public class DAOInjectedSessionHandler extends DAOInjectedSession {
     public void afterRemove(Object entity) {
     }
 
+    /**
+     * Callback Method executado antes de serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beforeRemoveAll(Class clazz, Collection<?> ids) {
+    }
+
+    /**
+     * Callback Method executado após serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void afterRemoveAll(Class clazz, Collection<?> ids) {
+    }
+
+    /**
+     * Callback Method executado antes de serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beforeUpsertAll(Class clazz, Collection<?> entities) {
+    }
+
+    /**
+     * Callback Method executado após serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void afterUpsertAll(Class clazz, Collection<?> entities) {
+    }
+
 }
\ No newline at end of file
@@ -21,14 +21,17 @@
 
 package br.com.vexit.vexpersistence.dao;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
 import br.com.vexit.vexpersistence.dao.impl.DAOLocalSession;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import java.util.Collection;
 
 /**
  * <tt>DAOLocalSessionHandler</tt> é uma classe concreta responsável por
  * uma instância para um {@link DAOIntf <tt>DAO concreto</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see DAOIntf
  * @see DAOLocalSession
@@ -58,6 +61,69 @@ public class DAOLocalSessionHandler extends DAOLocalSession {
         super(persistenceUnitName, keepSessionAlive);
     }
 
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * o nome da conexão local, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSessionHandler(String persistenceUnitName, boolean keepSessionAlive, AccessMode accessMode) {
+        super(persistenceUnitName, keepSessionAlive, accessMode);
+    }
+
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * a conexão e a forma de tratamento da sessão.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSessionHandler(PersistenceConnection persistenceConnection, boolean keepSessionAlive) {
+        super(persistenceConnection, keepSessionAlive);
+    }
+
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * a conexão, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSessionHandler(PersistenceConnection persistenceConnection, boolean keepSessionAlive, AccessMode accessMode) {
+        super(persistenceConnection, keepSessionAlive, accessMode);
+    }
+
     /**
      * Callback Method executado antes de ser feita uma busca através de uma classe válida.
      *
@@ -194,4 +260,68 @@ public class DAOLocalSessionHandler extends DAOLocalSession {
     public void afterRemove(Object entity) {
     }
 
+    /**
+     * Callback Method executado antes de serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beforeRemoveAll(Class clazz, Collection<?> ids) {
+    }
+
+    /**
+     * Callback Method executado após serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void afterRemoveAll(Class clazz, Collection<?> ids) {
+    }
+
+    /**
+     * Callback Method executado antes de serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void beforeUpsertAll(Class clazz, Collection<?> entities) {
+    }
+
+    /**
+     * Callback Method executado após serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void afterUpsertAll(Class clazz, Collection<?> entities) {
+    }
+
 }
\ No newline at end of file
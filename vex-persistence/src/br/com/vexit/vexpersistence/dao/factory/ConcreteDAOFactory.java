@@ -21,6 +21,8 @@
 
 package br.com.vexit.vexpersistence.dao.factory;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
 import br.com.vexit.vexpersistence.dao.DAOInjectedSessionHandler;
 import br.com.vexit.vexpersistence.dao.DAOLocalSessionHandler;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
@@ -30,7 +32,7 @@ import javax.persistence.EntityManager;
  * <tt>ConcreteDAOFactory</tt> é uma classe concreta que representa uma Factory Method
  * responsável por disponibilizar uma instância de um {@link DAOIntf <tt>DAO genérico</tt>}.
  *
- * @version 1.4.2, 01/07/09
+ * @version 1.5, 17/10/26
  *
  * @see DAOFactory
  * @see DAOIntf
@@ -54,8 +56,14 @@ public class ConcreteDAOFactory extends DAOFactory {
     private static String aPersistenceUnitName;
     private static EntityManager aEM;
 
+    private final PersistenceConnection persistenceConnection;
+
     private ConcreteDAOFactory() {
+        this(null);
+    }
 
+    private ConcreteDAOFactory(PersistenceConnection persistenceConnection) {
+        this.persistenceConnection = persistenceConnection;
     }
 
     /**
@@ -81,6 +89,30 @@ public class ConcreteDAOFactory extends DAOFactory {
         return getInstance();
     }
 
+    /**
+     * Retorna uma instância de uma {@link ConcreteDAOFactory <tt>Factory Method</tt>}
+     * para Data Access Objects a partir de uma conexão informada.
+     * <p>
+     * Cada chamada retorna uma nova Factory vinculada à conexão, que não é
+     * afetada pelas chamadas seguintes de <tt>getInstance</tt>.
+     *
+     * @return Uma {@link ConcreteDAOFactory <tt>Factory Method</tt>} para Data Access Objects.
+     *
+     * @param persistenceConnection
+     *        Instância de uma {@link PersistenceConnection <tt>PersistenceConnection</tt>} válida para operações persistentes.
+     *
+     * @see #getInstance(java.lang.String)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ConcreteDAOFactory getInstance(PersistenceConnection persistenceConnection) {
+
+        // a conexão pertence à instância: conexões de tenants diferentes não compartilham a Factory.
+        return new ConcreteDAOFactory(persistenceConnection);
+    }
+
     /**
      * Retorna uma instância (Singleton) de uma {@link ConcreteDAOFactory <tt>Factory Method</tt>}
      * para Data Access Objects a partir de uma conexão obtida por Dependency Injection.
@@ -140,11 +172,58 @@ public class ConcreteDAOFactory extends DAOFactory {
      */
     @Override
     public DAOIntf createDAO(boolean keepSessionAlive) {
+        return createDAO(keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Retorna uma instância de uma {@link DAOIntf <tt>DAO</tt>} com a forma de acesso informada.
+     *
+     * @return Um DAO para operações persistentes.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createDAO(boolean, AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public DAOIntf createDAO(AccessMode accessMode) {
+        return createDAO(false, accessMode);
+    }
+
+    /**
+     * Retorna uma instância de uma {@link DAOIntf <tt>DAO</tt>} com a forma de acesso informada.
+     * <p>
+     * A forma de acesso não se aplica aos DAOs de uma conexão obtida por
+     * Dependency Injection, cujas transações são controladas pelo container.
+     *
+     * @return Um DAO para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createDAO(AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public DAOIntf createDAO(boolean keepSessionAlive, AccessMode accessMode) {
 
         try {
 
-            if (ConcreteDAOFactory.aEM == null) {
-                dao = new DAOLocalSessionHandler(ConcreteDAOFactory.aPersistenceUnitName, keepSessionAlive);
+            if (persistenceConnection != null) {
+                dao = new DAOLocalSessionHandler(persistenceConnection, keepSessionAlive, accessMode);
+            } else if (ConcreteDAOFactory.aEM == null) {
+                dao = new DAOLocalSessionHandler(ConcreteDAOFactory.aPersistenceUnitName, keepSessionAlive, accessMode);
             } else {
                 dao = new DAOInjectedSessionHandler(ConcreteDAOFactory.aEM);
             }
@@ -21,6 +21,7 @@
 
 package br.com.vexit.vexpersistence.dao.factory;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
 import java.io.Serializable;
 
@@ -28,7 +29,7 @@ import java.io.Serializable;
  * <tt>DAOFactory</tt> é uma classe abstrata que representa uma Factory Method
  * responsável por disponibilizar uma instância de um {@link DAOIntf <tt>DAO genérico</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see ConcreteDAOFactory
  * @see DAOIntf
@@ -69,4 +70,40 @@ public abstract class DAOFactory implements Serializable {
      */
     public abstract DAOIntf createDAO(boolean keepSessionAlive);
 
+    /**
+     * Retorna uma instância de uma {@link DAOIntf <tt>DAO</tt>} com a forma de acesso informada.
+     *
+     * @return Um {@link DAOIntf <tt>DAO</tt>} para operações persistentes.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createDAO(boolean, AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract DAOIntf createDAO(AccessMode accessMode);
+
+    /**
+     * Retorna uma instância de uma {@link DAOIntf <tt>DAO</tt>} com a forma de acesso informada.
+     *
+     * @return Um {@link DAOIntf <tt>DAO</tt>} para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createDAO(AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract DAOIntf createDAO(boolean keepSessionAlive, AccessMode accessMode);
+
 }
\ No newline at end of file
@@ -0,0 +1,545 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.hibernate.EntityMode;
+import org.hibernate.Session;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * <tt>BulkStatements</tt> é uma classe concreta responsável por montar e
+ * executar os comandos JPQL das operações em lote sobre chaves primárias,
+ * compartilhados pelas sessões locais e injetadas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see EntityMetadata
+ * @see DatabaseDialect
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class BulkStatements {
+
+    // caminho de atributos: identificadores Java separados por pontos.
+    private static final Pattern PROPERTY_PATH = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+
+    private BulkStatements() {
+    }
+
+    /**
+     * Retorna a quantidade de chaves primárias por comando adequada ao banco
+     * de dados da sessão.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @return Quantidade de chaves primárias por comando.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static int getChunkSize(EntityManager em) {
+        return DatabaseDialect.of(em).getMaxInListSize();
+    }
+
+    /**
+     * Monta a lista de parâmetros posicionais <tt>?1, ?2, ...</tt> de uma lista <tt>IN</tt>.
+     *
+     * @param size
+     *        Quantidade de parâmetros.
+     *
+     * @return A lista de parâmetros entre parênteses.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static String inList(int size) {
+
+        StringBuilder sb = new StringBuilder(size * 6);
+
+        sb.append("(");
+
+        for (int i = 1; i <= size; i++) {
+
+            if (i > 1) {
+                sb.append(", ");
+            }
+
+            sb.append("?").append(i);
+        }
+
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Remove, sem carregá-las, as entidades de uma classe com as chaves
+     * primárias informadas.
+     * <p>
+     * Chaves simples são removidas em um único <tt>DELETE ... WHERE id IN (...)</tt>;
+     * chaves <tt>@EmbeddedId</tt> em um <tt>DELETE</tt> por chave e chaves
+     * <tt>@IdClass</tt>, que não podem ser comparadas em JPQL, são carregadas
+     * e removidas uma a uma.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param ids
+     *        Chaves primárias, no máximo {@link #getChunkSize(EntityManager)}.
+     *
+     * @return Quantidade de entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static int delete(EntityManager em, Class<?> clazz, List<?> ids) {
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        int count = 0;
+
+        if (metadata.isIdClass()) {
+
+            for (Object id: ids) {
+
+                Object entity = em.find(clazz, id);
+
+                if (entity != null) {
+                    em.remove(entity);
+
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        String ql = "delete from " + metadata.getEntityName() + " e where e." + metadata.getIdName();
+
+        if (metadata.isCompositeId()) {
+
+            Query q = em.createQuery(ql + " = ?1");
+
+            for (Object id: ids) {
+                count += q.setParameter(1, id).executeUpdate();
+            }
+
+            return count;
+        }
+
+        Query q = em.createQuery(ql + " in " + inList(ids.size()));
+
+        for (int i = 0; i < ids.size(); i++) {
+            q.setParameter(i + 1, ids.get(i));
+        }
+
+        return q.executeUpdate();
+    }
+
+    /**
+     * Retorna a entidade de uma classe com a chave primária informada se ela
+     * já estiver carregada no contexto de persistência da sessão, sem acessar
+     * o banco de dados e sem criar proxies.
+     *
+     * @param session
+     *        Sessão do Hibernate.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @return A entidade gerenciada ou <tt>null</tt>, se ela não estiver carregada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static Object getManaged(Session session, Class<?> clazz, Object id) {
+
+        if ( (!(session instanceof SessionImplementor)) || (!(id instanceof Serializable)) ) {
+            return null;
+        }
+
+        SessionImplementor si = (SessionImplementor) session;
+
+        EntityPersister persister = si.getFactory().getEntityPersister(clazz.getName());
+
+        return si.getPersistenceContext().getEntity(new EntityKey((Serializable) id, persister, EntityMode.POJO));
+    }
+
+    /**
+     * Informa se a entidade de uma classe com a chave primária informada já
+     * está carregada no contexto de persistência da sessão.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @return true - A entidade está carregada ou a sessão não é do Hibernate.
+     *         false - A entidade não está carregada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static boolean isManaged(EntityManager em, Class<?> clazz, Object id) {
+
+        Object delegate = em.getDelegate();
+
+        if (!(delegate instanceof Session)) {
+            return true;
+        }
+
+        return (getManaged((Session) delegate, clazz, id) != null);
+    }
+
+    /**
+     * Descarta do contexto de persistência da sessão as entidades de uma
+     * classe com as chaves primárias informadas, como após um <tt>DELETE</tt>
+     * em lote, que não as alcança. Entidades não carregadas são ignoradas.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param ids
+     *        Chaves primárias das entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static void evict(EntityManager em, Class<?> clazz, Collection<?> ids) {
+
+        Object delegate = em.getDelegate();
+
+        if (!(delegate instanceof Session)) {
+            return;
+        }
+
+        Session session = (Session) delegate;
+
+        for (Object id: ids) {
+
+            Object managed = getManaged(session, clazz, id);
+
+            if (managed != null) {
+                session.evict(managed);
+            }
+        }
+    }
+
+    /**
+     * Substitui um proxy inicializado pela sua implementação, que pode ser
+     * serializada sem a sessão.
+     *
+     * @param entity
+     *        Entidade carregada pela sessão.
+     *
+     * @return A implementação do proxy ou a própria entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static Object unproxy(Object entity) {
+
+        if (entity instanceof HibernateProxy) {
+            return ((HibernateProxy) entity).getHibernateLazyInitializer().getImplementation();
+        }
+
+        return entity;
+    }
+
+    /**
+     * Carrega as entidades de uma classe com as chaves primárias informadas.
+     * <p>
+     * As entidades já presentes no contexto de persistência da sessão são
+     * reaproveitadas; as demais são buscadas em comandos
+     * <tt>SELECT ... WHERE id IN (...)</tt> de no máximo
+     * {@link #getChunkSize(EntityManager)} chaves. Chaves compostas são
+     * buscadas uma a uma.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param ids
+     *        Chaves primárias, do mesmo tipo do atributo da chave primária.
+     *
+     * @return As entidades indexadas pelas chaves, na ordem informada; chaves
+     *         inexistentes são mapeadas para <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static <T> Map<Object, T> find(EntityManager em, Class<T> clazz, Collection<?> ids) {
+
+        Map<Object, T> result = new LinkedHashMap<Object, T>();
+
+        for (Object id: ids) {
+            result.put(id, null);
+        }
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        Object delegate = em.getDelegate();
+
+        if ( metadata.isCompositeId() || (!(delegate instanceof Session)) ) {
+
+            for (Object id: result.keySet()) {
+                result.put(id, em.find(clazz, id));
+            }
+
+            return result;
+        }
+
+        Session session = (Session) delegate;
+
+        List<Object> pending = new ArrayList<Object>();
+
+        // entidades já carregadas no contexto de persistência não são buscadas novamente.
+        for (Object id: result.keySet()) {
+
+            Object managed = getManaged(session, clazz, id);
+
+            if (clazz.isInstance(managed)) {
+                result.put(id, clazz.cast(managed));
+            } else {
+                pending.add(id);
+            }
+        }
+
+        int chunkSize = getChunkSize(em);
+
+        String ql = "select e from " + metadata.getEntityName() + " e where e." + metadata.getIdName() + " in ";
+
+        for (int from = 0; from < pending.size(); from += chunkSize) {
+
+            List<Object> chunk = pending.subList(from, Math.min(from + chunkSize, pending.size()));
+
+            Query q = em.createQuery(ql + inList(chunk.size()));
+
+            for (int i = 0; i < chunk.size(); i++) {
+                q.setParameter(i + 1, chunk.get(i));
+            }
+
+            for (Object entity: q.getResultList()) {
+
+                Object id = session.getIdentifier(entity);
+
+                if (result.containsKey(id)) {
+                    result.put(id, (T) entity);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Conta as entidades de uma classe que atendem aos critérios informados,
+     * através de um <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param criteria
+     *        Valores dos atributos, comparados por igualdade; valores
+     *        <tt>null</tt> são comparados através de <tt>IS NULL</tt>.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @throws VexPersistenceException
+     *         Se um critério não for um atributo da classe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static long count(EntityManager em, Class<?> clazz, Map<String, ?> criteria) throws VexPersistenceException {
+
+        StringBuilder ql = new StringBuilder("select count(e) from ").append(EntityMetadata.of(clazz).getEntityName()).append(" as e");
+
+        List<Object> params = new ArrayList<Object>();
+
+        if (criteria != null) {
+
+            boolean first = true;
+
+            for (Map.Entry<String, ?> c: criteria.entrySet()) {
+
+                // os nomes dos critérios são concatenados ao JPQL.
+                checkProperty(em, clazz, c.getKey());
+
+                ql.append( first ? " where " : " and " ).append("e.").append(c.getKey());
+
+                first = false;
+
+                if (c.getValue() == null) {
+
+                    ql.append(" is null");
+
+                } else {
+
+                    params.add(c.getValue());
+
+                    ql.append(" = ?").append(params.size());
+                }
+            }
+        }
+
+        Query q = em.createQuery(ql.toString());
+
+        for (int i = 0; i < params.size(); i++) {
+            q.setParameter(i + 1, params.get(i));
+        }
+
+        return ((Number) q.getSingleResult()).longValue();
+    }
+
+    /**
+     * Recusa o nome de um critério que não seja um caminho de atributos da
+     * classe de entidade. O primeiro atributo do caminho é verificado no
+     * mapeamento do Hibernate, quando disponível.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param path
+     *        Nome do atributo ou caminho de atributos separados por pontos.
+     *
+     * @throws VexPersistenceException
+     *         Se o nome não for um atributo da classe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private static void checkProperty(EntityManager em, Class<?> clazz, String path) throws VexPersistenceException {
+
+        if ( (path == null) || (!PROPERTY_PATH.matcher(path).matches()) ) {
+            throw new VexPersistenceException("Critério inválido para " + clazz.getName() + ": " + path);
+        }
+
+        Object delegate = em.getDelegate();
+
+        if (!(delegate instanceof Session)) {
+            return;
+        }
+
+        ClassMetadata metadata = ((Session) delegate).getSessionFactory().getClassMetadata(clazz);
+
+        if (metadata == null) {
+            return;
+        }
+
+        int dot = path.indexOf('.');
+
+        String property = ( (dot < 0) ? path : path.substring(0, dot) );
+
+        if ( (!Arrays.asList(metadata.getPropertyNames()).contains(property)) && (!property.equals(EntityMetadata.of(clazz).getIdName())) ) {
+            throw new VexPersistenceException("Critério inválido para " + clazz.getName() + ": " + path);
+        }
+    }
+
+    /**
+     * Verifica se existe a entidade de uma classe com a chave primária
+     * informada, selecionando somente a chave, sem carregar a entidade.
+     * <p>
+     * Chaves <tt>@IdClass</tt>, que não podem ser comparadas em JPQL, são
+     * verificadas através do carregamento da entidade.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @return true - A entidade existe.
+     *         false - A entidade não existe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static boolean exists(EntityManager em, Class<?> clazz, Object id) {
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        if (metadata.isIdClass()) {
+            return (em.find(clazz, id) != null);
+        }
+
+        String ql = "select e." + metadata.getIdName() + " from " + metadata.getEntityName() + " as e where e." + metadata.getIdName() + " = ?1";
+
+        return (!em.createQuery(ql).setParameter(1, id).setMaxResults(1).getResultList().isEmpty());
+    }
+
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import br.com.vexit.vexpersistence.dao.intf.UpsertResult;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.hibernate.EntityMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+
+/**
+ * <tt>BulkUpsert</tt> é uma classe concreta responsável por incluir ou
+ * atualizar em lote as entidades de uma classe, conforme a existência das
+ * suas chaves primárias.
+ * <p>
+ * As chaves primárias já existentes são consultadas antes da gravação, em
+ * blocos, para informar as quantidades de inclusões e atualizações. Quando a
+ * entidade é mapeada em uma única tabela, sem herança e sem versão, a
+ * gravação é feita por comandos SQL em lote: o comando de <i>upsert</i> do
+ * banco de dados (PostgreSQL, MySQL e H2) ou, nos demais, um
+ * <tt>UPDATE</tt> para as chaves existentes e um <tt>INSERT</tt> para as
+ * novas. Nos demais mapeamentos as entidades são gravadas pela sessão.
+ * <p>
+ * Entidades sem chave primária atribuída são sempre incluídas pela sessão.
+ * As chaves <tt>@IdClass</tt> são comparadas pela instância completa da
+ * classe da chave, e as suas entidades são sempre gravadas pela sessão.
+ * As entidades gravadas são descartadas da sessão; as demais entidades
+ * gerenciadas, como as de uma unidade de trabalho, são preservadas.
+ * Entidades repetidas com a mesma chave primária são gravadas uma única vez,
+ * prevalecendo a última.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DatabaseDialect#upsert(String, List, String[], List)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class BulkUpsert {
+
+    private final EntityManager em;
+    private final Class<?> clazz;
+    private final EntityMetadata metadata;
+
+    // instâncias gerenciadas gravadas desde o último flush.
+    private final List<Object> written = new ArrayList<Object>();
+
+    private BulkUpsert(EntityManager em, Class<?> clazz) {
+        this.em = em;
+        this.clazz = clazz;
+        this.metadata = EntityMetadata.of(clazz);
+    }
+
+    /**
+     * Inclui ou atualiza as entidades de uma classe na transação corrente.
+     *
+     * @param em
+     *        Sessão com o banco de dados, com uma transação ativa.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param entities
+     *        Entidades a serem gravadas.
+     *
+     * @return As quantidades de inclusões e atualizações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static UpsertResult upsert(EntityManager em, Class<?> clazz, Collection<?> entities) throws SQLException {
+        return new BulkUpsert(em, clazz).upsert(entities);
+    }
+
+    private UpsertResult upsert(Collection<?> entities) throws SQLException {
+
+        List<Object> created = new ArrayList<Object>();
+
+        // a última entidade de cada chave primária prevalece.
+        Map<Object, Object> identified = new LinkedHashMap<Object, Object>();
+
+        for (Object entity: entities) {
+
+            Object id = metadata.getId(entity);
+
+            if (metadata.isUnassigned(id)) {
+                created.add(entity);
+            } else {
+                identified.put(id, entity);
+            }
+        }
+
+        Set<Object> existing = existing(new ArrayList<Object>(identified.keySet()));
+
+        // as alterações pendentes devem preceder os comandos SQL.
+        em.flush();
+
+        int count = 0;
+
+        for (Object entity: created) {
+
+            em.persist(entity);
+
+            written.add(entity);
+
+            flush(++count);
+        }
+
+        AbstractEntityPersister persister = getPersister();
+
+        if (persister == null) {
+
+            for (Map.Entry<Object, Object> e: identified.entrySet()) {
+
+                if (existing.contains(e.getKey())) {
+                    written.add(em.merge(e.getValue()));
+                } else {
+                    em.persist(e.getValue());
+
+                    written.add(e.getValue());
+                }
+
+                flush(++count);
+            }
+
+            em.flush();
+
+            evictWritten();
+
+        } else {
+
+            em.flush();
+
+            evictWritten();
+
+            new Statements(persister).execute(identified, existing);
+
+            // as entidades gerenciadas com as chaves gravadas estão desatualizadas.
+            BulkStatements.evict(em, clazz, identified.keySet());
+        }
+
+        int updated = existing.size();
+
+        return new UpsertResult(created.size() + identified.size() - updated, updated);
+    }
+
+    private void flush(int count) {
+
+        if ((count % DAOIntf.DEFAULT_BATCH_SIZE) == 0) {
+
+            em.flush();
+
+            evictWritten();
+        }
+    }
+
+    /**
+     * Libera a memória da sessão descartando as entidades gravadas desde o
+     * último <tt>flush</tt>, sem desvincular as demais entidades gerenciadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void evictWritten() {
+
+        Object delegate = em.getDelegate();
+
+        if (delegate instanceof Session) {
+
+            for (Object entity: written) {
+                ((Session) delegate).evict(entity);
+            }
+
+        } else if (!written.isEmpty()) {
+
+            // a JPA 1.0 não permite descartar uma única entidade.
+            em.clear();
+        }
+
+        written.clear();
+    }
+
+    /**
+     * Consulta quais das chaves primárias informadas já existem.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private Set<Object> existing(List<Object> ids) {
+
+        Set<Object> result = new HashSet<Object>();
+
+        if (metadata.isCompositeId()) {
+
+            for (Object id: ids) {
+
+                if (em.find(clazz, id) != null) {
+                    result.add(id);
+                }
+            }
+
+            return result;
+        }
+
+        int chunkSize = BulkStatements.getChunkSize(em);
+
+        String ql = "select e." + metadata.getIdName() + " from " + metadata.getEntityName() + " e where e." + metadata.getIdName() + " in ";
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+
+            List<Object> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+
+            Query q = em.createQuery(ql + BulkStatements.inList(chunk.size()));
+
+            for (int i = 0; i < chunk.size(); i++) {
+                q.setParameter(i + 1, chunk.get(i));
+            }
+
+            result.addAll(q.getResultList());
+        }
+
+        return result;
+    }
+
+    /**
+     * Retorna o mapeamento Hibernate da classe se ele permitir a gravação por
+     * comandos SQL: uma única tabela, sem herança, sem versão e com chave
+     * primária que não seja <tt>@IdClass</tt>, cujo identificador no Hibernate
+     * não corresponde à instância da classe da chave.
+     *
+     * @return O mapeamento ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private AbstractEntityPersister getPersister() {
+
+        Object delegate = em.getDelegate();
+
+        if ( (!(delegate instanceof Session)) || (!(delegate instanceof SessionImplementor)) || metadata.isIdClass() ) {
+            return null;
+        }
+
+        SessionFactory factory = ((Session) delegate).getSessionFactory();
+
+        ClassMetadata classMetadata = factory.getClassMetadata(clazz);
+
+        if (!(classMetadata instanceof AbstractEntityPersister)) {
+            return null;
+        }
+
+        AbstractEntityPersister persister = (AbstractEntityPersister) classMetadata;
+
+        if ( persister.isInherited() || persister.isMultiTable() || persister.isVersioned() || persister.getEntityMetamodel().hasSubclasses() ) {
+            return null;
+        }
+
+        return persister;
+    }
+
+    /**
+     * Comandos SQL de gravação das entidades de uma classe.
+     */
+    private final class Statements {
+
+        private final AbstractEntityPersister persister;
+        private final Session session;
+        private final SessionImplementor implementor;
+
+        private final String[] keys;
+        private final List<Integer> inserted = new ArrayList<Integer>();
+        private final List<Integer> updated = new ArrayList<Integer>();
+        private final List<String> insertColumns = new ArrayList<String>();
+        private final List<String> updateColumns = new ArrayList<String>();
+
+        private Statements(AbstractEntityPersister persister) {
+
+            this.persister = persister;
+            this.session = (Session) em.getDelegate();
+            this.implementor = (SessionImplementor) em.getDelegate();
+            this.keys = persister.getIdentifierColumnNames();
+
+            insertColumns.addAll(Arrays.asList(keys));
+
+            String table = persister.getTableName();
+            String[] names = persister.getPropertyNames();
+            Type[] types = persister.getPropertyTypes();
+            boolean[] insertable = persister.getPropertyInsertability();
+            boolean[] updatable = persister.getPropertyUpdateability();
+
+            for (int i = 0; i < names.length; i++) {
+
+                String[] columns = persister.getPropertyColumnNames(i);
+
+                // coleções, fórmulas e colunas de outras tabelas não são gravadas.
+                if ( types[i].isCollectionType() || (!insertable[i]) || (columns == null) || (columns.length == 0)
+                        || Arrays.asList(columns).contains(null) || (!table.equals(persister.getPropertyTableName(names[i]))) ) {
+                    continue;
+                }
+
+                inserted.add(i);
+                insertColumns.addAll(Arrays.asList(columns));
+
+                if (updatable[i]) {
+
+                    updated.add(i);
+                    updateColumns.addAll(Arrays.asList(columns));
+                }
+            }
+        }
+
+        private void execute(Map<Object, Object> entities, Set<Object> existing) throws SQLException {
+
+            if (entities.isEmpty()) {
+                return;
+            }
+
+            String table = persister.getTableName();
+
+            String upsert = DatabaseDialect.of(em).upsert(table, insertColumns, keys, updateColumns);
+
+            if (upsert != null) {
+
+                execute(upsert, entities.values(), true);
+
+                return;
+            }
+
+            List<Object> updates = new ArrayList<Object>();
+            List<Object> inserts = new ArrayList<Object>();
+
+            for (Map.Entry<Object, Object> e: entities.entrySet()) {
+
+                if (existing.contains(e.getKey())) {
+                    updates.add(e.getValue());
+                } else {
+                    inserts.add(e.getValue());
+                }
+            }
+
+            if ( (!updates.isEmpty()) && (!updateColumns.isEmpty()) ) {
+
+                StringBuilder sql = new StringBuilder("update ").append(table).append(" set ");
+
+                for (int i = 0; i < updateColumns.size(); i++) {
+                    sql.append( (i == 0) ? "" : ", " ).append(updateColumns.get(i)).append(" = ?");
+                }
+
+                for (int i = 0; i < keys.length; i++) {
+                    sql.append( (i == 0) ? " where " : " and " ).append(keys[i]).append(" = ?");
+                }
+
+                execute(sql.toString(), updates, false);
+            }
+
+            if (!inserts.isEmpty()) {
+                execute(DatabaseDialect.insert(new StringBuilder(), table, insertColumns).toString(), inserts, true);
+            }
+        }
+
+        private void execute(String sql, Collection<Object> entities, boolean insert) throws SQLException {
+
+            Connection connection = session.connection();
+
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            try {
+
+                int count = 0;
+
+                for (Object entity: entities) {
+
+                    bind(ps, entity, insert);
+
+                    ps.addBatch();
+
+                    if ((++count % DAOIntf.DEFAULT_BATCH_SIZE) == 0) {
+                        ps.executeBatch();
+                    }
+                }
+
+                if ((count % DAOIntf.DEFAULT_BATCH_SIZE) != 0) {
+                    ps.executeBatch();
+                }
+
+            } finally {
+
+                ps.close();
+            }
+        }
+
+        /**
+         * Associa os valores de uma entidade aos parâmetros de um comando: a
+         * chave primária seguida das colunas incluídas, na inclusão, ou as
+         * colunas atualizadas seguidas da chave primária, na atualização.
+         */
+        private void bind(PreparedStatement ps, Object entity, boolean insert) throws SQLException {
+
+            Object[] values = persister.getPropertyValues(entity, EntityMode.POJO);
+
+            Object id = persister.getIdentifier(entity, EntityMode.POJO);
+
+            int index = 1;
+
+            if (insert) {
+
+                persister.getIdentifierType().nullSafeSet(ps, id, index, implementor);
+
+                index += keys.length;
+            }
+
+            Type[] types = persister.getPropertyTypes();
+
+            for (Integer i: (insert ? inserted : updated)) {
+
+                types[i].nullSafeSet(ps, values[i], index, implementor);
+
+                index += persister.getPropertyColumnNames(i).length;
+            }
+
+            if (!insert) {
+                persister.getIdentifierType().nullSafeSet(ps, id, index, implementor);
+            }
+        }
+    }
+
+}
@@ -21,18 +21,27 @@
 
 package br.com.vexit.vexpersistence.dao.impl;
 
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import br.com.vexit.vexpersistence.dao.intf.FetchPlan;
+import br.com.vexit.vexpersistence.dao.intf.Page;
+import br.com.vexit.vexpersistence.dao.intf.ResultIterator;
+import br.com.vexit.vexpersistence.dao.intf.UpsertResult;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
 
 /**
  * <tt>DAOInjectedSession</tt> é uma classe abstrata responsável por
  * implementar métodos genéricos para um {@link DAOInjectedSessionHandler <tt>DAOInjectedSessionHandler concreto</tt>}.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see DAOIntf
  * @see DAOLocalSessionHandler
@@ -44,6 +53,7 @@ import javax.persistence.EntityManager;
 public abstract class DAOInjectedSession implements DAOIntf {
 
     private EntityManager em;
+    private FetchPlan fetchPlan;
     
     /**
      * Cria uma instância de um Data Access Object passando
@@ -95,95 +105,522 @@ public abstract class DAOInjectedSession implements DAOIntf {
      */
     public <T extends Serializable> List<T> getAll(Class<T> clazz, Field ... fields) throws VexPersistenceException {
         
+        if (fetchPlan != null) {
+            return getAll(clazz, fetchPlan, fields);
+        }
+
         List<T> result = null;
 
         try {
-            
+            
+            beforeGetAll(clazz);
+            
+            try {
+                result = getEntityManager().createQuery(QueryCache.getAll(clazz, fields)).getResultList();
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+                
+                throw new VexPersistenceException(e);
+            }
+
+            return result;
+            
+        } finally {
+            
+            afterGetAll(clazz);
+        }
+        
+    }
+    
+    /**
+     * Carrega as entidades de uma classe desejada dadas as suas chaves primárias.
+     * <p>
+     * As entidades já carregadas na sessão são reaproveitadas e as demais são
+     * buscadas em comandos <tt>SELECT ... WHERE id IN (...)</tt>, reduzindo N
+     * consultas a uma consulta por bloco de chaves.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias, do mesmo tipo do atributo da chave primária.
+     *
+     * @return As entidades indexadas pelas chaves, na ordem informada; as chaves
+     *         inexistentes são mapeadas para <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> Map<Object, T> getAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException {
+
+        try {
+
+            beforeGetAll(clazz);
+
+            try {
+
+                return BulkStatements.find(getEntityManager(), clazz, ids);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna uma lista ordenada de todas as entidades de uma classe desejada,
+     * carregando as associações descritas pelo plano de carga.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> List<T> getAll(Class<T> clazz, FetchPlan plan, Field ... fields) throws VexPersistenceException {
+
+        List<T> result = null;
+
+        try {
+
+            beforeGetAll(clazz);
+
+            try {
+
+                EntityManager em = getEntityManager();
+
+                result = FetchPlanLoader.distinct((List<T>) em.createQuery(FetchPlanLoader.select(clazz, plan, fields)).getResultList());
+
+                FetchPlanLoader.batch(em, result, plan);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+            return result;
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, convertidos em objetos de uma classe de resultado através do
+     * construtor cujos parâmetros correspondem aos atributos.
+     * <p>
+     * Somente as colunas dos atributos informados são lidas e os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com os atributos.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable, R> List<R> project(Class<T> clazz, Class<R> resultClass, Field[] fields, Field ... order) throws VexPersistenceException {
+
+        try {
+
+            beforeGetAll(clazz);
+
+            try {
+
+                List<?> rows = getEntityManager().createQuery(QueryCache.select(clazz, fields, order)).getResultList();
+
+                return RowMapper.of(resultClass).map(rows);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, sem carregar as entidades.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de linhas com os valores dos atributos, na ordem informada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> List<Object[]> project(Class<T> clazz, Field[] fields, Field ... order) throws VexPersistenceException {
+
+        return project(clazz, Object[].class, fields, order);
+    }
+    
+    /**
+     * Percorre através de um cursor todas as entidades de uma classe desejada,
+     * ordenadas pelos atributos informados, sem carregá-las inteiras em memória.
+     * <p>
+     * O cursor utiliza a sessão injetada, que permanece aberta; cada entidade
+     * é desanexada da sessão quando a próxima é lida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fetchSize
+     *         Quantidade de linhas lidas do banco de dados por vez.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Um iterador sobre as entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> ResultIterator<T> iterate(Class<T> clazz, int fetchSize, Field ... fields) throws VexPersistenceException {
+
+        try {
+
+            beforeGetAll(clazz);
+
+            try {
+
+                return new ScrollingResultIterator<T>(getEntityManager(), false, QueryCache.getAll(clazz, fields), fetchSize, null);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna uma página de entidades de uma classe desejada, ordenadas de forma
+     * ascendente pelos atributos informados e pela chave primária.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  afterKey
+     *         Chave de continuação obtida através de {@link Page#getNextKey()}
+     *         ou <tt>null</tt> para a primeira página.
+     *
+     * @param  limit
+     *         Quantidade máxima de entidades da página.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma página de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> Page<T> getPage(Class<T> clazz, Object afterKey, int limit, Field ... order) throws VexPersistenceException {
+
+        try {
+
+            beforeGetAll(clazz);
+
+            try {
+
+                return new KeysetQuery(clazz, order).getPage(getEntityManager(), afterKey, limit);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Carrega uma entidade de uma classe desejada dada uma chave primária como argumento.
+     *
+     * @param  clazz
+     *         Classe válida.
+     * 
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @return Uma entidade.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T get(Class<T> clazz, Object id) throws VexPersistenceException {
+        
+        if (fetchPlan != null) {
+            return get(clazz, id, fetchPlan);
+        }
+
+        T result = null;
+
+        try {
+            beforeGet(clazz, id);
+            
+            try {
+                
+                result = getEntityManager().getReference(clazz, id);
+                
+            } catch (Exception e) {
+                
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+            return result;
+            
+        } finally {
+            
+            afterGet(clazz, id);
+        }
+        
+    }
+    
+    /**
+     * Carrega uma entidade de uma classe desejada dada uma chave primária como
+     * argumento, carregando as associações descritas pelo plano de carga.
+     * <p>
+     * Ao contrário de {@link #get(Class, Object)}, a entidade é carregada
+     * imediatamente e não através de uma referência.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @return Uma entidade ou <tt>null</tt>, se ela não existir.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T get(Class<T> clazz, Object id, FetchPlan plan) throws VexPersistenceException {
+
+        T result = null;
+
+        try {
+            beforeGet(clazz, id);
+
+            try {
+
+                result = FetchPlanLoader.get(getEntityManager(), clazz, id, plan, null);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+            return result;
+
+        } finally {
+
+            afterGet(clazz, id);
+        }
+
+    }
+
+    /**
+     * Define o {@link FetchPlan <tt>plano de carga</tt>} utilizado por
+     * {@link #get(Class, Object)} e {@link #getAll(Class, Field...)}.
+     *
+     * @param  plan
+     *         Plano de carga ou <tt>null</tt> para carregar as associações sob demanda.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setFetchPlan(FetchPlan plan) {
+        this.fetchPlan = plan;
+    }
+
+    /**
+     * Conta as entidades de uma classe desejada através de um
+     * <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> long count(Class<T> clazz) throws VexPersistenceException {
+
+        return count(clazz, null);
+    }
+
+    /**
+     * Conta as entidades de uma classe desejada que atendem aos critérios
+     * informados através de um <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  criteria
+     *         Nomes e valores dos atributos, comparados por igualdade; valores
+     *         <tt>null</tt> são comparados através de <tt>IS NULL</tt>.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> long count(Class<T> clazz, Map<String, Object> criteria) throws VexPersistenceException {
+
+        long result = 0;
+
+        try {
+
             beforeGetAll(clazz);
-            
+
             try {
-                // capturando o nome da entidade.
-                String entity = clazz.getName();
-                
-                String ql = "select e from " + entity + " as e";
-                
-                // definindo ordem, se houver.
-                for (int i = 0; i < fields.length; i++) {
-                    
-                    if (i == 0) {
-                        ql += " order by ";
-                    }
-                    
-                    ql += "e." + fields[i].getName();
-                    
-                    if (i < (fields.length - 1)) {
-                        ql += ", ";
-                    }
-                }
-                
-                
-                result = getEntityManager().createQuery(ql).getResultList();
+
+                result = BulkStatements.count(getEntityManager(), clazz, criteria);
 
             } catch (Exception e) {
 
                 e.printStackTrace();
-                
+
                 throw new VexPersistenceException(e);
             }
 
             return result;
-            
+
         } finally {
-            
+
             afterGetAll(clazz);
         }
-        
+
     }
-    
+
     /**
-     * Carrega uma entidade de uma classe desejada dada uma chave primária como argumento.
+     * Verifica se existe uma entidade de uma classe desejada dada uma chave
+     * primária como argumento, sem carregar a entidade.
      *
      * @param  clazz
      *         Classe válida.
-     * 
+     *
      * @param  id
      *         Chave primária da entidade.
      *
-     * @return Uma entidade.
+     * @return true - A entidade existe.
+     *         false - A entidade não existe.
      *
-     * @since  1.0
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public <T extends Serializable> T get(Class<T> clazz, Object id) throws VexPersistenceException {
-        
-        T result = null;
+    public <T extends Serializable> boolean exists(Class<T> clazz, Object id) throws VexPersistenceException {
+
+        boolean result = false;
 
         try {
             beforeGet(clazz, id);
-            
+
             try {
-                
-                result = getEntityManager().getReference(clazz, id);
-                
+
+                result = BulkStatements.exists(getEntityManager(), clazz, id);
+
             } catch (Exception e) {
-                
+
                 e.printStackTrace();
 
                 throw new VexPersistenceException(e);
             }
 
             return result;
-            
+
         } finally {
-            
+
             afterGet(clazz, id);
         }
-        
+
     }
     
     /**
      * Persiste a entidade dada como argumento.
+     * <p>
+     * Entidades seguramente novas, identificadas pela versão ou pela chave
+     * primária gerada, são incluídas sem a consulta prévia feita na
+     * atualização.
      *
      * @param  entity
      *         Entidade válida a ser persistida.
@@ -195,6 +632,60 @@ public abstract class DAOInjectedSession implements DAOIntf {
      * @author Roberto Vezzoni
      */
     public <T extends Serializable> T save(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.SAVE);
+    }
+    
+    /**
+     * Inclui a entidade dada como argumento, sem verificar se ela já existe.
+     *
+     * @param  entity
+     *         Entidade nova a ser incluída.
+     *
+     * @return  A entidade incluída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T insert(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.INSERT);
+    }
+    
+    /**
+     * Atualiza a entidade dada como argumento, que já deve existir.
+     *
+     * @param  entity
+     *         Entidade a ser atualizada.
+     *
+     * @return  A cópia gerenciada da entidade atualizada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T update(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.UPDATE);
+    }
+    
+    /**
+     * Grava a entidade dada como argumento.
+     *
+     * @param  entity
+     *         Entidade válida a ser gravada.
+     *
+     * @param  mode
+     *         Forma de gravação.
+     *
+     * @return  A entidade gravada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private <T extends Serializable> T write(T entity, WriteMode mode) throws VexPersistenceException {
         
         T result = null;
 
@@ -203,7 +694,7 @@ public abstract class DAOInjectedSession implements DAOIntf {
             
             try {
                 
-                result = getEntityManager().merge(entity);
+                result = mode.write(getEntityManager(), entity);
                 
             } catch (Exception e) {
                 
@@ -221,6 +712,131 @@ public abstract class DAOInjectedSession implements DAOIntf {
         
     }
 
+    /**
+     * Persiste as entidades dadas como argumento na transação corrente.
+     *
+     * @param  entities
+     *         Entidades válidas a serem persistidas.
+     *
+     * @return  A quantidade de entidades persistidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> int saveAll(Collection<T> entities) throws VexPersistenceException {
+
+        return saveAll(entities, DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Persiste em lote as entidades dadas como argumento na transação corrente.
+     * <p>
+     * A transação é controlada pelo container, portanto <tt>chunkSize</tt> é
+     * ignorado. A cada <tt>batchSize</tt> entidades a sessão é sincronizada e
+     * limpa, desanexando também as demais entidades gerenciadas por ela.
+     *
+     * @param  entities
+     *         Entidades válidas a serem persistidas, percorridas uma única vez.
+     *
+     * @param  batchSize
+     *         Quantidade de entidades entre cada <tt>flush</tt> e <tt>clear</tt>.
+     *
+     * @param  chunkSize
+     *         Ignorado.
+     *
+     * @return  A quantidade de entidades persistidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> int saveAll(Iterable<T> entities, int batchSize, int chunkSize) throws VexPersistenceException {
+
+        int count = 0;
+
+        batchSize = Math.max(1, batchSize);
+
+        try {
+
+            EntityManager em = getEntityManager();
+
+            for (T entity: entities) {
+
+                beforeSave(entity);
+
+                WriteMode.SAVE.write(em, entity);
+
+                afterSave(entity);
+
+                count++;
+
+                if ((count % batchSize) == 0) {
+
+                    // envia o lote ao banco de dados e libera a memória da sessão.
+                    em.flush();
+                    em.clear();
+                }
+            }
+
+            em.flush();
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+
+            throw new VexPersistenceException(e);
+        }
+
+        return count;
+    }
+    
+    /**
+     * Inclui ou atualiza em lote as entidades de uma classe, conforme a
+     * existência das suas chaves primárias.
+     * <p>
+     * Quando o mapeamento permite, as entidades são gravadas por comandos SQL
+     * em lote, utilizando o comando de inclusão ou atualização do banco de
+     * dados (<tt>INSERT ... ON CONFLICT</tt> no PostgreSQL, <tt>MERGE</tt> no
+     * H2 e <tt>INSERT ... ON DUPLICATE KEY</tt> no MySQL) ou, nos demais,
+     * comandos <tt>UPDATE</tt> e <tt>INSERT</tt> separados. As entidades da
+     * sessão são descartadas após a gravação.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @return  As quantidades de entidades incluídas e atualizadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> UpsertResult upsertAll(Class<T> clazz, Collection<T> entities) throws VexPersistenceException {
+
+        try {
+            beforeUpsertAll(clazz, entities);
+
+            try {
+
+                return BulkUpsert.upsert(getEntityManager(), clazz, entities);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+        } finally {
+
+            afterUpsertAll(clazz, entities);
+        }
+
+    }
+
     /**
      * Cancela as operações realizadas sobre a entidade passada como argumento.
      *
@@ -328,6 +944,101 @@ public abstract class DAOInjectedSession implements DAOIntf {
         }
         
     }
+
+    /**
+     * Remove, sem carregá-las, as entidades de uma classe dadas as suas chaves
+     * primárias na transação corrente. As entidades removidas que já estavam
+     * carregadas são descartadas da EntityManager do contêiner.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @return  A quantidade de entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> int removeAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException {
+
+        int count = 0;
+
+        try {
+            beforeRemoveAll(clazz, ids);
+
+            try {
+
+                EntityManager em = getEntityManager();
+
+                int chunkSize = BulkStatements.getChunkSize(em);
+
+                List<Object> chunk = new ArrayList<Object>(Math.min(chunkSize, ids.size()));
+
+                Iterator<?> it = ids.iterator();
+
+                while (it.hasNext()) {
+
+                    chunk.add(it.next());
+
+                    if ( (chunk.size() == chunkSize) || (!it.hasNext()) ) {
+
+                        count += BulkStatements.delete(em, clazz, chunk);
+
+                        // a EntityManager do contêiner continuaria entregando as entidades removidas.
+                        BulkStatements.evict(em, clazz, chunk);
+
+                        chunk.clear();
+                    }
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+            }
+
+            return count;
+
+        } finally {
+
+            afterRemoveAll(clazz, ids);
+        }
+
+    }
+    
+    /**
+     * Executa um trabalho composto por várias operações persistentes na
+     * transação corrente do contêiner, da qual as operações já participam.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException {
+
+        try {
+
+            return work.execute();
+
+        } catch (RuntimeException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new VexPersistenceException(e);
+        }
+
+    }
     
     /*
      * Event handler methods - call backs methods
@@ -458,4 +1169,64 @@ public abstract class DAOInjectedSession implements DAOIntf {
      */
     public abstract void afterRemove(Object entity);
     
+    /**
+     * Callback Method executado antes de serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void beforeRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado após serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void afterRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado antes de serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void beforeUpsertAll(Class clazz, Collection<?> entities);
+    
+    /**
+     * Callback Method executado após serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void afterUpsertAll(Class clazz, Collection<?> entities);
+    
 }
\ No newline at end of file
@@ -21,21 +21,37 @@
 
 package br.com.vexit.vexpersistence.dao.impl;
 
+import br.com.vexit.vexpersistence.cache.EntityCache;
+import br.com.vexit.vexpersistence.conn.AccessMode;
 import br.com.vexit.vexpersistence.conn.LocalPersistenceConnection;
 import br.com.vexit.vexpersistence.conn.PersistenceConnection;
+import br.com.vexit.vexpersistence.conn.ReadOnlyTransaction;
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
 import br.com.vexit.vexpersistence.dao.DAOLocalSessionHandler;
 import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import br.com.vexit.vexpersistence.dao.intf.FetchPlan;
+import br.com.vexit.vexpersistence.dao.intf.Page;
+import br.com.vexit.vexpersistence.dao.intf.ResultIterator;
+import br.com.vexit.vexpersistence.dao.intf.UpsertResult;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 
 /**
  * <tt>DAOLocalSession</tt> é uma classe abstrata responsável por
  * implementar métodos genéricos para um {@link DAOLocalSessionHandler <tt>DAOLocalSessionHandler concreto</tt>}.
  *
- * @version 1.4.3, 28/10/09
+ * @version 1.5, 17/10/26
  * 
  * @see DAOIntf
  * @see DAOLocalSessionHandler
@@ -48,7 +64,10 @@ import javax.persistence.EntityManager;
 public abstract class DAOLocalSession implements DAOIntf {
 
     private String persistenceUnitName;
+    private PersistenceConnection persistenceConnection;
     private boolean keepSessionAlive;
+    private AccessMode accessMode;
+    private FetchPlan fetchPlan;
 
     /**
      * Cria uma instância de um Data Access Object passando 
@@ -66,8 +85,74 @@ public abstract class DAOLocalSession implements DAOIntf {
      * @author Roberto Vezzoni
      */
     public DAOLocalSession(String persistenceUnitName, boolean keepSessionAlive) {
+        this(persistenceUnitName, keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * o nome da conexão local, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSession(String persistenceUnitName, boolean keepSessionAlive, AccessMode accessMode) {
         this.persistenceUnitName = persistenceUnitName;
         this.keepSessionAlive = keepSessionAlive;
+        this.accessMode = accessMode;
+    }
+
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * a conexão e a forma de tratamento da sessão.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSession(PersistenceConnection persistenceConnection, boolean keepSessionAlive) {
+        this(persistenceConnection, keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Cria uma instância de um Data Access Object passando
+     * a conexão, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public DAOLocalSession(PersistenceConnection persistenceConnection, boolean keepSessionAlive, AccessMode accessMode) {
+        this.persistenceConnection = persistenceConnection;
+        this.keepSessionAlive = keepSessionAlive;
+        this.accessMode = accessMode;
     }
 
     /**
@@ -81,9 +166,139 @@ public abstract class DAOLocalSession implements DAOIntf {
      */
     private PersistenceConnection getPersistenceConnection() {
 
+        if (persistenceConnection != null) {
+            return persistenceConnection;
+        }
+
         return PersistenceConnection.getInstance(persistenceUnitName);
     }
 
+    /**
+     * Solicita ao circuit breaker da conexão a admissão de uma operação,
+     * liberando a conexão se a operação for recusada.
+     *
+     * @param conn
+     *        Conexão obtida através de {@link PersistenceConnection#route(boolean)}.
+     *
+     * @return Instante, em nanossegundos, do início da operação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private long admit(PersistenceConnection conn) {
+
+        try {
+
+            return conn.admit();
+
+        } catch (RuntimeException e) {
+
+            getPersistenceConnection().release(conn);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Retorna o {@link EntityCache <tt>cache de entidades</tt>} a ser
+     * consultado e alimentado pelas leituras. As leituras de uma unidade de
+     * trabalho não utilizam o cache, pois podem conter alterações ainda não
+     * confirmadas.
+     *
+     * @return Um cache de entidades ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private EntityCache getReadCache() {
+
+        PersistenceConnection conn = getPersistenceConnection();
+
+        return ( conn.isInUnitOfWork() ? null : conn.getEntityCache() );
+    }
+
+    /**
+     * Descarta do {@link EntityCache <tt>cache de entidades</tt>} da conexão
+     * a entidade dada como argumento.
+     *
+     * @param entity
+     *        Entidade alterada ou removida.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void invalidate(Object entity) {
+
+        PersistenceConnection conn = getPersistenceConnection();
+
+        EntityCache cache = conn.getEntityCache();
+
+        if ( (cache != null) && (entity != null) && cache.isCacheable(entity.getClass()) ) {
+
+            Object id = EntityMetadata.of(entity.getClass()).getId(entity);
+
+            // entidades novas ainda não estão no cache.
+            if (id != null) {
+                conn.invalidate(entity.getClass(), id);
+            }
+        }
+    }
+
+    /**
+     * Inicia as leituras de uma operação, em uma {@link ReadOnlyTransaction
+     * <tt>transação somente leitura</tt>} se o DAO for somente leitura.
+     *
+     * @param conn
+     *        Conexão obtida através de {@link PersistenceConnection#route(boolean)}.
+     *
+     * @return A transação somente leitura ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private ReadOnlyTransaction beginRead(PersistenceConnection conn) {
+
+        return ( (accessMode == AccessMode.READ_ONLY) ? ReadOnlyTransaction.begin(conn.getEntityManager()) : null );
+    }
+
+    /**
+     * Encerra as leituras iniciadas através de {@link #beginRead(PersistenceConnection)}.
+     *
+     * @param tx
+     *        Transação somente leitura ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void endRead(ReadOnlyTransaction tx) {
+
+        if (tx != null) {
+            tx.end();
+        }
+    }
+
+    /**
+     * Recusa as operações de escrita de um DAO somente leitura.
+     *
+     * @throws VexPersistenceException
+     *         Se o DAO for somente leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void checkWritable() throws VexPersistenceException {
+
+        if (accessMode == AccessMode.READ_ONLY) {
+            throw new VexPersistenceException("Operação de escrita em um DAO somente leitura");
+        }
+    }
+
     /**
      * Retorna a sessão com a fonte de dados cuja a qual deve ter sido
      * levantada como recurso local.
@@ -120,7 +335,11 @@ public abstract class DAOLocalSession implements DAOIntf {
      */
     private void commitTransaction() {
         
-        getEntityManager().flush();
+        // na unidade de trabalho as alterações são enviadas ao seu término.
+        if (!getPersistenceConnection().isInUnitOfWork()) {
+            getEntityManager().flush();
+        }
+
         getPersistenceConnection().commit();
     }
 
@@ -157,124 +376,1225 @@ public abstract class DAOLocalSession implements DAOIntf {
      */
     public <T extends Serializable> List<T> getAll(Class<T> clazz, Field ... fields) throws VexPersistenceException {
         
+        if (fetchPlan != null) {
+            return getAll(clazz, fetchPlan, fields);
+        }
+
         List<T> result = null;
 
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                Query q = conn.getEntityManager().createQuery(QueryCache.getAll(clazz, fields));
+
+                result = q.getResultList();
+
+                if (tx != null) {
+                    tx.track(result);
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+        
+    }
+    
+    /**
+     * Carrega as entidades de uma classe desejada dadas as suas chaves primárias.
+     * <p>
+     * As entidades já carregadas na sessão são reaproveitadas e as demais são
+     * buscadas em comandos <tt>SELECT ... WHERE id IN (...)</tt>, reduzindo N
+     * consultas a uma consulta por bloco de chaves.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias, do mesmo tipo do atributo da chave primária.
+     *
+     * @return As entidades indexadas pelas chaves, na ordem informada; as chaves
+     *         inexistentes são mapeadas para <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> Map<Object, T> getAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException {
+
+        Map<Object, T> result = new LinkedHashMap<Object, T>();
+
+        EntityCache cache = getReadCache();
+
+        Collection<?> pending = ids;
+
+        long mark = 0;
+
+        if ( (cache != null) && cache.isCacheable(clazz) ) {
+
+            List<Object> missing = new ArrayList<Object>();
+
+            for (Object id: ids) {
+
+                T cached = cache.get(clazz, id);
+
+                result.put(id, cached);
+
+                if (cached == null) {
+                    missing.add(id);
+                }
+            }
+
+            if (missing.isEmpty()) {
+
+                beforeGetAll(clazz);
+                afterGetAll(clazz);
+
+                return result;
+            }
+
+            pending = missing;
+
+            mark = cache.mark(clazz);
+        }
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
         try {
 
             beforeGetAll(clazz);
 
+            ReadOnlyTransaction tx = beginRead(conn);
+
             try {
-                // capturando o nome da entidade.
-                String entity = clazz.getName();
 
-                String ql = "select e from " + entity + " as e";
+                EntityManager em = conn.getEntityManager();
+
+                Set<Object> managed = new HashSet<Object>();
+
+                if (cache != null) {
 
-                // definindo ordem, se houver.
-                for (int i = 0; i < fields.length; i++) {
+                    // entidades já carregadas podem conter alterações ainda não confirmadas.
+                    for (Object id: pending) {
 
-                    if (i == 0) {
-                        ql += " order by ";
+                        if (BulkStatements.isManaged(em, clazz, id)) {
+                            managed.add(id);
+                        }
                     }
+                }
+
+                Map<Object, T> found = BulkStatements.find(em, clazz, pending);
+
+                if (tx != null) {
+                    tx.track(found);
+                }
 
-                    ql += "e." + fields[i].getName();
+                for (Map.Entry<Object, T> e: found.entrySet()) {
 
-                    if (i < (fields.length - 1)) {
-                        ql += ", ";
+                    // o cache armazena uma cópia; a entidade retornada continua na sessão.
+                    if ( (cache != null) && (!managed.contains(e.getKey())) ) {
+                        cache.put(clazz, e.getKey(), BulkStatements.unproxy(e.getValue()), mark);
                     }
+
+                    result.put(e.getKey(), e.getValue());
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna uma lista ordenada de todas as entidades de uma classe desejada,
+     * carregando as associações descritas pelo plano de carga.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> List<T> getAll(Class<T> clazz, FetchPlan plan, Field ... fields) throws VexPersistenceException {
+
+        List<T> result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                EntityManager em = conn.getEntityManager();
+
+                Query q = em.createQuery(FetchPlanLoader.select(clazz, plan, fields));
+
+                result = FetchPlanLoader.distinct((List<T>) q.getResultList());
+
+                FetchPlanLoader.batch(em, result, plan);
+
+                if (tx != null) {
+                    tx.track(result);
                 }
 
-                result = getEntityManager().createQuery(ql).getResultList();
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, convertidos em objetos de uma classe de resultado através do
+     * construtor cujos parâmetros correspondem aos atributos.
+     * <p>
+     * Somente as colunas dos atributos informados são lidas e os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com os atributos.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable, R> List<R> project(Class<T> clazz, Class<R> resultClass, Field[] fields, Field ... order) throws VexPersistenceException {
+
+        List<R> result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                List<?> rows = conn.getEntityManager().createQuery(QueryCache.select(clazz, fields, order)).getResultList();
+
+                result = RowMapper.of(resultClass).map(rows);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, sem carregar as entidades.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de linhas com os valores dos atributos, na ordem informada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> List<Object[]> project(Class<T> clazz, Field[] fields, Field ... order) throws VexPersistenceException {
+
+        return project(clazz, Object[].class, fields, order);
+    }
+    
+    /**
+     * Percorre através de um cursor todas as entidades de uma classe desejada,
+     * ordenadas pelos atributos informados, sem carregá-las inteiras em memória.
+     * <p>
+     * O cursor utiliza uma EntityManager dedicada, fora do escopo corrente, que
+     * é limpa a cada <tt>fetchSize</tt> entidades e fechada junto com o iterador.
+     * A transação do cursor é acompanhada pela conexão como as demais, de modo
+     * que o desligamento aguarda o fechamento do iterador; por isso ele deve
+     * ser fechado em um bloco <tt>finally</tt>, como descrito em
+     * {@link ResultIterator}, mesmo que não seja percorrido até o fim.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fetchSize
+     *         Quantidade de linhas lidas do banco de dados por vez.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Um iterador sobre as entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> ResultIterator<T> iterate(Class<T> clazz, int fetchSize, Field ... fields) throws VexPersistenceException {
+
+        final PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            final EntityManager em = conn.createEntityManager();
+
+            try {
+
+                // o cursor permanece aberto dentro de uma transação somente de leitura.
+                conn.beginTransaction(em);
+
+                ResultIterator<T> result = new ScrollingResultIterator<T>(em, true, QueryCache.getAll(clazz, fields), fetchSize, new Runnable() {
+
+                    public void run() {
+
+                        conn.endTransaction(em);
+
+                        getPersistenceConnection().release(conn);
+                    }
+                });
+
+                conn.succeeded(start);
+
+                return result;
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                if (em.isOpen()) {
+
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+
+                    em.close();
+                }
+
+                conn.endTransaction(em);
+
+                throw new VexPersistenceException(e);
+            }
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            getPersistenceConnection().release(conn);
+
+            throw e;
+
+        } finally {
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Retorna uma página de entidades de uma classe desejada, ordenadas de forma
+     * ascendente pelos atributos informados e pela chave primária.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  afterKey
+     *         Chave de continuação obtida através de {@link Page#getNextKey()}
+     *         ou <tt>null</tt> para a primeira página.
+     *
+     * @param  limit
+     *         Quantidade máxima de entidades da página.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma página de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> Page<T> getPage(Class<T> clazz, Object afterKey, int limit, Field ... order) throws VexPersistenceException {
+
+        Page<T> result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                result = new KeysetQuery(clazz, order).getPage(conn.getEntityManager(), afterKey, limit);
+
+                if (tx != null) {
+                    tx.track(result.getContent());
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+
+    }
+    
+    /**
+     * Carrega uma entidade de uma classe desejada dada uma chave primária como argumento.
+     *
+     * @param  clazz
+     *         Classe válida.
+     * 
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @return Uma entidade.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T get(Class<T> clazz, Object id) throws VexPersistenceException {
+        
+        if (fetchPlan != null) {
+            return get(clazz, id, fetchPlan);
+        }
+
+        T result = null;
+
+        EntityCache cache = getReadCache();
+
+        long mark = 0;
+
+        if (cache != null) {
+
+            // a leitura atendida pelo cache dispensa a sessão com o banco de dados.
+            result = cache.get(clazz, id);
+
+            if (result != null) {
+
+                beforeGet(clazz, id);
+                afterGet(clazz, id);
+
+                return result;
+            }
+
+            mark = cache.mark(clazz);
+        }
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+            beforeGet(clazz, id);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                EntityManager em = conn.getEntityManager();
+
+                // entidades já carregadas podem conter alterações ainda não confirmadas.
+                boolean managed = ( (cache == null) || BulkStatements.isManaged(em, clazz, id) );
+
+                result = em.find(clazz, id);
+
+                if (tx != null) {
+                    tx.track(result);
+                }
+
+                // o cache armazena uma cópia; a entidade retornada continua na sessão.
+                if ( (!managed) && (result != null) ) {
+                    cache.put(clazz, id, BulkStatements.unproxy(result), mark);
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGet(clazz, id);
+        }
+        
+    }
+    
+    /**
+     * Carrega uma entidade de uma classe desejada dada uma chave primária como
+     * argumento, carregando as associações descritas pelo plano de carga.
+     * <p>
+     * A leitura não utiliza o {@link EntityCache <tt>cache de entidades</tt>},
+     * cujas entidades não têm as associações carregadas.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @return Uma entidade ou <tt>null</tt>, se ela não existir.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T get(Class<T> clazz, Object id, FetchPlan plan) throws VexPersistenceException {
+
+        T result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+            beforeGet(clazz, id);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                result = FetchPlanLoader.get(conn.getEntityManager(), clazz, id, plan, ( (tx != null) ? ReadOnlyTransaction.READ_ONLY_HINT : null ));
+
+                if (tx != null) {
+                    tx.track(result);
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGet(clazz, id);
+        }
+
+    }
+
+    /**
+     * Define o {@link FetchPlan <tt>plano de carga</tt>} utilizado por
+     * {@link #get(Class, Object)} e {@link #getAll(Class, Field...)}.
+     *
+     * @param  plan
+     *         Plano de carga ou <tt>null</tt> para carregar as associações sob demanda.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public void setFetchPlan(FetchPlan plan) {
+        this.fetchPlan = plan;
+    }
+
+    /**
+     * Conta as entidades de uma classe desejada através de um
+     * <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> long count(Class<T> clazz) throws VexPersistenceException {
+
+        return count(clazz, null);
+    }
+
+    /**
+     * Conta as entidades de uma classe desejada que atendem aos critérios
+     * informados através de um <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  criteria
+     *         Nomes e valores dos atributos, comparados por igualdade; valores
+     *         <tt>null</tt> são comparados através de <tt>IS NULL</tt>.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> long count(Class<T> clazz, Map<String, Object> criteria) throws VexPersistenceException {
+
+        long result = 0;
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+
+            beforeGetAll(clazz);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                result = BulkStatements.count(conn.getEntityManager(), clazz, criteria);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGetAll(clazz);
+        }
+
+    }
+
+    /**
+     * Verifica se existe uma entidade de uma classe desejada dada uma chave
+     * primária como argumento, sem carregar a entidade.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @return true - A entidade existe.
+     *         false - A entidade não existe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> boolean exists(Class<T> clazz, Object id) throws VexPersistenceException {
+
+        boolean result = false;
+
+        EntityCache cache = getReadCache();
+
+        // uma entidade presente no cache dispensa a consulta.
+        if ( (cache != null) && (cache.get(clazz, id) != null) ) {
+
+            beforeGet(clazz, id);
+            afterGet(clazz, id);
+
+            return true;
+        }
+
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
+        try {
+            beforeGet(clazz, id);
+
+            ReadOnlyTransaction tx = beginRead(conn);
+
+            try {
+
+                result = BulkStatements.exists(conn.getEntityManager(), clazz, id);
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
+            }
+
+            conn.succeeded(start);
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            afterGet(clazz, id);
+        }
+
+    }
+    
+    /**
+     * Persiste a entidade dada como argumento.
+     * <p>
+     * Entidades seguramente novas, identificadas pela versão ou pela chave
+     * primária gerada, são incluídas sem a consulta prévia feita na
+     * atualização.
+     *
+     * @param  entity
+     *         Entidade válida a ser persistida.
+     *
+     * @return  A entidade persistida.
+     *
+     * @since  1.0
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T save(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.SAVE);
+    }
+    
+    /**
+     * Inclui a entidade dada como argumento, sem verificar se ela já existe.
+     *
+     * @param  entity
+     *         Entidade nova a ser incluída.
+     *
+     * @return  A entidade incluída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T insert(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.INSERT);
+    }
+    
+    /**
+     * Atualiza a entidade dada como argumento, que já deve existir.
+     *
+     * @param  entity
+     *         Entidade a ser atualizada.
+     *
+     * @return  A cópia gerenciada da entidade atualizada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> T update(T entity) throws VexPersistenceException {
+
+        return write(entity, WriteMode.UPDATE);
+    }
+    
+    /**
+     * Grava a entidade dada como argumento.
+     *
+     * @param  entity
+     *         Entidade válida a ser gravada.
+     *
+     * @param  mode
+     *         Forma de gravação.
+     *
+     * @return  A entidade gravada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private <T extends Serializable> T write(T entity, WriteMode mode) throws VexPersistenceException {
+        
+        checkWritable();
+
+        T result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
+
+        try {
+            beforeSave(entity);
+
+            startTransaction();
+
+            try {
+
+                result = mode.write(getEntityManager(), entity);
+
+                commitTransaction();
 
             } catch (Exception e) {
 
                 e.printStackTrace();
 
+                rollbackTransaction();
+
                 throw new VexPersistenceException(e);
             }
 
+            conn.succeeded(start);
+
             return result;
 
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
 
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
 
-            afterGetAll(clazz);
+            getPersistenceConnection().release(conn);
+
+            invalidate(entity);
+
+            afterSave(entity);
         }
-        
+
     }
     
     /**
-     * Carrega uma entidade de uma classe desejada dada uma chave primária como argumento.
+     * Persiste as entidades dadas como argumento em uma única transação.
      *
-     * @param  clazz
-     *         Classe válida.
-     * 
-     * @param  id
-     *         Chave primária da entidade.
+     * @param  entities
+     *         Entidades válidas a serem persistidas.
      *
-     * @return Uma entidade.
+     * @return  A quantidade de entidades persistidas.
      *
-     * @since  1.0
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public <T extends Serializable> T get(Class<T> clazz, Object id) throws VexPersistenceException {
-        
-        T result = null;
+    public <T extends Serializable> int saveAll(Collection<T> entities) throws VexPersistenceException {
+
+        return saveAll(entities, DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Persiste em lote as entidades dadas como argumento.
+     * <p>
+     * Os callbacks {@link #beforeSave(Object)} e {@link #afterSave(Object)} são
+     * executados para cada entidade, antes e depois da sua mesclagem na sessão.
+     * Se uma transação falhar, as transações anteriores permanecem confirmadas.
+     *
+     * @param  entities
+     *         Entidades válidas a serem persistidas, percorridas uma única vez.
+     *
+     * @param  batchSize
+     *         Quantidade de entidades entre cada <tt>flush</tt> e <tt>clear</tt>.
+     *
+     * @param  chunkSize
+     *         Quantidade de entidades confirmadas por transação; com o valor
+     *         zero todas as entidades são confirmadas em uma única transação.
+     *
+     * @return  A quantidade de entidades persistidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> int saveAll(Iterable<T> entities, int batchSize, int chunkSize) throws VexPersistenceException {
+
+        checkWritable();
+
+        int count = 0;
+        int committed = 0;
+
+        batchSize = Math.max(1, batchSize);
+
+        Set<Class<?>> classes = new HashSet<Class<?>>();
+
+        boolean joined = getPersistenceConnection().isInUnitOfWork();
+
+        // a unidade de trabalho é confirmada uma única vez, ao seu término.
+        if (joined) {
+            chunkSize = 0;
+        }
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
 
         try {
-            beforeGet(clazz, id);
+
+            startTransaction();
 
             try {
 
-                result = getEntityManager().find(clazz, id);
+                EntityManager em = getEntityManager();
+
+                for (T entity: entities) {
+
+                    beforeSave(entity);
+
+                    WriteMode.SAVE.write(em, entity);
+
+                    afterSave(entity);
+
+                    classes.add(entity.getClass());
+
+                    count++;
+
+                    if ( (chunkSize > 0) && ((count % chunkSize) == 0) ) {
+
+                        commitTransaction();
+
+                        committed = count;
+
+                        em.clear();
+
+                        startTransaction();
+
+                    } else if ((count % batchSize) == 0) {
+
+                        // envia o lote ao banco de dados e libera a memória da sessão.
+                        em.flush();
+                        em.clear();
+                    }
+                }
+
+                commitTransaction();
+
+                if (!joined) {
+                    em.clear();
+                }
 
             } catch (Exception e) {
 
                 e.printStackTrace();
 
-                throw new VexPersistenceException(e);
+                rollbackTransaction();
+
+                throw new VexPersistenceException("Persistência em lote interrompida após " + committed + " entidades confirmadas", e);
             }
 
-            return result;
+            conn.succeeded(start);
+
+            return count;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
 
         } finally {
 
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
 
-            afterGet(clazz, id);
+            getPersistenceConnection().release(conn);
+
+            // as entidades gravadas são descartadas do cache somente após a
+            // confirmação; na unidade de trabalho, ao seu término.
+            for (Class<?> c: classes) {
+                getPersistenceConnection().invalidateAll(c);
+            }
         }
-        
+
     }
     
     /**
-     * Persiste a entidade dada como argumento.
+     * Inclui ou atualiza em lote as entidades de uma classe, conforme a
+     * existência das suas chaves primárias.
+     * <p>
+     * Quando o mapeamento permite, as entidades são gravadas por comandos SQL
+     * em lote, utilizando o comando de inclusão ou atualização do banco de
+     * dados (<tt>INSERT ... ON CONFLICT</tt> no PostgreSQL, <tt>MERGE</tt> no
+     * H2 e <tt>INSERT ... ON DUPLICATE KEY</tt> no MySQL) ou, nos demais,
+     * comandos <tt>UPDATE</tt> e <tt>INSERT</tt> separados. As entidades da
+     * sessão são descartadas após a gravação.
      *
-     * @param  entity
-     *         Entidade válida a ser persistida.
+     * @param  clazz
+     *         Classe válida.
      *
-     * @return  A entidade persistida.
+     * @param  entities
+     *         Entidades a serem gravadas.
      *
-     * @since  1.0
+     * @return  As quantidades de entidades incluídas e atualizadas.
+     *
+     * @since  1.5
      *
      * @author Roberto Vezzoni
      */
-    public <T extends Serializable> T save(T entity) throws VexPersistenceException {
-        
-        T result = null;
+    public <T extends Serializable> UpsertResult upsertAll(Class<T> clazz, Collection<T> entities) throws VexPersistenceException {
+
+        checkWritable();
+
+        UpsertResult result = null;
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
 
         try {
-            beforeSave(entity);
+            beforeUpsertAll(clazz, entities);
 
             startTransaction();
 
             try {
 
-                result = getEntityManager().merge(entity);
+                result = BulkUpsert.upsert(getEntityManager(), clazz, entities);
 
                 commitTransaction();
 
@@ -287,19 +1607,31 @@ public abstract class DAOLocalSession implements DAOIntf {
                 throw new VexPersistenceException(e);
             }
 
+            conn.succeeded(start);
+
             return result;
 
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
 
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
 
-            afterSave(entity);
+            getPersistenceConnection().release(conn);
+
+            getPersistenceConnection().invalidateAll(clazz);
+
+            afterUpsertAll(clazz, entities);
         }
 
     }
-    
+
     /**
      * Cancela as operações realizadas sobre a entidade passada como argumento.
      *
@@ -386,8 +1718,14 @@ public abstract class DAOLocalSession implements DAOIntf {
      */
     public <T extends Serializable> boolean remove(final T entity) throws VexPersistenceException {
         
+        checkWritable();
+
         boolean result = false;
 
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
+
         try {
             beforeRemove(entity);
 
@@ -409,18 +1747,194 @@ public abstract class DAOLocalSession implements DAOIntf {
                 throw new VexPersistenceException(e);
             }
 
+            conn.succeeded(start);
+
             return result;
 
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
 
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
 
+            getPersistenceConnection().release(conn);
+
+            invalidate(entity);
+
             afterRemove(entity);
         }
         
     }
+
+    /**
+     * Remove, sem carregá-las, as entidades de uma classe dadas as suas chaves primárias.
+     * <p>
+     * Cada comando <tt>DELETE ... WHERE id IN (...)</tt> é confirmado em sua
+     * própria transação, mantendo curtos os bloqueios de remoções extensas. Se
+     * um comando falhar, os comandos anteriores permanecem confirmados.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @return  A quantidade de entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <T extends Serializable> int removeAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException {
+
+        checkWritable();
+
+        int count = 0;
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
+
+        try {
+            beforeRemoveAll(clazz, ids);
+
+            try {
+
+                EntityManager em = getEntityManager();
+
+                int chunkSize = BulkStatements.getChunkSize(em);
+
+                List<Object> chunk = new ArrayList<Object>(Math.min(chunkSize, ids.size()));
+
+                Iterator<?> it = ids.iterator();
+
+                while (it.hasNext()) {
+
+                    chunk.add(it.next());
+
+                    if ( (chunk.size() == chunkSize) || (!it.hasNext()) ) {
+
+                        startTransaction();
+
+                        int removed = BulkStatements.delete(em, clazz, chunk);
+
+                        commitTransaction();
+
+                        count += removed;
+
+                        // as entidades removidas não podem permanecer na sessão; as demais,
+                        // inclusive as da unidade de trabalho, continuam gerenciadas.
+                        BulkStatements.evict(em, clazz, chunk);
+
+                        chunk.clear();
+                    }
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                rollbackTransaction();
+
+                throw new VexPersistenceException("Remoção em lote interrompida após " + count + " entidades removidas", e);
+            }
+
+            conn.succeeded(start);
+
+            return count;
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
+        } finally {
+
+            if (keepSessionAlive) {
+                conn.closeEntityManager();
+            }
+
+            getPersistenceConnection().release(conn);
+
+            for (Object id: ids) {
+                getPersistenceConnection().invalidate(clazz, id);
+            }
+
+            afterRemoveAll(clazz, ids);
+        }
+
+    }
+    
+    /**
+     * Executa um trabalho composto por várias operações persistentes em uma
+     * única transação.
+     * <p>
+     * As operações dos DAOs e das Named Queries da mesma Persistence Unit
+     * executadas pelo trabalho participam da transação, e as alterações são
+     * enviadas e confirmadas uma única vez, ao término do trabalho. Se o
+     * trabalho lançar uma exceção ou alguma operação falhar, a transação é
+     * cancelada. Unidades de trabalho aninhadas participam da mais externa.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException {
+
+        PersistenceConnection conn = getPersistenceConnection();
+
+        conn.beginUnitOfWork();
+
+        boolean done = false;
+
+        try {
+
+            R result;
+
+            try {
+
+                result = work.execute();
+
+            } catch (RuntimeException e) {
+
+                throw e;
+
+            } catch (Exception e) {
+
+                throw new VexPersistenceException(e);
+            }
+
+            done = true;
+
+            return result;
+
+        } finally {
+
+            try {
+
+                conn.endUnitOfWork(done);
+
+            } finally {
+
+                if ( keepSessionAlive && (!conn.isInUnitOfWork()) ) {
+                    conn.closeEntityManager();
+                }
+            }
+        }
+
+    }
     
     /*
      * Event handler methods - call backs methods
@@ -551,4 +2065,64 @@ public abstract class DAOLocalSession implements DAOIntf {
      */
     public abstract void afterRemove(Object entity);
     
+    /**
+     * Callback Method executado antes de serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void beforeRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado após serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void afterRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado antes de serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void beforeUpsertAll(Class clazz, Collection<?> entities);
+    
+    /**
+     * Callback Method executado após serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract void afterUpsertAll(Class clazz, Collection<?> entities);
+    
 }
\ No newline at end of file
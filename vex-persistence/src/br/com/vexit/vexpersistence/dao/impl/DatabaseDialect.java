@@ -0,0 +1,272 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+
+/**
+ * <tt>DatabaseDialect</tt> é uma enumeração responsável por identificar o
+ * banco de dados de uma sessão, os seus limites para comandos em lote e a
+ * sintaxe de inclusão ou atualização (<i>upsert</i>) em um único comando.
+ * <p>
+ * O banco de dados é identificado pelo <tt>Dialect</tt> configurado no Hibernate.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+enum DatabaseDialect {
+
+    /** Oracle: no máximo 1000 expressões em uma lista <tt>IN</tt>. */
+    ORACLE(1000),
+
+    /** SQL Server: no máximo 2100 parâmetros por comando. */
+    SQLSERVER(2000),
+
+    /** PostgreSQL: no máximo 32767 parâmetros por comando. */
+    POSTGRESQL(10000),
+
+    /** MySQL: limitado pelo tamanho máximo do pacote. */
+    MYSQL(5000),
+
+    /** H2. */
+    H2(5000),
+
+    /** DB2: no máximo 32767 parâmetros por comando. */
+    DB2(10000),
+
+    /** Demais bancos de dados. */
+    GENERIC(1000);
+
+    private final int maxInListSize;
+
+    private DatabaseDialect(int maxInListSize) {
+        this.maxInListSize = maxInListSize;
+    }
+
+    /**
+     * Retorna a quantidade máxima de valores em uma lista <tt>IN</tt>.
+     *
+     * @return Quantidade máxima de valores.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    int getMaxInListSize() {
+        return maxInListSize;
+    }
+
+    /**
+     * Monta o comando SQL que inclui uma linha ou, se a chave primária já
+     * existir, atualiza as colunas informadas.
+     * <p>
+     * Os parâmetros do comando são as colunas, na ordem informada.
+     *
+     * @param table
+     *        Nome da tabela.
+     *
+     * @param columns
+     *        Colunas incluídas, começando pelas colunas da chave primária.
+     *
+     * @param keys
+     *        Colunas da chave primária.
+     *
+     * @param updates
+     *        Colunas atualizadas quando a chave primária já existir.
+     *
+     * @return O comando SQL ou <tt>null</tt> se o banco de dados não possuir
+     *         um comando de inclusão ou atualização.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    String upsert(String table, List<String> columns, String[] keys, List<String> updates) {
+
+        StringBuilder sql = new StringBuilder();
+
+        switch (this) {
+
+            case POSTGRESQL:
+
+                insert(sql, table, columns).append(" on conflict (");
+
+                join(sql, keys).append(") do ");
+
+                if (updates.isEmpty()) {
+
+                    sql.append("nothing");
+
+                } else {
+
+                    sql.append("update set ");
+
+                    for (int i = 0; i < updates.size(); i++) {
+                        sql.append( (i == 0) ? "" : ", " ).append(updates.get(i)).append(" = excluded.").append(updates.get(i));
+                    }
+                }
+
+                return sql.toString();
+
+            case MYSQL:
+
+                insert(sql, table, columns).append(" on duplicate key update ");
+
+                if (updates.isEmpty()) {
+
+                    sql.append(keys[0]).append(" = ").append(keys[0]);
+
+                } else {
+
+                    for (int i = 0; i < updates.size(); i++) {
+                        sql.append( (i == 0) ? "" : ", " ).append(updates.get(i)).append(" = values(").append(updates.get(i)).append(")");
+                    }
+                }
+
+                return sql.toString();
+
+            case H2:
+
+                sql.append("merge into ").append(table).append(" (");
+
+                join(sql, columns.toArray(new String[columns.size()])).append(") key (");
+
+                join(sql, keys).append(") values ");
+
+                return values(sql, columns.size()).toString();
+
+            default:
+
+                return null;
+        }
+    }
+
+    /**
+     * Monta o comando SQL de inclusão de uma linha.
+     *
+     * @param sql
+     *        Comando em construção.
+     *
+     * @param table
+     *        Nome da tabela.
+     *
+     * @param columns
+     *        Colunas incluídas.
+     *
+     * @return O comando em construção.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static StringBuilder insert(StringBuilder sql, String table, List<String> columns) {
+
+        sql.append("insert into ").append(table).append(" (");
+
+        join(sql, columns.toArray(new String[columns.size()])).append(") values ");
+
+        return values(sql, columns.size());
+    }
+
+    private static StringBuilder join(StringBuilder sql, String[] names) {
+
+        for (int i = 0; i < names.length; i++) {
+            sql.append( (i == 0) ? "" : ", " ).append(names[i]);
+        }
+
+        return sql;
+    }
+
+    private static StringBuilder values(StringBuilder sql, int count) {
+
+        sql.append("(");
+
+        for (int i = 0; i < count; i++) {
+            sql.append( (i == 0) ? "?" : ", ?" );
+        }
+
+        return sql.append(")");
+    }
+
+    /**
+     * Identifica o banco de dados de uma sessão.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @return O banco de dados ou {@link #GENERIC} se não for identificado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static DatabaseDialect of(EntityManager em) {
+
+        Object delegate = em.getDelegate();
+
+        if (!(delegate instanceof Session)) {
+            return GENERIC;
+        }
+
+        SessionFactory factory = ((Session) delegate).getSessionFactory();
+
+        if (!(factory instanceof SessionFactoryImplementor)) {
+            return GENERIC;
+        }
+
+        String dialect = ((SessionFactoryImplementor) factory).getDialect().getClass().getName();
+
+        if (dialect.indexOf("Oracle") > -1) {
+            return ORACLE;
+        }
+
+        if (dialect.indexOf("SQLServer") > -1) {
+            return SQLSERVER;
+        }
+
+        if (dialect.indexOf("PostgreSQL") > -1) {
+            return POSTGRESQL;
+        }
+
+        if (dialect.indexOf("MySQL") > -1) {
+            return MYSQL;
+        }
+
+        if (dialect.indexOf("H2") > -1) {
+            return H2;
+        }
+
+        if (dialect.indexOf("DB2") > -1) {
+            return DB2;
+        }
+
+        return GENERIC;
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.beans.Introspector;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.persistence.EmbeddedId;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Version;
+
+/**
+ * <tt>EntityMetadata</tt> é uma classe concreta responsável por descobrir,
+ * através das anotações JPA, o nome e o valor da chave primária e da versão
+ * de uma entidade.
+ * <p>
+ * Os metadados de cada classe são obtidos uma única vez e mantidos em cache.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class EntityMetadata {
+
+    private static final ConcurrentMap<Class<?>, EntityMetadata> cache = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+    private final Class<?> entityClass;
+
+    private String idName;
+    private Field idField;
+    private Method idGetter;
+    private boolean compositeId;
+    private boolean idClass;
+    private boolean generatedId;
+
+    // atributos @Id de uma chave @IdClass, copiados para uma instância da classe da chave.
+    private Class<?> idClassType;
+    private final List<AnnotatedElement> idMembers = new ArrayList<AnnotatedElement>();
+
+    private Field versionField;
+    private Method versionGetter;
+
+    private EntityMetadata(Class<?> entityClass) {
+
+        this.entityClass = entityClass;
+
+        findVersion();
+
+        for (Class<?> c = entityClass; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            if ( (idClassType == null) && c.isAnnotationPresent(IdClass.class) ) {
+                idClassType = c.getAnnotation(IdClass.class).value();
+            }
+        }
+
+        idClass = (idClassType != null);
+
+        compositeId = idClass;
+
+        if (idClass) {
+            findIdMembers();
+        }
+
+        for (Class<?> c = entityClass; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            for (Field f: c.getDeclaredFields()) {
+
+                if ( (!Modifier.isStatic(f.getModifiers())) && isId(f) ) {
+
+                    f.setAccessible(true);
+
+                    idName = f.getName();
+                    idField = f;
+                    generatedId = f.isAnnotationPresent(GeneratedValue.class);
+
+                    compositeId |= f.isAnnotationPresent(EmbeddedId.class);
+
+                    return;
+                }
+            }
+
+            for (Method m: c.getDeclaredMethods()) {
+
+                if ( (m.getParameterTypes().length == 0) && isId(m) ) {
+
+                    m.setAccessible(true);
+
+                    idName = propertyName(m);
+                    idGetter = m;
+                    generatedId = m.isAnnotationPresent(GeneratedValue.class);
+
+                    compositeId |= m.isAnnotationPresent(EmbeddedId.class);
+
+                    return;
+                }
+            }
+        }
+    }
+
+    private void findIdMembers() {
+
+        for (Class<?> c = entityClass; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            for (Field f: c.getDeclaredFields()) {
+
+                if ( (!Modifier.isStatic(f.getModifiers())) && f.isAnnotationPresent(Id.class) ) {
+
+                    f.setAccessible(true);
+
+                    idMembers.add(f);
+                }
+            }
+
+            for (Method m: c.getDeclaredMethods()) {
+
+                if ( (m.getParameterTypes().length == 0) && m.isAnnotationPresent(Id.class) ) {
+
+                    m.setAccessible(true);
+
+                    idMembers.add(m);
+                }
+            }
+        }
+    }
+
+    private void findVersion() {
+
+        for (Class<?> c = entityClass; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            for (Field f: c.getDeclaredFields()) {
+
+                if ( (!Modifier.isStatic(f.getModifiers())) && f.isAnnotationPresent(Version.class) ) {
+
+                    f.setAccessible(true);
+
+                    versionField = f;
+
+                    return;
+                }
+            }
+
+            for (Method m: c.getDeclaredMethods()) {
+
+                if ( (m.getParameterTypes().length == 0) && m.isAnnotationPresent(Version.class) ) {
+
+                    m.setAccessible(true);
+
+                    versionGetter = m;
+
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Retorna os metadados de uma classe de entidade.
+     *
+     * @param entityClass
+     *        Classe de entidade válida.
+     *
+     * @return Os metadados da classe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static EntityMetadata of(Class<?> entityClass) {
+
+        EntityMetadata metadata = cache.get(entityClass);
+
+        if (metadata == null) {
+
+            metadata = new EntityMetadata(entityClass);
+
+            EntityMetadata registered = cache.putIfAbsent(entityClass, metadata);
+
+            if (registered != null) {
+                metadata = registered;
+            }
+        }
+
+        return metadata;
+    }
+
+    private static boolean isId(AnnotatedElement e) {
+        return ( e.isAnnotationPresent(Id.class) || e.isAnnotationPresent(EmbeddedId.class) );
+    }
+
+    private static String propertyName(Method getter) {
+
+        String name = getter.getName();
+
+        if (name.startsWith("get") && (name.length() > 3)) {
+            return Introspector.decapitalize(name.substring(3));
+        }
+
+        if (name.startsWith("is") && (name.length() > 2)) {
+            return Introspector.decapitalize(name.substring(2));
+        }
+
+        return name;
+    }
+
+    /**
+     * Retorna o nome da entidade utilizado nas consultas JPQL.
+     *
+     * @return Nome da entidade.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    String getEntityName() {
+        return entityClass.getName();
+    }
+
+    /**
+     * Retorna o nome do atributo da chave primária.
+     *
+     * @return Nome do atributo.
+     *
+     * @throws VexPersistenceException
+     *         Se a classe não declarar uma chave primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    String getIdName() throws VexPersistenceException {
+
+        if (idName == null) {
+            throw new VexPersistenceException("A classe " + entityClass.getName() + " não declara uma chave primária");
+        }
+
+        return idName;
+    }
+
+    /**
+     * Indica se a chave primária é composta (<tt>@EmbeddedId</tt> ou <tt>@IdClass</tt>).
+     *
+     * @return true se a chave primária for composta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    boolean isCompositeId() {
+        return compositeId;
+    }
+
+    /**
+     * Indica se a chave primária é declarada através de <tt>@IdClass</tt>,
+     * não podendo ser comparada como um único atributo em JPQL.
+     *
+     * @return true se a chave primária for uma <tt>@IdClass</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    boolean isIdClass() {
+        return idClass;
+    }
+
+    /**
+     * Retorna o valor da chave primária de uma entidade. Para as chaves
+     * <tt>@IdClass</tt> é retornada uma instância da classe da chave com os
+     * valores de todos os atributos <tt>@Id</tt> da entidade, a mesma chave
+     * informada em <tt>find</tt>.
+     *
+     * @param entity
+     *        Entidade da classe destes metadados.
+     *
+     * @return Valor da chave primária.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    Object getId(Object entity) throws VexPersistenceException {
+
+        getIdName();
+
+        try {
+
+            if (idClass) {
+                return getIdClassValue(entity);
+            }
+
+            return ( (idField != null) ? idField.get(entity) : idGetter.invoke(entity) );
+
+        } catch (VexPersistenceException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new VexPersistenceException(e);
+        }
+    }
+
+    private Object getIdClassValue(Object entity) throws Exception {
+
+        Object id = idClassType.newInstance();
+
+        for (AnnotatedElement member: idMembers) {
+
+            String name;
+            Object value;
+
+            if (member instanceof Field) {
+                name = ((Field) member).getName();
+                value = ((Field) member).get(entity);
+            } else {
+                name = propertyName((Method) member);
+                value = ((Method) member).invoke(entity);
+            }
+
+            // a chave nula de uma entidade nova não identifica uma linha.
+            if (value == null) {
+                return null;
+            }
+
+            Field target = findField(idClassType, name);
+
+            if (target == null) {
+                throw new VexPersistenceException("A classe " + idClassType.getName() + " não declara o atributo " + name + " da chave de " + entityClass.getName());
+            }
+
+            target.set(id, value);
+        }
+
+        return id;
+    }
+
+    private static Field findField(Class<?> clazz, String name) {
+
+        for (Class<?> c = clazz; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+
+            try {
+
+                Field f = c.getDeclaredField(name);
+
+                f.setAccessible(true);
+
+                return f;
+
+            } catch (NoSuchFieldException e) {
+                // procura na superclasse.
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Indica se uma entidade nunca foi persistida, podendo ser incluída
+     * através de <tt>persist</tt> sem a consulta feita por <tt>merge</tt>.
+     * <p>
+     * A entidade é nova se a sua versão, quando declarada como objeto, é
+     * nula, ou se a sua chave primária gerada pelo provedor é nula ou zero.
+     * Entidades com chave primária atribuída pela aplicação e sem versão não
+     * podem ser distinguidas e não são consideradas novas.
+     *
+     * @param entity
+     *        Entidade da classe destes metadados.
+     *
+     * @return true se a entidade for seguramente nova.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    boolean isNew(Object entity) throws VexPersistenceException {
+
+        try {
+
+            if ( (versionField != null) && (!versionField.getType().isPrimitive()) ) {
+                return (versionField.get(entity) == null);
+            }
+
+            if ( (versionGetter != null) && (!versionGetter.getReturnType().isPrimitive()) ) {
+                return (versionGetter.invoke(entity) == null);
+            }
+
+            if ( generatedId && (!compositeId) ) {
+                return isUnassigned(getId(entity));
+            }
+
+            return false;
+
+        } catch (VexPersistenceException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new VexPersistenceException(e);
+        }
+    }
+
+    /**
+     * Indica se o valor de uma chave primária ainda não foi atribuído: nulo
+     * ou, se a chave primária é gerada pelo provedor, zero.
+     *
+     * @param id
+     *        Valor da chave primária.
+     *
+     * @return true se a chave primária não foi atribuída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    boolean isUnassigned(Object id) {
+        return ( (id == null) || (generatedId && (id instanceof Number) && (((Number) id).longValue() == 0)) );
+    }
+
+}
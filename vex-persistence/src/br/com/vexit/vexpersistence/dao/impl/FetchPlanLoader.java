@@ -0,0 +1,516 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.dao.intf.FetchPlan;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.hibernate.EntityMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.Type;
+
+/**
+ * <tt>FetchPlanLoader</tt> é uma classe concreta responsável por carregar as
+ * associações descritas por um {@link FetchPlan <tt>plano de carga</tt>},
+ * compartilhada pelas sessões locais e injetadas.
+ * <p>
+ * As junções são acrescentadas à consulta como <tt>left join fetch</tt>. As
+ * associações em lote são percorridas nível a nível: as coleções ainda não
+ * carregadas são inicializadas por uma consulta
+ * <tt>left join fetch ... WHERE id IN (...)</tt> por bloco de proprietários e
+ * os proxies por uma consulta <tt>WHERE id IN (...)</tt> por bloco de chaves,
+ * de forma que N associações custem N / <tt>batchSize</tt> consultas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see FetchPlan
+ * @see BulkStatements
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class FetchPlanLoader {
+
+    private FetchPlanLoader() {
+    }
+
+    /**
+     * Monta a consulta JPQL de todas as entidades de uma classe com as
+     * junções do plano de carga.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param plan
+     *        Plano de carga.
+     *
+     * @param order
+     *        Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma consulta JPQL.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static String select(Class<?> clazz, FetchPlan plan, Field ... order) {
+
+        StringBuilder ql = from(clazz, plan);
+
+        for (int i = 0; (order != null) && (i < order.length); i++) {
+            ql.append( (i == 0) ? " order by " : ", " ).append("e.").append(order[i].getName());
+        }
+
+        return ql.toString();
+    }
+
+    private static StringBuilder from(Class<?> clazz, FetchPlan plan) {
+
+        StringBuilder ql = new StringBuilder("select e from ").append(clazz.getName()).append(" as e");
+
+        // cada prefixo de um caminho recebe um alias, reaproveitado pelos caminhos seguintes.
+        Map<String, String> aliases = new HashMap<String, String>();
+
+        for (String path: plan.getJoins()) {
+
+            String parent = "e";
+
+            String[] segments = path.split("\\.");
+
+            StringBuilder prefix = new StringBuilder();
+
+            for (String segment: segments) {
+
+                if (prefix.length() > 0) {
+                    prefix.append(".");
+                }
+
+                prefix.append(segment);
+
+                String alias = aliases.get(prefix.toString());
+
+                if (alias == null) {
+
+                    alias = "f" + aliases.size();
+
+                    aliases.put(prefix.toString(), alias);
+
+                    ql.append(" left join fetch ").append(parent).append(".").append(segment).append(" as ").append(alias);
+                }
+
+                parent = alias;
+            }
+        }
+
+        return ql;
+    }
+
+    /**
+     * Descarta as repetições de uma mesma entidade produzidas pela junção de
+     * coleções, preservando a ordem da consulta.
+     *
+     * @param rows
+     *        Resultado da consulta.
+     *
+     * @return As entidades distintas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static <T> List<T> distinct(List<T> rows) {
+
+        Map<T, Boolean> seen = new IdentityHashMap<T, Boolean>();
+
+        List<T> result = new ArrayList<T>(rows.size());
+
+        for (T row: rows) {
+
+            if (seen.put(row, Boolean.TRUE) == null) {
+                result.add(row);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Carrega uma entidade e as associações do plano de carga.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param id
+     *        Chave primária da entidade.
+     *
+     * @param plan
+     *        Plano de carga.
+     *
+     * @param hint
+     *        Hint aplicado à consulta, ou <tt>null</tt>.
+     *
+     * @return A entidade ou <tt>null</tt>, se ela não existir.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static <T> T get(EntityManager em, Class<T> clazz, Object id, FetchPlan plan, String hint) {
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        T result = null;
+
+        if ( plan.getJoins().isEmpty() || metadata.isIdClass() ) {
+
+            result = em.find(clazz, id);
+
+        } else {
+
+            Query q = em.createQuery(from(clazz, plan).append(" where e.").append(metadata.getIdName()).append(" = ?1").toString());
+
+            if (hint != null) {
+                q.setHint(hint, Boolean.TRUE);
+            }
+
+            List<?> rows = q.setParameter(1, id).getResultList();
+
+            result = ( rows.isEmpty() ? null : clazz.cast(rows.get(0)) );
+        }
+
+        if (result != null) {
+
+            List<Object> roots = new ArrayList<Object>(1);
+
+            roots.add(result);
+
+            batch(em, roots, plan);
+        }
+
+        return result;
+    }
+
+    /**
+     * Carrega em lote as associações do plano de carga das entidades informadas.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param roots
+     *        Entidades carregadas.
+     *
+     * @param plan
+     *        Plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static void batch(EntityManager em, Collection<?> roots, FetchPlan plan) {
+
+        Object delegate = em.getDelegate();
+
+        // sem uma sessão do Hibernate as associações são carregadas sob demanda.
+        if ( roots.isEmpty() || (!(delegate instanceof Session)) ) {
+            return;
+        }
+
+        Session session = (Session) delegate;
+
+        for (String path: plan.getBatches()) {
+
+            Collection<?> level = roots;
+
+            for (String segment: path.split("\\.")) {
+                level = load(em, session, level, segment, plan.getBatchSize());
+            }
+        }
+
+        if (plan.isBatchAll()) {
+
+            for (String property: associations(session, roots)) {
+                load(em, session, roots, property, plan.getBatchSize());
+            }
+        }
+    }
+
+    /**
+     * Retorna os nomes das associações mapeadas das entidades informadas.
+     */
+    private static List<String> associations(Session session, Collection<?> entities) {
+
+        List<String> result = new ArrayList<String>();
+
+        Map<Class<?>, Boolean> visited = new HashMap<Class<?>, Boolean>();
+
+        for (Object entity: entities) {
+
+            Object e = unproxy(entity);
+
+            if ( (e == null) || (visited.put(e.getClass(), Boolean.TRUE) != null) ) {
+                continue;
+            }
+
+            Class<?> c = e.getClass();
+
+            ClassMetadata metadata = session.getSessionFactory().getClassMetadata(c);
+
+            if (metadata == null) {
+                continue;
+            }
+
+            String[] names = metadata.getPropertyNames();
+            Type[] types = metadata.getPropertyTypes();
+
+            for (int i = 0; i < names.length; i++) {
+
+                if ( (types[i].isCollectionType() || types[i].isEntityType()) && (!result.contains(names[i])) ) {
+                    result.add(names[i]);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Carrega uma associação das entidades informadas, retornando as
+     * entidades associadas para o nível seguinte do caminho.
+     */
+    private static List<Object> load(EntityManager em, Session session, Collection<?> owners, String property, int batchSize) {
+
+        Map<Class<?>, List<Object>> collectionOwners = new LinkedHashMap<Class<?>, List<Object>>();
+        Map<Class<?>, List<Object>> proxyIds = new LinkedHashMap<Class<?>, List<Object>>();
+
+        List<Object> values = new ArrayList<Object>();
+
+        for (Object o: owners) {
+
+            Object owner = unproxy(o);
+
+            if (owner == null) {
+                continue;
+            }
+
+            ClassMetadata metadata = session.getSessionFactory().getClassMetadata(owner.getClass());
+
+            if ( (metadata == null) || (!contains(metadata.getPropertyNames(), property)) ) {
+                continue;
+            }
+
+            Object value = metadata.getPropertyValue(owner, property, EntityMode.POJO);
+
+            if (value == null) {
+                continue;
+            }
+
+            if (!Hibernate.isInitialized(value)) {
+
+                if (value instanceof HibernateProxy) {
+
+                    LazyInitializer li = ((HibernateProxy) value).getHibernateLazyInitializer();
+
+                    group(proxyIds, li.getPersistentClass(), li.getIdentifier());
+
+                } else {
+
+                    group(collectionOwners, owner.getClass(), owner);
+                }
+            }
+
+            values.add(value);
+        }
+
+        for (Map.Entry<Class<?>, List<Object>> e: collectionOwners.entrySet()) {
+            initializeCollections(em, session, e.getKey(), e.getValue(), property, batchSize);
+        }
+
+        Map<Class<?>, Map<Object, Object>> loaded = new HashMap<Class<?>, Map<Object, Object>>();
+
+        for (Map.Entry<Class<?>, List<Object>> e: proxyIds.entrySet()) {
+            loaded.put(e.getKey(), initializeProxies(em, session, e.getKey(), e.getValue(), batchSize));
+        }
+
+        List<Object> result = new ArrayList<Object>();
+
+        for (Object value: values) {
+
+            if (value instanceof Collection) {
+
+                result.addAll((Collection<?>) value);
+
+            } else if (value instanceof Map) {
+
+                result.addAll(((Map<?, ?>) value).values());
+
+            } else if (value instanceof HibernateProxy) {
+
+                Object entity = unproxy(value);
+
+                if (entity == null) {
+
+                    // o proxy continua não inicializado, mas a entidade já está na sessão.
+                    LazyInitializer li = ((HibernateProxy) value).getHibernateLazyInitializer();
+
+                    entity = loaded.get(li.getPersistentClass()).get(li.getIdentifier());
+                }
+
+                if (entity != null) {
+                    result.add(entity);
+                }
+
+            } else {
+
+                result.add(value);
+            }
+        }
+
+        return result;
+    }
+
+    private static void initializeCollections(EntityManager em, Session session, Class<?> clazz, List<Object> owners, String property, int batchSize) {
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        if (metadata.isCompositeId()) {
+
+            // chaves compostas não podem ser comparadas em uma lista IN.
+            for (Object owner: owners) {
+                Hibernate.initialize(session.getSessionFactory().getClassMetadata(clazz).getPropertyValue(owner, property, EntityMode.POJO));
+            }
+
+            return;
+        }
+
+        int chunkSize = Math.min(batchSize, BulkStatements.getChunkSize(em));
+
+        String ql = "select e from " + metadata.getEntityName() + " as e left join fetch e." + property + " where e." + metadata.getIdName() + " in ";
+
+        for (int from = 0; from < owners.size(); from += chunkSize) {
+
+            List<Object> chunk = owners.subList(from, Math.min(from + chunkSize, owners.size()));
+
+            Query q = em.createQuery(ql + BulkStatements.inList(chunk.size()));
+
+            for (int i = 0; i < chunk.size(); i++) {
+                q.setParameter(i + 1, session.getIdentifier(chunk.get(i)));
+            }
+
+            // as coleções das entidades já presentes na sessão são inicializadas pela junção.
+            q.getResultList();
+        }
+    }
+
+    private static Map<Object, Object> initializeProxies(EntityManager em, Session session, Class<?> clazz, List<Object> ids, int batchSize) {
+
+        Map<Object, Object> result = new HashMap<Object, Object>();
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+
+        if (metadata.isCompositeId()) {
+
+            for (Object id: ids) {
+                result.put(id, em.find(clazz, id));
+            }
+
+            return result;
+        }
+
+        int chunkSize = Math.min(batchSize, BulkStatements.getChunkSize(em));
+
+        String ql = "select e from " + metadata.getEntityName() + " as e where e." + metadata.getIdName() + " in ";
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+
+            List<Object> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+
+            Query q = em.createQuery(ql + BulkStatements.inList(chunk.size()));
+
+            for (int i = 0; i < chunk.size(); i++) {
+                q.setParameter(i + 1, chunk.get(i));
+            }
+
+            // os proxies passam a ser resolvidos pelas entidades carregadas na sessão.
+            for (Object entity: q.getResultList()) {
+                result.put(session.getIdentifier(entity), entity);
+            }
+        }
+
+        return result;
+    }
+
+    private static Object unproxy(Object o) {
+
+        if (o instanceof HibernateProxy) {
+
+            LazyInitializer li = ((HibernateProxy) o).getHibernateLazyInitializer();
+
+            // proxies de entidades inexistentes não são percorridos.
+            return ( li.isUninitialized() ? null : li.getImplementation() );
+        }
+
+        return o;
+    }
+
+    private static void group(Map<Class<?>, List<Object>> groups, Class<?> key, Object value) {
+
+        List<Object> list = groups.get(key);
+
+        if (list == null) {
+
+            list = new ArrayList<Object>();
+
+            groups.put(key, list);
+        }
+
+        list.add(value);
+    }
+
+    private static boolean contains(String[] names, String name) {
+
+        for (String n: names) {
+
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.dao.intf.Page;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * <tt>KeysetQuery</tt> é uma classe concreta responsável por montar e
+ * executar a consulta de uma página por chave (<i>keyset</i>).
+ * <p>
+ * As entidades são ordenadas de forma ascendente pelos atributos informados
+ * seguidos da chave primária, que desempata a ordenação. A página seguinte é
+ * obtida com o predicado
+ * <tt>a &gt;= ?1 and ((a &gt; ?1) or (a = ?1 and b &gt; ?2) or (a = ?1 and b = ?2 and id &gt; ?3))</tt>,
+ * cujo limite no primeiro atributo permite ao banco de dados posicionar-se
+ * diretamente no índice mesmo sem expandir a disjunção, com custo
+ * independente da profundidade da página. Os atributos de ordenação não devem
+ * admitir valores nulos.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see Page
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class KeysetQuery {
+
+    private final Class<?> clazz;
+    private final Field[] keys;
+    private final EntityMetadata metadata;
+
+    // true se a chave primária já estiver entre os atributos de ordenação.
+    private final boolean unique;
+
+    /**
+     * Cria a consulta de uma classe ordenada pelos atributos informados.
+     *
+     * @param clazz
+     *        Classe de entidade válida.
+     *
+     * @param order
+     *        Atributos de ordenação.
+     *
+     * @throws VexPersistenceException
+     *         Se a chave primária for composta e não estiver entre os atributos.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    KeysetQuery(Class<?> clazz, Field ... order) throws VexPersistenceException {
+
+        this.clazz = clazz;
+        this.metadata = EntityMetadata.of(clazz);
+
+        boolean unique = false;
+
+        for (Field f: order) {
+
+            f.setAccessible(true);
+
+            unique |= f.getName().equals(metadata.getIdName());
+        }
+
+        if ( (!unique) && metadata.isCompositeId() ) {
+            throw new VexPersistenceException("A chave primária composta de " + clazz.getName() + " não pode desempatar a paginação por chave");
+        }
+
+        this.keys = order;
+        this.unique = unique;
+    }
+
+    /**
+     * Quantidade de valores da chave de continuação.
+     */
+    private int size() {
+        return ( keys.length + (unique ? 0 : 1) );
+    }
+
+    /**
+     * Nome do atributo de ordenação na posição informada.
+     */
+    private String name(int i) {
+        return ( (i < keys.length) ? keys[i].getName() : metadata.getIdName() );
+    }
+
+    /**
+     * Valor do atributo de ordenação de uma entidade na posição informada.
+     */
+    private Object value(Object entity, int i) {
+
+        try {
+
+            return ( (i < keys.length) ? keys[i].get(entity) : metadata.getId(entity) );
+
+        } catch (IllegalAccessException e) {
+
+            throw new VexPersistenceException(e);
+        }
+    }
+
+    /**
+     * Monta a consulta JPQL da página.
+     *
+     * @param after
+     *        true se houver uma chave de continuação.
+     *
+     * @return Uma consulta JPQL.
+     */
+    private String ql(boolean after) {
+
+        StringBuilder ql = new StringBuilder("select e from ").append(metadata.getEntityName()).append(" as e");
+
+        int n = size();
+
+        if (after) {
+
+            ql.append(" where ");
+
+            // limite sargável no primeiro atributo, que permite ao banco de
+            // dados percorrer o índice a partir da chave de continuação.
+            if (n > 1) {
+                ql.append("e.").append(name(0)).append(" >= ?1 and (");
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                if (i > 0) {
+                    ql.append(" or ");
+                }
+
+                ql.append("(");
+
+                for (int j = 0; j < i; j++) {
+                    ql.append("e.").append(name(j)).append(" = ?").append(j + 1).append(" and ");
+                }
+
+                ql.append("e.").append(name(i)).append(" > ?").append(i + 1).append(")");
+            }
+
+            if (n > 1) {
+                ql.append(")");
+            }
+        }
+
+        ql.append(" order by ");
+
+        for (int i = 0; i < n; i++) {
+
+            if (i > 0) {
+                ql.append(", ");
+            }
+
+            ql.append("e.").append(name(i));
+        }
+
+        return ql.toString();
+    }
+
+    /**
+     * Executa a consulta de uma página.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param afterKey
+     *        Chave de continuação da página anterior, um valor único quando
+     *        houver um único atributo de ordenação, ou <tt>null</tt> para a
+     *        primeira página.
+     *
+     * @param limit
+     *        Quantidade máxima de entidades da página.
+     *
+     * @return Uma página de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T> Page<T> getPage(EntityManager em, Object afterKey, int limit) {
+
+        int n = size();
+
+        Object[] after = null;
+
+        if (afterKey instanceof Object[]) {
+            after = (Object[]) afterKey;
+        } else if (afterKey != null) {
+            after = new Object[] { afterKey };
+        }
+
+        if ( (after != null) && (after.length != n) ) {
+            throw new VexPersistenceException("A chave de continuação de " + clazz.getName() + " deve ter " + n + " valores");
+        }
+
+        limit = Math.max(1, limit);
+
+        Query q = em.createQuery(ql(after != null));
+
+        if (after != null) {
+            for (int i = 0; i < n; i++) {
+                q.setParameter(i + 1, after[i]);
+            }
+        }
+
+        // uma entidade a mais indica a existência da próxima página.
+        List<T> rows = q.setMaxResults(limit + 1).getResultList();
+
+        Object[] nextKey = null;
+
+        if (rows.size() > limit) {
+
+            rows = new ArrayList<T>(rows.subList(0, limit));
+
+            T last = rows.get(limit - 1);
+
+            nextKey = new Object[n];
+
+            for (int i = 0; i < n; i++) {
+                nextKey[i] = value(last, i);
+            }
+        }
+
+        return new Page<T>(rows, nextKey);
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <tt>QueryCache</tt> é uma classe concreta responsável por montar e manter em
+ * cache as consultas JPQL geradas pelos DAOs a partir de uma classe de
+ * entidade, dos atributos projetados e dos atributos de ordenamento.
+ * <p>
+ * Cada consulta é montada uma única vez; as chamadas seguintes reutilizam o
+ * mesmo texto, que também identifica o plano já compilado no cache de planos
+ * do provedor JPA.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOLocalSession
+ * @see DAOInjectedSession
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+final class QueryCache {
+
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private static final ConcurrentMap<Class<?>, String> unordered = new ConcurrentHashMap<Class<?>, String>();
+    private static final ConcurrentMap<Key, String> ordered = new ConcurrentHashMap<Key, String>();
+
+    private QueryCache() {
+    }
+
+    /**
+     * Retorna a consulta JPQL de todas as entidades de uma classe, ordenadas
+     * pelos atributos informados.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma consulta JPQL.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static String getAll(Class<?> clazz, Field ... fields) {
+
+        if ( (fields == null) || (fields.length == 0) ) {
+
+            String ql = unordered.get(clazz);
+
+            if (ql == null) {
+
+                ql = build(clazz, null, NO_FIELDS);
+
+                unordered.put(clazz, ql);
+            }
+
+            return ql;
+        }
+
+        Key key = new Key(clazz, null, fields);
+
+        String ql = ordered.get(key);
+
+        if (ql == null) {
+
+            // a chave mantida no cache não pode compartilhar o array do chamador.
+            key = new Key(clazz, null, fields.clone());
+
+            ql = build(clazz, null, fields);
+
+            ordered.put(key, ql);
+        }
+
+        return ql;
+    }
+
+    /**
+     * Retorna a consulta JPQL dos atributos informados de todas as entidades
+     * de uma classe, ordenadas pelos atributos de ordenamento.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma consulta JPQL.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    static String select(Class<?> clazz, Field[] fields, Field ... order) {
+
+        if (order == null) {
+            order = NO_FIELDS;
+        }
+
+        Key key = new Key(clazz, fields, order);
+
+        String ql = ordered.get(key);
+
+        if (ql == null) {
+
+            key = new Key(clazz, fields.clone(), order.clone());
+
+            ql = build(clazz, fields, order);
+
+            ordered.put(key, ql);
+        }
+
+        return ql;
+    }
+
+    private static String build(Class<?> clazz, Field[] fields, Field[] order) {
+
+        StringBuilder ql = new StringBuilder("select ");
+
+        if (fields == null) {
+
+            ql.append("e");
+
+        } else {
+
+            // definindo projeção.
+            for (int i = 0; i < fields.length; i++) {
+
+                ql.append( (i == 0) ? "e." : ", e." ).append(fields[i].getName());
+            }
+        }
+
+        ql.append(" from ").append(clazz.getName()).append(" as e");
+
+        // definindo ordem, se houver.
+        for (int i = 0; i < order.length; i++) {
+
+            ql.append( (i == 0) ? " order by " : ", " ).append("e.").append(order[i].getName());
+        }
+
+        return ql.toString();
+    }
+
+    /**
+     * Chave de uma consulta ordenada ou de uma projeção no cache.
+     */
+    private static final class Key {
+
+        private final Class<?> clazz;
+        private final Field[] fields;
+        private final Field[] order;
+        private final int hash;
+
+        private Key(Class<?> clazz, Field[] fields, Field[] order) {
+            this.clazz = clazz;
+            this.fields = fields;
+            this.order = order;
+            this.hash = 31 * (31 * clazz.hashCode() + Arrays.hashCode(fields)) + Arrays.hashCode(order);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+
+            return ( (clazz == k.clazz) && Arrays.equals(fields, k.fields) && Arrays.equals(order, k.order) );
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <tt>RowMapper</tt> é uma classe concreta responsável por converter as linhas
+ * de uma consulta de projeção em objetos de uma classe de resultado,
+ * através do construtor cujos parâmetros correspondem às colunas da linha.
+ * <p>
+ * Os objetos criados não são entidades gerenciadas: a sessão não mantém
+ * cópias para a verificação de alterações e as colunas não selecionadas não
+ * são carregadas.
+ * <p>
+ * Se a classe de resultado for <tt>Object[]</tt> as linhas são retornadas
+ * como arrays, inclusive as de uma única coluna; se a linha tiver uma única
+ * coluna que já seja da classe de resultado, a coluna é retornada sem
+ * conversão.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOLocalSession
+ * @see DAOInjectedSession
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public final class RowMapper<R> {
+
+    private static final ConcurrentMap<Class<?>, RowMapper<?>> mappers = new ConcurrentHashMap<Class<?>, RowMapper<?>>();
+
+    private static final Map<Class<?>, Class<?>> wrappers = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        wrappers.put(boolean.class, Boolean.class);
+        wrappers.put(byte.class, Byte.class);
+        wrappers.put(char.class, Character.class);
+        wrappers.put(short.class, Short.class);
+        wrappers.put(int.class, Integer.class);
+        wrappers.put(long.class, Long.class);
+        wrappers.put(float.class, Float.class);
+        wrappers.put(double.class, Double.class);
+    }
+
+    private final Class<R> resultClass;
+
+    private final ConcurrentMap<Integer, Constructor<R>> constructors = new ConcurrentHashMap<Integer, Constructor<R>>();
+
+    private RowMapper(Class<R> resultClass) {
+        this.resultClass = resultClass;
+    }
+
+    /**
+     * Retorna o conversor de linhas de uma classe de resultado.
+     *
+     * @param resultClass
+     *        Classe de resultado.
+     *
+     * @return O conversor da classe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static <R> RowMapper<R> of(Class<R> resultClass) {
+
+        RowMapper<R> mapper = (RowMapper<R>) mappers.get(resultClass);
+
+        if (mapper == null) {
+
+            mapper = new RowMapper<R>(resultClass);
+
+            mappers.put(resultClass, mapper);
+        }
+
+        return mapper;
+    }
+
+    /**
+     * Converte as linhas de uma consulta de projeção.
+     *
+     * @param rows
+     *        Linhas retornadas pela consulta.
+     *
+     * @return Os objetos da classe de resultado, na ordem das linhas.
+     *
+     * @throws VexPersistenceException
+     *         Se a classe de resultado não possuir um construtor compatível
+     *         com as colunas ou se o construtor falhar.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public List<R> map(List<?> rows) throws VexPersistenceException {
+
+        List<R> result = new ArrayList<R>(rows.size());
+
+        for (Object row: rows) {
+            result.add(map(row));
+        }
+
+        return result;
+    }
+
+    /**
+     * Converte uma linha de uma consulta de projeção.
+     *
+     * @param row
+     *        Linha retornada pela consulta: um <tt>Object[]</tt> ou, se a
+     *        consulta seleciona uma única coluna, o valor da coluna.
+     *
+     * @return Um objeto da classe de resultado.
+     *
+     * @throws VexPersistenceException
+     *         Se a classe de resultado não possuir um construtor compatível
+     *         com as colunas ou se o construtor falhar.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public R map(Object row) throws VexPersistenceException {
+
+        Object[] values = ( (row instanceof Object[]) ? (Object[]) row : new Object[] {row} );
+
+        if (resultClass == Object[].class) {
+            return resultClass.cast(values);
+        }
+
+        if ( (values.length == 1) && resultClass.isInstance(values[0]) ) {
+            return resultClass.cast(values[0]);
+        }
+
+        Constructor<R> constructor = getConstructor(values);
+
+        try {
+
+            return constructor.newInstance(values);
+
+        } catch (InvocationTargetException e) {
+
+            throw new VexPersistenceException(e.getCause());
+
+        } catch (Exception e) {
+
+            throw new VexPersistenceException(e);
+        }
+    }
+
+    /**
+     * Retorna o construtor compatível com as colunas de uma linha, dando
+     * preferência ao último construtor utilizado com a mesma quantidade de
+     * colunas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private Constructor<R> getConstructor(Object[] values) throws VexPersistenceException {
+
+        Integer arity = Integer.valueOf(values.length);
+
+        Constructor<R> constructor = constructors.get(arity);
+
+        if ( (constructor != null) && isCompatible(constructor.getParameterTypes(), values) ) {
+            return constructor;
+        }
+
+        for (Constructor<?> c: resultClass.getDeclaredConstructors()) {
+
+            if ( (c.getParameterTypes().length == values.length) && isCompatible(c.getParameterTypes(), values) ) {
+
+                constructor = (Constructor<R>) c;
+
+                constructor.setAccessible(true);
+
+                constructors.put(arity, constructor);
+
+                return constructor;
+            }
+        }
+
+        throw new VexPersistenceException("Nenhum construtor de " + resultClass.getName() + " compatível com " + Arrays.toString(types(values)));
+    }
+
+    private static boolean isCompatible(Class<?>[] types, Object[] values) {
+
+        for (int i = 0; i < types.length; i++) {
+
+            if (values[i] == null) {
+
+                if (types[i].isPrimitive()) {
+                    return false;
+                }
+
+            } else {
+
+                Class<?> type = ( types[i].isPrimitive() ? wrappers.get(types[i]) : types[i] );
+
+                if (!type.isInstance(values[i])) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static String[] types(Object[] values) {
+
+        String[] types = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            types[i] = ( (values[i] == null) ? "null" : values[i].getClass().getName() );
+        }
+
+        return types;
+    }
+
+}
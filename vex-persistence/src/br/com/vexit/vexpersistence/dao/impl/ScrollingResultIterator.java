@@ -0,0 +1,210 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.dao.intf.ResultIterator;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.util.NoSuchElementException;
+import javax.persistence.EntityManager;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * <tt>ScrollingResultIterator</tt> é uma classe concreta responsável por
+ * percorrer o resultado de uma consulta JPQL através de um
+ * <tt>ScrollableResults</tt> do Hibernate.
+ * <p>
+ * As entidades são lidas somente para leitura em blocos de <tt>fetchSize</tt>
+ * linhas. Quando a sessão pertence ao iterador ela é limpa a cada bloco e
+ * fechada junto com o cursor; uma sessão injetada apenas tem as entidades já
+ * percorridas desanexadas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see ResultIterator
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+class ScrollingResultIterator<T> implements ResultIterator<T> {
+
+    private final EntityManager em;
+    private final boolean owned;
+    private final int fetchSize;
+    private final Runnable onClose;
+
+    private final Session session;
+    private final ScrollableResults results;
+
+    private T current;
+    private T previous;
+    private boolean fetched;
+    private boolean closed;
+    private int count;
+
+    /**
+     * Abre o cursor de uma consulta JPQL.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param owned
+     *        true se a sessão pertence ao iterador e deve ser fechada com ele.
+     *
+     * @param ql
+     *        Consulta JPQL.
+     *
+     * @param fetchSize
+     *        Quantidade de linhas lidas por vez.
+     *
+     * @param onClose
+     *        Ação executada após o fechamento; pode ser <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    ScrollingResultIterator(EntityManager em, boolean owned, String ql, int fetchSize, Runnable onClose) {
+
+        this.em = em;
+        this.owned = owned;
+        this.fetchSize = Math.max(1, fetchSize);
+        this.onClose = onClose;
+
+        session = (Session) em.getDelegate();
+
+        results = session.createQuery(ql)
+                .setFetchSize(this.fetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    public boolean hasNext() {
+
+        if (closed) {
+            return false;
+        }
+
+        if (!fetched) {
+
+            detach();
+
+            if (results.next()) {
+
+                current = (T) results.get(0);
+
+            } else {
+
+                current = null;
+
+                close();
+
+                return false;
+            }
+
+            fetched = true;
+        }
+
+        return true;
+    }
+
+    public T next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        fetched = false;
+
+        previous = current;
+
+        count++;
+
+        return current;
+    }
+
+    /**
+     * Libera da sessão as entidades já percorridas.
+     */
+    private void detach() {
+
+        if (owned) {
+
+            if ( (count > 0) && ((count % fetchSize) == 0) ) {
+                session.clear();
+            }
+
+        } else if ( (previous != null) && session.contains(previous) ) {
+
+            session.evict(previous);
+        }
+
+        previous = null;
+    }
+
+    /**
+     * Operação não suportada.
+     *
+     * @throws UnsupportedOperationException
+     *         Sempre.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() throws VexPersistenceException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+
+            results.close();
+
+            if (owned) {
+
+                // a sessão foi usada somente para leitura.
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+
+                em.close();
+            }
+
+        } catch (RuntimeException e) {
+
+            throw new VexPersistenceException(e);
+
+        } finally {
+
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+}
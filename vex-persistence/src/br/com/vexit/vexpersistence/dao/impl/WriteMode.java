@@ -0,0 +1,84 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import javax.persistence.EntityManager;
+
+/**
+ * <tt>WriteMode</tt> é uma enumeração responsável por definir como uma
+ * entidade é gravada na sessão com o banco de dados.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see EntityMetadata#isNew(Object)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+enum WriteMode {
+
+    /**
+     * Inclui as entidades novas através de <tt>persist</tt> e atualiza as
+     * demais através de <tt>merge</tt>.
+     */
+    SAVE,
+
+    /**
+     * Inclui a entidade através de <tt>persist</tt>.
+     */
+    INSERT,
+
+    /**
+     * Atualiza a entidade através de <tt>merge</tt>.
+     */
+    UPDATE;
+
+    /**
+     * Grava uma entidade na sessão com o banco de dados.
+     *
+     * @param em
+     *        Sessão com o banco de dados.
+     *
+     * @param entity
+     *        Entidade a ser gravada.
+     *
+     * @return A entidade gerenciada pela sessão: a própria entidade, se
+     *         incluída, ou a cópia gerenciada, se atualizada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T> T write(EntityManager em, T entity) {
+
+        if ( (this == INSERT) || ((this == SAVE) && EntityMetadata.of(entity.getClass()).isNew(entity)) ) {
+
+            em.persist(entity);
+
+            return entity;
+        }
+
+        return em.merge(entity);
+    }
+
+}
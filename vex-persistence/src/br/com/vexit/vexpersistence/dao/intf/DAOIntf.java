@@ -21,16 +21,19 @@
 
 package br.com.vexit.vexpersistence.dao.intf;
 
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <tt>DAOIntf</tt> é uma interface responsável por listar quais métodos um 
  * DAO concreto pode executar.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  * 
  * @see DAOLocalSession
  * @see DAOInjectedSession
@@ -41,6 +44,14 @@ import java.util.List;
  * @author Roberto Vezzoni
  */
 public interface DAOIntf extends Serializable {
+
+    /**
+     * Quantidade padrão de entidades entre cada <tt>flush</tt> e <tt>clear</tt>
+     * nas operações em lote.
+     *
+     * @since  1.5
+     */
+    int DEFAULT_BATCH_SIZE = 50;
     
     /*
      * CRUD methods
@@ -63,6 +74,153 @@ public interface DAOIntf extends Serializable {
      */
     <T extends Serializable> List<T> getAll(Class<T> clazz, Field ... fields) throws VexPersistenceException;
 
+    /**
+     * Carrega as entidades de uma classe desejada dadas as suas chaves primárias.
+     * <p>
+     * As entidades já carregadas na sessão são reaproveitadas e as demais são
+     * buscadas em comandos <tt>SELECT ... WHERE id IN (...)</tt>, reduzindo N
+     * consultas a uma consulta por bloco de chaves.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias, do mesmo tipo do atributo da chave primária.
+     *
+     * @return As entidades indexadas pelas chaves, na ordem informada; as chaves
+     *         inexistentes são mapeadas para <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> Map<Object, T> getAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException;
+
+    /**
+     * Retorna uma lista ordenada de todas as entidades de uma classe desejada,
+     * carregando as associações descritas pelo plano de carga.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> List<T> getAll(Class<T> clazz, FetchPlan plan, Field ... fields) throws VexPersistenceException;
+
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, convertidos em objetos de uma classe de resultado através do
+     * construtor cujos parâmetros correspondem aos atributos.
+     * <p>
+     * Somente as colunas dos atributos informados são lidas e os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com os atributos.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable, R> List<R> project(Class<T> clazz, Class<R> resultClass, Field[] fields, Field ... order) throws VexPersistenceException;
+
+    /**
+     * Retorna os atributos informados de todas as entidades de uma classe
+     * desejada, sem carregar as entidades.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fields
+     *         Atributos a serem selecionados.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento da lista.
+     *
+     * @return Uma lista de linhas com os valores dos atributos, na ordem informada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> List<Object[]> project(Class<T> clazz, Field[] fields, Field ... order) throws VexPersistenceException;
+
+    /**
+     * Percorre através de um cursor todas as entidades de uma classe desejada,
+     * ordenadas pelos atributos informados, sem carregá-las inteiras em memória.
+     * <p>
+     * As entidades retornadas são somente para leitura e deixam de ser
+     * gerenciadas pela sessão à medida que são percorridas. O iterador deve ser
+     * fechado com {@link ResultIterator#close()}.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  fetchSize
+     *         Quantidade de linhas lidas do banco de dados por vez.
+     *
+     * @param  fields
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Um iterador sobre as entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> ResultIterator<T> iterate(Class<T> clazz, int fetchSize, Field ... fields) throws VexPersistenceException;
+
+    /**
+     * Retorna uma página de entidades de uma classe desejada, ordenadas de forma
+     * ascendente pelos atributos informados e pela chave primária.
+     * <p>
+     * A paginação é feita por chave (<i>keyset</i>): a página seguinte começa
+     * após os valores de ordenação da última entidade da página anterior,
+     * portanto o custo de qualquer página é o mesmo da primeira. Os atributos
+     * de ordenação não devem admitir valores nulos.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  afterKey
+     *         Chave de continuação obtida através de {@link Page#getNextKey()}
+     *         ou <tt>null</tt> para a primeira página.
+     *
+     * @param  limit
+     *         Quantidade máxima de entidades da página.
+     *
+     * @param  order
+     *         Lista de atributos a serem utilizados para ordenamento.
+     *
+     * @return Uma página de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> Page<T> getPage(Class<T> clazz, Object afterKey, int limit, Field ... order) throws VexPersistenceException;
+
     /**
      * Carrega uma entidade de uma classe desejada dada uma chave primária como argumento.
      *
@@ -79,9 +237,102 @@ public interface DAOIntf extends Serializable {
      * @author Roberto Vezzoni
      */
     <T extends Serializable> T get(Class<T> clazz, Object id) throws VexPersistenceException;
+
+    /**
+     * Carrega uma entidade de uma classe desejada dada uma chave primária como
+     * argumento, carregando as associações descritas pelo plano de carga.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @param  plan
+     *         {@link FetchPlan <tt>Plano de carga</tt>} das associações.
+     *
+     * @return Uma entidade ou <tt>null</tt>, se ela não existir.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> T get(Class<T> clazz, Object id, FetchPlan plan) throws VexPersistenceException;
+
+    /**
+     * Define o {@link FetchPlan <tt>plano de carga</tt>} utilizado por
+     * {@link #get(Class, Object)} e {@link #getAll(Class, Field...)}, como
+     * <tt>new FetchPlan().batchAll().batchSize(N)</tt> para carregar em lote
+     * as associações das entidades lidas.
+     *
+     * @param  plan
+     *         Plano de carga ou <tt>null</tt> para carregar as associações sob demanda.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void setFetchPlan(FetchPlan plan);
+
+    /**
+     * Conta as entidades de uma classe desejada através de um
+     * <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> long count(Class<T> clazz) throws VexPersistenceException;
+
+    /**
+     * Conta as entidades de uma classe desejada que atendem aos critérios
+     * informados através de um <tt>SELECT COUNT</tt>, sem carregá-las.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  criteria
+     *         Nomes e valores dos atributos, comparados por igualdade; valores
+     *         <tt>null</tt> são comparados através de <tt>IS NULL</tt>.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> long count(Class<T> clazz, Map<String, Object> criteria) throws VexPersistenceException;
+
+    /**
+     * Verifica se existe uma entidade de uma classe desejada dada uma chave
+     * primária como argumento, sem carregar a entidade.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  id
+     *         Chave primária da entidade.
+     *
+     * @return true - A entidade existe.
+     *         false - A entidade não existe.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> boolean exists(Class<T> clazz, Object id) throws VexPersistenceException;
     
     /**
      * Persiste a entidade dada como argumento.
+     * <p>
+     * Entidades seguramente novas, identificadas pela versão ou pela chave
+     * primária gerada, são incluídas sem a consulta prévia feita na
+     * atualização.
      *
      * @param  entity
      *         Entidade válida a ser persistida.
@@ -93,6 +344,105 @@ public interface DAOIntf extends Serializable {
      * @author Roberto Vezzoni
      */
     <T extends Serializable> T save(T entity) throws VexPersistenceException;
+
+    /**
+     * Inclui a entidade dada como argumento, sem verificar se ela já existe.
+     *
+     * @param  entity
+     *         Entidade nova a ser incluída.
+     *
+     * @return  A entidade incluída.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> T insert(T entity) throws VexPersistenceException;
+
+    /**
+     * Atualiza a entidade dada como argumento, que já deve existir.
+     *
+     * @param  entity
+     *         Entidade a ser atualizada.
+     *
+     * @return  A cópia gerenciada da entidade atualizada.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> T update(T entity) throws VexPersistenceException;
+    
+    /**
+     * Persiste as entidades dadas como argumento em uma única transação.
+     *
+     * @param  entities
+     *         Entidades válidas a serem persistidas.
+     *
+     * @return  A quantidade de entidades persistidas.
+     *
+     * @see #saveAll(Iterable, int, int)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> int saveAll(Collection<T> entities) throws VexPersistenceException;
+
+    /**
+     * Persiste em lote as entidades dadas como argumento.
+     * <p>
+     * A cada <tt>batchSize</tt> entidades as alterações são enviadas ao banco de
+     * dados e o contexto de persistência é limpo, mantendo constante o consumo
+     * de memória. O agrupamento dos comandos JDBC é controlado pela propriedade
+     * <tt>hibernate.jdbc.batch_size</tt> da Persistence Unit, que deve ter o
+     * mesmo valor de <tt>batchSize</tt>.
+     * <p>
+     * As entidades persistidas deixam de ser gerenciadas pela sessão.
+     *
+     * @param  entities
+     *         Entidades válidas a serem persistidas, percorridas uma única vez.
+     *
+     * @param  batchSize
+     *         Quantidade de entidades entre cada <tt>flush</tt> e <tt>clear</tt>.
+     *
+     * @param  chunkSize
+     *         Quantidade de entidades confirmadas por transação; com o valor
+     *         zero todas as entidades são confirmadas em uma única transação.
+     *         Ignorado quando a sessão foi obtida por Dependency Injection.
+     *
+     * @return  A quantidade de entidades persistidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> int saveAll(Iterable<T> entities, int batchSize, int chunkSize) throws VexPersistenceException;
+
+    /**
+     * Inclui ou atualiza em lote as entidades de uma classe, conforme a
+     * existência das suas chaves primárias.
+     * <p>
+     * Quando o mapeamento permite, as entidades são gravadas por comandos SQL
+     * em lote, utilizando o comando de inclusão ou atualização do banco de
+     * dados (<tt>INSERT ... ON CONFLICT</tt> no PostgreSQL, <tt>MERGE</tt> no
+     * H2 e <tt>INSERT ... ON DUPLICATE KEY</tt> no MySQL) ou, nos demais,
+     * comandos <tt>UPDATE</tt> e <tt>INSERT</tt> separados. As entidades da
+     * sessão são descartadas após a gravação.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @return  As quantidades de entidades incluídas e atualizadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> UpsertResult upsertAll(Class<T> clazz, Collection<T> entities) throws VexPersistenceException;
     
     /**
      * Cancela as operações realizadas sobre a entidade passada como argumento.
@@ -135,6 +485,48 @@ public interface DAOIntf extends Serializable {
      * @author Roberto Vezzoni
      */
     <T extends Serializable> boolean remove(T entity) throws VexPersistenceException;
+
+    /**
+     * Remove, sem carregá-las, as entidades de uma classe dadas as suas chaves primárias.
+     * <p>
+     * As chaves são removidas em comandos <tt>DELETE ... WHERE id IN (...)</tt>
+     * cujo tamanho respeita o limite do banco de dados. A remoção não dispara
+     * cascatas nem callbacks JPA e não atualiza as entidades já carregadas na sessão.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @return  A quantidade de entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <T extends Serializable> int removeAll(Class<T> clazz, Collection<?> ids) throws VexPersistenceException;
+
+    /**
+     * Executa um trabalho composto por várias operações persistentes em uma
+     * única transação.
+     * <p>
+     * As operações dos DAOs e das Named Queries da mesma Persistence Unit
+     * executadas pelo trabalho participam da transação, e as alterações são
+     * enviadas e confirmadas uma única vez, ao término do trabalho. Se o
+     * trabalho lançar uma exceção ou alguma operação falhar, a transação é
+     * cancelada. Unidades de trabalho aninhadas participam da mais externa.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException;
     
     /*
      * Event handler methods - call backs methods
@@ -266,4 +658,64 @@ public interface DAOIntf extends Serializable {
      */
     void afterRemove(Object entity);
     
+    /**
+     * Callback Method executado antes de serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades a serem removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void beforeRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado após serem removidas as entidades de uma classe válida dadas as suas chaves primárias.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  ids
+     *         Chaves primárias das entidades removidas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void afterRemoveAll(Class clazz, Collection<?> ids);
+    
+    /**
+     * Callback Method executado antes de serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades a serem gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void beforeUpsertAll(Class clazz, Collection<?> entities);
+    
+    /**
+     * Callback Method executado após serem incluídas ou atualizadas em lote as entidades de uma classe válida.
+     *
+     * @param  clazz
+     *         Classe válida.
+     *
+     * @param  entities
+     *         Entidades gravadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void afterUpsertAll(Class clazz, Collection<?> entities);
+    
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.intf;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <tt>FetchPlan</tt> é uma classe concreta responsável por descrever as
+ * associações a serem carregadas junto com as entidades de uma leitura,
+ * evitando que cada associação percorrida dispare uma consulta.
+ * <p>
+ * Os caminhos de {@link #join(String...) <tt>junção</tt>} são carregados na
+ * própria consulta através de <tt>left join fetch</tt>; os caminhos de
+ * {@link #batch(String...) <tt>lote</tt>} são carregados após a consulta,
+ * em uma consulta por bloco de {@link #getBatchSize() <tt>N</tt>} entidades.
+ * Somente uma coleção deve ser carregada por junção; as demais devem ser
+ * carregadas em lote.
+ * <blockquote><pre>
+ *   FetchPlan.register( "pedido.completo",
+ *           new FetchPlan().join( "cliente" ).batch( "itens.produto" ).batchSize( 100 ) );
+ *
+ *   List&lt;Pedido&gt; pedidos = dao.getAll( Pedido.class, FetchPlan.named( "pedido.completo" ) );
+ * </pre></blockquote>
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOIntf#get(Class, Object, FetchPlan)
+ * @see DAOIntf#getAll(Class, FetchPlan, java.lang.reflect.Field...)
+ * @see DAOIntf#setFetchPlan(FetchPlan)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class FetchPlan implements Serializable {
+
+    /**
+     * Quantidade padrão de entidades por consulta das associações carregadas em lote.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final ConcurrentMap<String, FetchPlan> plans = new ConcurrentHashMap<String, FetchPlan>();
+
+    private final Set<String> joins = new LinkedHashSet<String>();
+    private final Set<String> batches = new LinkedHashSet<String>();
+
+    private boolean batchAll;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Registra um plano de carga para ser obtido através do seu nome.
+     *
+     * @param name
+     *        Nome do plano de carga.
+     *
+     * @param plan
+     *        Plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static void register(String name, FetchPlan plan) {
+        plans.put(name, plan);
+    }
+
+    /**
+     * Retorna um plano de carga registrado através de {@link #register(String, FetchPlan)}.
+     *
+     * @param name
+     *        Nome do plano de carga.
+     *
+     * @return O plano de carga registrado.
+     *
+     * @throws VexPersistenceException
+     *         Se não houver um plano de carga registrado com o nome informado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static FetchPlan named(String name) throws VexPersistenceException {
+
+        FetchPlan plan = plans.get(name);
+
+        if (plan == null) {
+            throw new VexPersistenceException("Plano de carga não registrado: " + name);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Acrescenta associações a serem carregadas na própria consulta.
+     *
+     * @param paths
+     *        Caminhos das associações a partir da entidade, como
+     *        <tt>"cliente"</tt> ou <tt>"cliente.endereco"</tt>.
+     *
+     * @return O próprio plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public FetchPlan join(String ... paths) {
+
+        for (String path: paths) {
+            joins.add(path);
+        }
+
+        return this;
+    }
+
+    /**
+     * Acrescenta associações a serem carregadas em lote após a consulta.
+     *
+     * @param paths
+     *        Caminhos das associações a partir da entidade, como
+     *        <tt>"itens"</tt> ou <tt>"itens.produto"</tt>.
+     *
+     * @return O próprio plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public FetchPlan batch(String ... paths) {
+
+        for (String path: paths) {
+            batches.add(path);
+        }
+
+        return this;
+    }
+
+    /**
+     * Carrega em lote todas as associações ainda não carregadas das entidades lidas.
+     *
+     * @return O próprio plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public FetchPlan batchAll() {
+
+        batchAll = true;
+
+        return this;
+    }
+
+    /**
+     * Define a quantidade de entidades por consulta das associações carregadas em lote.
+     *
+     * @param batchSize
+     *        Quantidade de entidades por consulta.
+     *
+     * @return O próprio plano de carga.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public FetchPlan batchSize(int batchSize) {
+
+        this.batchSize = Math.max(1, batchSize);
+
+        return this;
+    }
+
+    /**
+     * Retorna os caminhos das associações carregadas na própria consulta.
+     *
+     * @return Caminhos das associações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Set<String> getJoins() {
+        return Collections.unmodifiableSet(joins);
+    }
+
+    /**
+     * Retorna os caminhos das associações carregadas em lote.
+     *
+     * @return Caminhos das associações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Set<String> getBatches() {
+        return Collections.unmodifiableSet(batches);
+    }
+
+    /**
+     * Indica se todas as associações das entidades lidas são carregadas em lote.
+     *
+     * @return true - Carrega todas as associações.
+     *         false - Carrega somente os caminhos informados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean isBatchAll() {
+        return batchAll;
+    }
+
+    /**
+     * Retorna a quantidade de entidades por consulta das associações carregadas em lote.
+     *
+     * @return Quantidade de entidades por consulta.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchPlan[joins=" + joins + ", batches=" + batches + ", batchAll=" + batchAll + ", batchSize=" + batchSize + "]";
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.intf;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <tt>Page</tt> é uma classe concreta responsável por representar uma página
+ * de entidades obtida por paginação por chave (<i>keyset</i>).
+ * <p>
+ * A próxima página é obtida passando {@link #getNextKey()} como argumento de
+ * {@link DAOIntf#getPage(Class, Object, int, java.lang.reflect.Field[])}:
+ * <blockquote><pre>
+ *   Page&lt;Pessoa&gt; page = dao.getPage( Pessoa.class, null, 100, nome );
+ *
+ *   while (page.hasNext()) {
+ *       page = dao.getPage( Pessoa.class, page.getNextKey(), 100, nome );
+ *   }
+ * </pre></blockquote>
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOIntf#getPage(Class, Object, int, java.lang.reflect.Field[])
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class Page<T> implements Serializable {
+
+    private final List<T> content;
+    private final Object[] nextKey;
+
+    /**
+     * Cria uma página.
+     *
+     * @param content
+     *        Entidades da página.
+     *
+     * @param nextKey
+     *        Valores de ordenação da última entidade ou <tt>null</tt> se esta
+     *        for a última página.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Page(List<T> content, Object[] nextKey) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * Retorna as entidades da página.
+     *
+     * @return Uma lista de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * Retorna a chave de continuação: os valores de ordenação da última
+     * entidade da página.
+     *
+     * @return A chave de continuação ou <tt>null</tt> se esta for a última página.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public Object[] getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * Indica se existe uma próxima página.
+     *
+     * @return true se existir uma próxima página.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public boolean hasNext() {
+        return (nextKey != null);
+    }
+
+    /**
+     * Retorna a quantidade de entidades da página.
+     *
+     * @return Quantidade de entidades.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int size() {
+        return content.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Page[size=" + content.size() + ", hasNext=" + hasNext() + "]";
+    }
+
+}
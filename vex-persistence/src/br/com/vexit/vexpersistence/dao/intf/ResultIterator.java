@@ -0,0 +1,68 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.intf;
+
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * <tt>ResultIterator</tt> é uma interface responsável por percorrer o
+ * resultado de uma consulta através de um cursor, sem carregá-lo inteiro em
+ * memória.
+ * <p>
+ * O cursor e a sessão utilizados são liberados ao final do resultado ou na
+ * chamada a {@link #close()}, que deve ser feita em um bloco <tt>finally</tt>:
+ * <blockquote><pre>
+ *   ResultIterator&lt;Pessoa&gt; it = dao.iterate( Pessoa.class, 500 );
+ *
+ *   try {
+ *       while (it.hasNext()) {
+ *           processar( it.next() );
+ *       }
+ *   } finally {
+ *       it.close();
+ *   }
+ * </pre></blockquote>
+ * Enquanto não for fechado, o iterador mantém uma transação aberta que
+ * impede o desligamento da Persistence Unit de ser concluído.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOIntf#iterate(Class, int, java.lang.reflect.Field[])
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public interface ResultIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Fecha o cursor e libera a sessão utilizada. Chamadas repetidas não têm efeito.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    void close() throws VexPersistenceException;
+
+}
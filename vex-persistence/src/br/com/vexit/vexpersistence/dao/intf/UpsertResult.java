@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.dao.intf;
+
+import java.io.Serializable;
+
+/**
+ * <tt>UpsertResult</tt> é uma classe concreta responsável por representar o
+ * resultado de uma inclusão ou atualização em lote, separando as entidades
+ * incluídas das atualizadas.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see DAOIntf#upsertAll(Class, java.util.Collection)
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class UpsertResult implements Serializable {
+
+    private final int inserted;
+    private final int updated;
+
+    /**
+     * Cria o resultado de uma inclusão ou atualização em lote.
+     *
+     * @param inserted
+     *        Quantidade de entidades incluídas.
+     *
+     * @param updated
+     *        Quantidade de entidades atualizadas.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public UpsertResult(int inserted, int updated) {
+        this.inserted = inserted;
+        this.updated = updated;
+    }
+
+    /**
+     * Retorna a quantidade de entidades incluídas.
+     *
+     * @return Quantidade de inclusões.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Retorna a quantidade de entidades atualizadas.
+     *
+     * @return Quantidade de atualizações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Retorna a quantidade total de entidades gravadas.
+     *
+     * @return Quantidade de inclusões e atualizações.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public int getTotal() {
+        return (inserted + updated);
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult[inserted=" + inserted + ", updated=" + updated + "]";
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package br.com.vexit.vexpersistence.exception;
+
+/**
+ * <code>CircuitBreakerOpenException</code> estende <code>VexPersistenceException</code>
+ * e indica que uma operação foi recusada porque o circuit breaker da
+ * Persistence Unit está aberto.
+ * <p>
+ * A exceção não captura a pilha de execução, tornando a recusa barata.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @see br.com.vexit.vexpersistence.conn.CircuitBreaker
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class CircuitBreakerOpenException extends VexPersistenceException {
+
+    /**
+     * Constrói uma nova circuit breaker open exception com uma detail message
+     * especificada.
+     *
+     * @param message
+     *        A detail message. Esta detail message pode ser recuperada através
+     *        de uma chamada ao método {@link #getMessage()}.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+
+    /**
+     * Não captura a pilha de execução.
+     *
+     * @return Esta exceção.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -21,6 +21,8 @@
 
 package br.com.vexit.vexpersistence.namedquery;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
 import br.com.vexit.vexpersistence.namedquery.impl.NamedQueryLocalSession;
 import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
 
@@ -28,7 +30,7 @@ import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
  * <tt>NamedQueryLocalSessionHandler</tt> é uma classe concreta responsável por
  * uma instância para uma {@link DAOIntf <tt>Named Query concreta</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see NamedQueryIntf
  * @see NamedQueryLocalSession
@@ -58,6 +60,69 @@ public class NamedQueryLocalSessionHandler extends NamedQueryLocalSession {
         super(persistenceUnitName, keepSessionAlive);
     }
 
+    /**
+     * Cria uma instância de uma Named Query passando
+     * o nome da conexão local, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSessionHandler(String persistenceUnitName, boolean keepSessionAlive, AccessMode accessMode) {
+        super(persistenceUnitName, keepSessionAlive, accessMode);
+    }
+
+    /**
+     * Cria uma instância de uma Named Query passando
+     * a conexão e a forma de tratamento da sessão.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSessionHandler(PersistenceConnection persistenceConnection, boolean keepSessionAlive) {
+        super(persistenceConnection, keepSessionAlive);
+    }
+
+    /**
+     * Cria uma instância de uma Named Query passando
+     * a conexão, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSessionHandler(PersistenceConnection persistenceConnection, boolean keepSessionAlive, AccessMode accessMode) {
+        super(persistenceConnection, keepSessionAlive, accessMode);
+    }
+
     /**
      * Callback Method executado antes de ser feita uma busca através de uma Named Query válida.
      *
@@ -21,6 +21,8 @@
 
 package br.com.vexit.vexpersistence.namedquery.factory;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
+import br.com.vexit.vexpersistence.conn.PersistenceConnection;
 import br.com.vexit.vexpersistence.namedquery.NamedQueryInjectedSessionHandler;
 import br.com.vexit.vexpersistence.namedquery.NamedQueryLocalSessionHandler;
 import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
@@ -30,7 +32,7 @@ import javax.persistence.EntityManager;
  * <tt>ConcreteNamedQueryFactory</tt> é uma classe concreta que representa uma Factory Method
  * responsável por disponibilizar uma instância de uma {@link NamedQueryIntf <tt>Named Query genérica</tt>}.
  *
- * @version 1.4.2, 01/07/09
+ * @version 1.5, 17/10/26
  *
  * @see NamedQueryFactory
  * @see NamedQueryIntf
@@ -54,8 +56,14 @@ public class ConcreteNamedQueryFactory extends NamedQueryFactory {
     private static String aPersistenceUnitName;
     private static EntityManager aEM;
 
+    private final PersistenceConnection persistenceConnection;
+
     private ConcreteNamedQueryFactory() {
+        this(null);
+    }
 
+    private ConcreteNamedQueryFactory(PersistenceConnection persistenceConnection) {
+        this.persistenceConnection = persistenceConnection;
     }
 
     /**
@@ -80,6 +88,30 @@ public class ConcreteNamedQueryFactory extends NamedQueryFactory {
         return getInstance();
     }
 
+    /**
+     * Retorna uma instância de uma {@link ConcreteNamedQueryFactory <tt>Factory Method</tt>}
+     * para Named Queries a partir de uma conexão informada.
+     * <p>
+     * Cada chamada retorna uma nova Factory vinculada à conexão, que não é
+     * afetada pelas chamadas seguintes de <tt>getInstance</tt>.
+     *
+     * @return Uma {@link ConcreteNamedQueryFactory <tt>Factory Method</tt>} para Named Queries.
+     *
+     * @param persistenceConnection
+     *        Instância de uma {@link PersistenceConnection <tt>PersistenceConnection</tt>} válida para operações persistentes.
+     *
+     * @see #getInstance(java.lang.String)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ConcreteNamedQueryFactory getInstance(PersistenceConnection persistenceConnection) {
+
+        // a conexão pertence à instância: conexões de tenants diferentes não compartilham a Factory.
+        return new ConcreteNamedQueryFactory(persistenceConnection);
+    }
+
     /**
      * Retorna uma instância (Singleton) de uma {@link ConcreteNamedQueryFactory <tt>Factory Method</tt>}
      * para Named Queries a partir de uma conexão obtida por Dependency Injection.
@@ -139,11 +171,58 @@ public class ConcreteNamedQueryFactory extends NamedQueryFactory {
      */
     @Override
     public NamedQueryIntf createNamedQuery(boolean keepSessionAlive) {
+        return createNamedQuery(keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Retorna uma instância de uma {@link NamedQueryIntf <tt>Named Query</tt>} com a forma de acesso informada.
+     *
+     * @return Uma {@link NamedQueryIntf <tt>Named Query</tt>} para operações persistentes.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createNamedQuery(boolean, AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public NamedQueryIntf createNamedQuery(AccessMode accessMode) {
+        return createNamedQuery(false, accessMode);
+    }
+
+    /**
+     * Retorna uma instância de uma {@link NamedQueryIntf <tt>Named Query</tt>} com a forma de acesso informada.
+     * <p>
+     * A forma de acesso não se aplica às Named Queries de uma conexão obtida
+     * por Dependency Injection, cujas transações são controladas pelo container.
+     *
+     * @return Uma {@link NamedQueryIntf <tt>Named Query</tt>} para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createNamedQuery(AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    @Override
+    public NamedQueryIntf createNamedQuery(boolean keepSessionAlive, AccessMode accessMode) {
 
         try {
 
-            if (ConcreteNamedQueryFactory.aEM == null) {
-                namedQuery = new NamedQueryLocalSessionHandler(ConcreteNamedQueryFactory.aPersistenceUnitName, keepSessionAlive);
+            if (persistenceConnection != null) {
+                namedQuery = new NamedQueryLocalSessionHandler(persistenceConnection, keepSessionAlive, accessMode);
+            } else if (ConcreteNamedQueryFactory.aEM == null) {
+                namedQuery = new NamedQueryLocalSessionHandler(ConcreteNamedQueryFactory.aPersistenceUnitName, keepSessionAlive, accessMode);
             } else {
                 namedQuery = new NamedQueryInjectedSessionHandler(ConcreteNamedQueryFactory.aEM);
             }
@@ -21,6 +21,7 @@
 
 package br.com.vexit.vexpersistence.namedquery.factory;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
 import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
 import java.io.Serializable;
 
@@ -28,7 +29,7 @@ import java.io.Serializable;
  * <tt>NamedQueryFactory</tt> é uma classe abstrata que representa uma Factory Method
  * responsável por disponibilizar uma instância de uma {@link NamedQueryIntf <tt>Named Query genérica</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see ConcreteNamedQueryFactory
  * @see NamedQueryIntf
@@ -69,4 +70,40 @@ public abstract class NamedQueryFactory implements Serializable {
      */
     public abstract NamedQueryIntf createNamedQuery(boolean keepSessionAlive);
 
+    /**
+     * Retorna uma instância de uma {@link NamedQueryIntf <tt>Named Query</tt>} com a forma de acesso informada.
+     *
+     * @return Uma {@link NamedQueryIntf <tt>Named Query</tt>} para operações persistentes.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createNamedQuery(boolean, AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract NamedQueryIntf createNamedQuery(AccessMode accessMode);
+
+    /**
+     * Retorna uma instância de uma {@link NamedQueryIntf <tt>Named Query</tt>} com a forma de acesso informada.
+     *
+     * @return Uma {@link NamedQueryIntf <tt>Named Query</tt>} para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @see #createNamedQuery(AccessMode)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public abstract NamedQueryIntf createNamedQuery(boolean keepSessionAlive, AccessMode accessMode);
+
 }
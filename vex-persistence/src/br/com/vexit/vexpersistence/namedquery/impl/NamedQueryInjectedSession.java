@@ -21,6 +21,8 @@
 
 package br.com.vexit.vexpersistence.namedquery.impl;
 
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
+import br.com.vexit.vexpersistence.dao.impl.RowMapper;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
 import java.util.List;
@@ -33,7 +35,7 @@ import javax.persistence.Query;
  * implementar métodos genéricos para uma
  * {@link NamedQueryInjectedSessionHandler <tt>NamedQueryInjectedSessionHandler concreta</tt>}.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see NamedQueryIntf
  * @see NamedQueryInjectedSessionHandler
@@ -249,6 +251,62 @@ public abstract class NamedQueryInjectedSession implements NamedQueryIntf {
         
     }
     
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Object ... params) throws VexPersistenceException {
+
+        return RowMapper.of(resultClass).map(findByNamedQuery(namedQuery, params));
+    }
+    
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os nomes e valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Map<String, Object> params) throws VexPersistenceException {
+
+        return RowMapper.of(resultClass).map(findByNamedQuery(namedQuery, params));
+    }
+    
     /**
      * Executa uma Named Query válida.
      *
@@ -335,6 +393,36 @@ public abstract class NamedQueryInjectedSession implements NamedQueryIntf {
         
     }
     
+    /**
+     * Executa um trabalho composto por várias operações persistentes na
+     * transação corrente do contêiner, da qual as operações já participam.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException {
+
+        try {
+
+            return work.execute();
+
+        } catch (RuntimeException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new VexPersistenceException(e);
+        }
+
+    }
+    
     /*
      * Event handler methods - call backs methods
      */
@@ -21,8 +21,12 @@
 
 package br.com.vexit.vexpersistence.namedquery.impl;
 
+import br.com.vexit.vexpersistence.conn.AccessMode;
 import br.com.vexit.vexpersistence.conn.LocalPersistenceConnection;
 import br.com.vexit.vexpersistence.conn.PersistenceConnection;
+import br.com.vexit.vexpersistence.conn.ReadOnlyTransaction;
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
+import br.com.vexit.vexpersistence.dao.impl.RowMapper;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import br.com.vexit.vexpersistence.namedquery.intf.NamedQueryIntf;
 import java.util.List;
@@ -35,7 +39,7 @@ import javax.persistence.Query;
  * implementar métodos genéricos para uma
  * {@link NamedQueryLocalSessionHandler <tt>NamedQueryLocalSessionHandler concreta</tt>}.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see NamedQueryIntf
  * @see NamedQueryLocalSessionHandler
@@ -48,7 +52,9 @@ import javax.persistence.Query;
 public abstract class NamedQueryLocalSession implements NamedQueryIntf {
 
     private String persistenceUnitName;
+    private PersistenceConnection persistenceConnection;
     private boolean keepSessionAlive;
+    private AccessMode accessMode;
     
     /**
      * Cria uma instância de uma Named Query passando
@@ -66,8 +72,74 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
      * @author Roberto Vezzoni
      */
     public NamedQueryLocalSession(String persistenceUnitName, boolean keepSessionAlive) {
+        this(persistenceUnitName, keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Cria uma instância de uma Named Query passando
+     * o nome da conexão local, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceUnitName
+     *        Nome de uma Persistence Unit válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSession(String persistenceUnitName, boolean keepSessionAlive, AccessMode accessMode) {
         this.persistenceUnitName = persistenceUnitName;
         this.keepSessionAlive = keepSessionAlive;
+        this.accessMode = accessMode;
+    }
+
+    /**
+     * Cria uma instância de uma Named Query passando
+     * a conexão e a forma de tratamento da sessão.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSession(PersistenceConnection persistenceConnection, boolean keepSessionAlive) {
+        this(persistenceConnection, keepSessionAlive, AccessMode.READ_WRITE);
+    }
+
+    /**
+     * Cria uma instância de uma Named Query passando
+     * a conexão, a forma de tratamento da sessão e a forma de acesso.
+     *
+     * @param persistenceConnection
+     *        Uma {@link PersistenceConnection <tt>conexão</tt>} válida para operações persistentes.
+     *
+     * @param keepSessionAlive
+     *        true - Mantém a sessão com o banco de dados ativa.
+     *        false - Fecha a sessão com banco de dados.
+     *
+     * @param accessMode
+     *        Forma de {@link AccessMode <tt>acesso</tt>} ao banco de dados.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public NamedQueryLocalSession(PersistenceConnection persistenceConnection, boolean keepSessionAlive, AccessMode accessMode) {
+        this.persistenceConnection = persistenceConnection;
+        this.keepSessionAlive = keepSessionAlive;
+        this.accessMode = accessMode;
     }
 
     /**
@@ -81,9 +153,92 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
      */
     private PersistenceConnection getPersistenceConnection() {
 
+        if (persistenceConnection != null) {
+            return persistenceConnection;
+        }
+
         return PersistenceConnection.getInstance(persistenceUnitName);
     }
 
+    /**
+     * Solicita ao circuit breaker da conexão a admissão de uma operação,
+     * liberando a conexão se a operação for recusada.
+     *
+     * @param conn
+     *        Conexão obtida através de {@link PersistenceConnection#route(boolean)}.
+     *
+     * @return Instante, em nanossegundos, do início da operação.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private long admit(PersistenceConnection conn) {
+
+        try {
+
+            return conn.admit();
+
+        } catch (RuntimeException e) {
+
+            getPersistenceConnection().release(conn);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Inicia as leituras de uma operação, em uma {@link ReadOnlyTransaction
+     * <tt>transação somente leitura</tt>} se a Named Query for somente leitura.
+     *
+     * @param conn
+     *        Conexão obtida através de {@link PersistenceConnection#route(boolean)}.
+     *
+     * @return A transação somente leitura ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private ReadOnlyTransaction beginRead(PersistenceConnection conn) {
+
+        return ( (accessMode == AccessMode.READ_ONLY) ? ReadOnlyTransaction.begin(conn.getEntityManager()) : null );
+    }
+
+    /**
+     * Encerra as leituras iniciadas através de {@link #beginRead(PersistenceConnection)}.
+     *
+     * @param tx
+     *        Transação somente leitura ou <tt>null</tt>.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void endRead(ReadOnlyTransaction tx) {
+
+        if (tx != null) {
+            tx.end();
+        }
+    }
+
+    /**
+     * Recusa as operações de escrita de uma Named Query somente leitura.
+     *
+     * @throws VexPersistenceException
+     *         Se a Named Query for somente leitura.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void checkWritable() throws VexPersistenceException {
+
+        if (accessMode == AccessMode.READ_ONLY) {
+            throw new VexPersistenceException("Operação de escrita em uma Named Query somente leitura");
+        }
+    }
+
     /**
      * Retorna a sessão com a fonte de dados cuja a qual deve ter sido
      * levantada como recurso local.
@@ -203,12 +358,18 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
         
         List result = null;
 
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
         try {
             
             beforeFindByNamedQuery();
             
+            ReadOnlyTransaction tx = beginRead(conn);
+
             try {
-                Query q = getEntityManager().createNamedQuery(namedQuery);
+                Query q = conn.getEntityManager().createNamedQuery(namedQuery);
 
                 if ( (firstResult > -1) && (maxResults > -1) ) {                    
                     q.setFirstResult(firstResult);
@@ -220,21 +381,39 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
                 }
                 
                 result = q.getResultList();
+
+                if (tx != null) {
+                    tx.track(result);
+                }
                 
             } catch (Exception e) {
 
                 e.printStackTrace();
 
                 throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
             }
 
+            conn.succeeded(start);
+
             return result;
             
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
             
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
+
+            getPersistenceConnection().release(conn);
             
             afterFindByNamedQuery();
         }
@@ -266,12 +445,18 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
         
         List result = null;
 
+        PersistenceConnection conn = getPersistenceConnection().route(true);
+
+        long start = admit(conn);
+
         try {
             
             beforeFindByNamedQuery();
             
+            ReadOnlyTransaction tx = beginRead(conn);
+
             try {
-                Query q = getEntityManager().createNamedQuery(namedQuery);
+                Query q = conn.getEntityManager().createNamedQuery(namedQuery);
 
                 if ( (firstResult > -1) && (maxResults > -1) ) {                    
                     q.setFirstResult(firstResult);
@@ -295,27 +480,101 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
                 }
                 
                 result = q.getResultList();
+
+                if (tx != null) {
+                    tx.track(result);
+                }
                 
             } catch (Exception e) {
 
                 e.printStackTrace();
 
                 throw new VexPersistenceException(e);
+
+            } finally {
+
+                endRead(tx);
             }
 
+            conn.succeeded(start);
+
             return result;
             
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
             
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
+
+            getPersistenceConnection().release(conn);
             
             afterFindByNamedQuery();
         }
         
     }
     
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Object ... params) throws VexPersistenceException {
+
+        return RowMapper.of(resultClass).map(findByNamedQuery(namedQuery, params));
+    }
+    
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os nomes e valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Map<String, Object> params) throws VexPersistenceException {
+
+        return RowMapper.of(resultClass).map(findByNamedQuery(namedQuery, params));
+    }
+    
     /**
      * Executa uma Named Query válida.
      *
@@ -331,6 +590,12 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
      */
     public void execByNamedQuery(String namedQuery, Object ... params) throws VexPersistenceException {
 
+        checkWritable();
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
+
         try {
             
             beforeExecByNamedQuery();
@@ -338,7 +603,7 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
             startTransaction();
             
             try {
-                Query q = getEntityManager().createNamedQuery(namedQuery);
+                Query q = conn.getEntityManager().createNamedQuery(namedQuery);
                 
                 for (int i = 0; i < params.length; i++) {
                     q.setParameter(i + 1, params[i]);
@@ -356,12 +621,22 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
 
                 throw new VexPersistenceException(e);
             }
-            
+
+            conn.succeeded(start);
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
             
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
+
+            getPersistenceConnection().release(conn);
             
             afterExecByNamedQuery();
         }
@@ -385,6 +660,12 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
      */
     public void execByNamedQuery(String namedQuery, Map<String, Object> params) throws VexPersistenceException {
 
+        checkWritable();
+
+        PersistenceConnection conn = getPersistenceConnection().route(false);
+
+        long start = admit(conn);
+
         try {
             
             beforeExecByNamedQuery();
@@ -392,7 +673,7 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
             startTransaction();
             
             try {
-                Query q = getEntityManager().createNamedQuery(namedQuery);
+                Query q = conn.getEntityManager().createNamedQuery(namedQuery);
                 
                 for (String key: params.keySet()) {
                     q.setParameter(key, params.get(key));
@@ -410,18 +691,92 @@ public abstract class NamedQueryLocalSession implements NamedQueryIntf {
 
                 throw new VexPersistenceException(e);
             }
-            
+
+            conn.succeeded(start);
+
+        } catch (RuntimeException e) {
+
+            conn.failed(start, e);
+
+            throw e;
+
         } finally {
             
             if (keepSessionAlive) {
-                getPersistenceConnection().closeEntityManager();
+                conn.closeEntityManager();
             }
+
+            getPersistenceConnection().release(conn);
             
             afterExecByNamedQuery();
         }
         
     }
     
+    /**
+     * Executa um trabalho composto por várias operações persistentes em uma
+     * única transação.
+     * <p>
+     * As operações dos DAOs e das Named Queries da mesma Persistence Unit
+     * executadas pelo trabalho participam da transação, e as alterações são
+     * enviadas e confirmadas uma única vez, ao término do trabalho. Se o
+     * trabalho lançar uma exceção ou alguma operação falhar, a transação é
+     * cancelada. Unidades de trabalho aninhadas participam da mais externa.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException {
+
+        PersistenceConnection conn = getPersistenceConnection();
+
+        conn.beginUnitOfWork();
+
+        boolean done = false;
+
+        try {
+
+            R result;
+
+            try {
+
+                result = work.execute();
+
+            } catch (RuntimeException e) {
+
+                throw e;
+
+            } catch (Exception e) {
+
+                throw new VexPersistenceException(e);
+            }
+
+            done = true;
+
+            return result;
+
+        } finally {
+
+            try {
+
+                conn.endUnitOfWork(done);
+
+            } finally {
+
+                if ( keepSessionAlive && (!conn.isInUnitOfWork()) ) {
+                    conn.closeEntityManager();
+                }
+            }
+        }
+
+    }
+    
     /*
      * Event handler methods - call backs methods
      */
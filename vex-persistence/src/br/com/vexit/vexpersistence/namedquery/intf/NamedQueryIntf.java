@@ -21,6 +21,7 @@
 
 package br.com.vexit.vexpersistence.namedquery.intf;
 
+import br.com.vexit.vexpersistence.conn.UnitOfWork;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import java.io.Serializable;
 import java.util.List;
@@ -30,7 +31,7 @@ import java.util.Map;
  * <tt>NamedQueryIntf</tt> é uma interface responsável por listar quais métodos uma
  * Named Query concreta pode executar.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see NamedQueryLocalSession
  * @see NamedQueryInjectedSession
@@ -124,6 +125,56 @@ public interface NamedQueryIntf extends Serializable {
      * @author Roberto Vezzoni
      */
     List findByNamedQuery(String namedQuery, int firstResult, int maxResults, Map<String, Object> params) throws VexPersistenceException;
+
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Object ... params) throws VexPersistenceException;
+
+    /**
+     * Retorna uma lista dado uma Named Query válida de projeção, convertendo
+     * cada linha em um objeto da classe de resultado através do construtor
+     * cujos parâmetros correspondem às colunas selecionadas.
+     * <p>
+     * A Named Query deve selecionar atributos e não entidades; os objetos
+     * retornados não são gerenciados pela sessão.
+     *
+     * @param  resultClass
+     *         Classe de resultado, com um construtor compatível com as colunas.
+     *
+     * @param  namedQuery
+     *         Nome da Named Query a ser executada.
+     * 
+     * @param  params
+     *         Lista com os nomes e valores dos parâmetros da NamedQuery.
+     *
+     * @return Uma lista de objetos da classe de resultado.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <R> List<R> findByNamedQuery(Class<R> resultClass, String namedQuery, Map<String, Object> params) throws VexPersistenceException;
     
     /**
      * Executa uma Named Query válida.
@@ -158,6 +209,27 @@ public interface NamedQueryIntf extends Serializable {
      * @author Roberto Vezzoni
      */
     void execByNamedQuery(String namedQuery, Map<String, Object> params) throws VexPersistenceException;
+
+    /**
+     * Executa um trabalho composto por várias operações persistentes em uma
+     * única transação.
+     * <p>
+     * As operações dos DAOs e das Named Queries da mesma Persistence Unit
+     * executadas pelo trabalho participam da transação, e as alterações são
+     * enviadas e confirmadas uma única vez, ao término do trabalho. Se o
+     * trabalho lançar uma exceção ou alguma operação falhar, a transação é
+     * cancelada. Unidades de trabalho aninhadas participam da mais externa.
+     *
+     * @param  work
+     *         Trabalho a ser executado.
+     *
+     * @return O resultado do trabalho.
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    <R> R inTransaction(UnitOfWork<R> work) throws VexPersistenceException;
     
     /*
      * Event handler methods - call backs methods
@@ -21,6 +21,7 @@
 
 package br.com.vexit.vexpersistence.storedprocedure;
 
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
 import br.com.vexit.vexpersistence.storedprocedure.impl.StoredProcedureSession;
 import java.sql.Connection;
 import javax.persistence.EntityManager;
@@ -29,7 +30,7 @@ import javax.persistence.EntityManager;
  * <tt>StoredProcedureHandler</tt> é uma classe concreta responsável por
  * uma instância para uma {@link StoredProcedureIntf <tt>Stored Procedure concreta</tt>}.
  *
- * @version 1.4, 25/11/08
+ * @version 1.5, 17/10/26
  *
  * @see StoredProcedureIntf
  * @see StoredProcedureSession
@@ -55,4 +56,19 @@ public class StoredProcedureHandler extends StoredProcedureSession {
         super(conn);
     }
 
+    /**
+     * Cria uma instância de uma Stored Procedure passando
+     * um pool de conexões válido.
+     *
+     * @param pool
+     *        Um {@link ConnectionPool <tt>pool de conexões</tt>} válido.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public StoredProcedureHandler(ConnectionPool pool) {
+        super(pool);
+    }
+
 }
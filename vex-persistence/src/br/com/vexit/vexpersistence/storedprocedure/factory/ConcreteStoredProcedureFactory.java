@@ -21,6 +21,7 @@
 
 package br.com.vexit.vexpersistence.storedprocedure.factory;
 
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
 import br.com.vexit.vexpersistence.storedprocedure.StoredProcedureHandler;
 import br.com.vexit.vexpersistence.storedprocedure.intf.StoredProcedureIntf;
 import java.sql.Connection;
@@ -29,7 +30,7 @@ import java.sql.Connection;
  * <tt>StoredProcedureFactory</tt> é uma Factory Method responsável por 
  * disponibilizar uma instância de uma {@link StoredProcedureHandler <tt>classe genérica</tt>} capaz de executar Stored Procedures.
  *
- * @version  1.2, 01/07/09
+ * @version 1.5, 17/10/26
  * @see      #getInstance
  * @since 1.1
  *
@@ -46,6 +47,7 @@ public class ConcreteStoredProcedureFactory extends StoredProcedureFactory {
     };
 
     private static Connection aConn;
+    private static ConnectionPool aPool;
 
     private StoredProcedureIntf storedProcedure;
 
@@ -68,6 +70,29 @@ public class ConcreteStoredProcedureFactory extends StoredProcedureFactory {
      */
     public static ConcreteStoredProcedureFactory getInstance(Connection conn) {
         ConcreteStoredProcedureFactory.aConn = conn;
+        ConcreteStoredProcedureFactory.aPool = null;
+
+        return ConcreteStoredProcedureFactory.factory.get();
+    }
+
+    /**
+     * Retorna uma instância (Singleton) de uma {@link ConcreteStoredProcedureFactory <tt>Factory Method</tt>}
+     * para Stored Procedures a partir de um pool de conexões.
+     *
+     * @return Uma {@link ConcreteStoredProcedureFactory <tt>Factory Method</tt>} para Stored Procedures.
+     *
+     * @param pool
+     *        Instância de um {@link ConnectionPool <tt>pool de conexões</tt>} válido para operações persistentes.
+     *
+     * @see #getInstance(java.sql.Connection)
+     *
+     * @since  1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public static ConcreteStoredProcedureFactory getInstance(ConnectionPool pool) {
+        ConcreteStoredProcedureFactory.aConn = null;
+        ConcreteStoredProcedureFactory.aPool = pool;
 
         return ConcreteStoredProcedureFactory.factory.get();
     }
@@ -88,7 +113,12 @@ public class ConcreteStoredProcedureFactory extends StoredProcedureFactory {
      */
     @Override
     public StoredProcedureIntf createStoredProcedure() {
-        storedProcedure = new StoredProcedureHandler( ConcreteStoredProcedureFactory.aConn );
+        if (ConcreteStoredProcedureFactory.aPool != null) {
+            storedProcedure = new StoredProcedureHandler( ConcreteStoredProcedureFactory.aPool );
+        } else {
+            storedProcedure = new StoredProcedureHandler( ConcreteStoredProcedureFactory.aConn );
+        }
+
         return storedProcedure;
     }
 
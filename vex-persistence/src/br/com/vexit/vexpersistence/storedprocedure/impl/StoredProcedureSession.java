@@ -21,9 +21,15 @@
 
 package br.com.vexit.vexpersistence.storedprocedure.impl;
 
+import br.com.vexit.vexpersistence.conn.CircuitBreaker;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
 import br.com.vexit.vexpersistence.exception.VexPersistenceException;
 import br.com.vexit.vexpersistence.storedprocedure.StoredProcedureParam;
 import br.com.vexit.vexpersistence.storedprocedure.intf.StoredProcedureIntf;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -36,7 +42,7 @@ import javax.persistence.PersistenceException;
  * implementar métodos genéricos para uma
  * {@link StoredProcedureSessionHandler <tt>StoredProcedureSessionHandler concreta</tt>}.
  *
- * @version 1.4.1, 05/12/08
+ * @version 1.5, 17/10/26
  *
  * @see StoredProcedureIntf
  * @see StoredProcedureSessionHandler
@@ -48,6 +54,7 @@ import javax.persistence.PersistenceException;
 public class StoredProcedureSession implements StoredProcedureIntf {
 
     private Connection conn;
+    private ConnectionPool pool;
 
     /**
      * Cria uma instância de uma Stored Procedure passando
@@ -63,6 +70,25 @@ public class StoredProcedureSession implements StoredProcedureIntf {
     public StoredProcedureSession(Connection conn) {
         this.conn = conn;
     }
+
+    /**
+     * Cria uma instância de uma Stored Procedure passando
+     * um pool de conexões válido.
+     * <p>
+     * Cada execução obtém uma conexão do pool e a devolve ao final. No caso de
+     * {@link #getByStoredProcedure(String, List, Object[])} a conexão é devolvida
+     * quando o ResultSet retornado é fechado.
+     *
+     * @param pool
+     *        Um {@link ConnectionPool <tt>pool de conexões</tt>} válido.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    public StoredProcedureSession(ConnectionPool pool) {
+        this.pool = pool;
+    }
     
     /**
      * Retorna uma Connection de acordo com a sessão ativa com o banco de dados.
@@ -73,8 +99,157 @@ public class StoredProcedureSession implements StoredProcedureIntf {
      *
      * @author Roberto Vezzoni
      */
-    private Connection getConnection() {
-        return conn;
+    private Connection getConnection() throws SQLException {
+        return ( (pool != null) ? pool.getConnection() : conn );
+    }
+
+    /**
+     * Retorna o {@link CircuitBreaker <tt>circuit breaker</tt>} registrado
+     * para o pool de conexões da sessão.
+     *
+     * @return Um circuit breaker ou <tt>null</tt> se a sessão não é protegida.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private CircuitBreaker getCircuitBreaker() {
+        return ( (pool != null) ? CircuitBreaker.lookup(pool.getName()) : null );
+    }
+
+    /**
+     * Devolve ao pool uma conexão obtida através de {@link #getConnection()}.
+     *
+     * @param connection
+     *        Conexão a ser devolvida.
+     *
+     * @param cs
+     *        Comando a ser fechado junto com a conexão.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void releaseConnection(Connection connection, CallableStatement cs) {
+
+        if ( (pool == null) || (connection == null) ) {
+            return;
+        }
+
+        try {
+
+            if (cs != null) {
+                cs.close();
+            }
+
+        } catch (SQLException e) {
+
+            e.printStackTrace();
+
+        } finally {
+
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Confirma as alterações feitas em uma conexão obtida do pool, cujas
+     * transações não confirmadas são canceladas quando ela é devolvida.
+     * As conexões informadas pela aplicação têm as suas transações
+     * controladas por ela.
+     *
+     * @param connection
+     *        Conexão obtida através de {@link #getConnection()}.
+     *
+     * @throws SQLException
+     *         Se as alterações não puderem ser confirmadas.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void commit(Connection connection) throws SQLException {
+
+        if ( (pool != null) && (!connection.getAutoCommit()) ) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Cancela as alterações feitas em uma conexão obtida do pool.
+     *
+     * @param connection
+     *        Conexão obtida através de {@link #getConnection()} ou <tt>null</tt>.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private void rollback(Connection connection) {
+
+        if ( (pool == null) || (connection == null) ) {
+            return;
+        }
+
+        try {
+
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+
+        } catch (SQLException e) {
+
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Retorna um ResultSet que, ao ser fechado, devolve a sua conexão ao pool.
+     *
+     * @param rs
+     *        ResultSet original.
+     *
+     * @param cs
+     *        Comando que originou o ResultSet.
+     *
+     * @param connection
+     *        Conexão obtida do pool.
+     *
+     * @return Um ResultSet.
+     *
+     * @since 1.5
+     *
+     * @author Roberto Vezzoni
+     */
+    private ResultSet releaseOnClose(final ResultSet rs, final CallableStatement cs, final Connection connection) {
+
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class[] { ResultSet.class },
+                new InvocationHandler() {
+
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+                        try {
+
+                            return method.invoke(rs, args);
+
+                        } catch (InvocationTargetException e) {
+
+                            throw e.getCause();
+
+                        } finally {
+
+                            if (method.getName().equals("close")) {
+                                releaseConnection(connection, cs);
+                            }
+                        }
+                    }
+                });
     }
     
     /*
@@ -122,8 +297,17 @@ public class StoredProcedureSession implements StoredProcedureIntf {
 
         ResultSet result = null;
 
+        Connection connection = null;
+        CallableStatement cs = null;
+
+        CircuitBreaker breaker = getCircuitBreaker();
+
+        long start = ( (breaker != null) ? breaker.acquire() : 0 );
+
         try {
 
+            connection = getConnection();
+
             String call = "{call " + storedProcedureName;
             
             call += "(";
@@ -137,7 +321,7 @@ public class StoredProcedureSession implements StoredProcedureIntf {
             
             call += ")}";
             
-            CallableStatement cs = getConnection()
+            cs = connection
                     .prepareCall(
                         call, 
                         ResultSet.TYPE_SCROLL_INSENSITIVE, 
@@ -157,12 +341,26 @@ public class StoredProcedureSession implements StoredProcedureIntf {
                 
             result = cs.executeQuery();
 
+            if (breaker != null) {
+                breaker.success(start);
+            }
+
+            if (pool != null) {
+                result = releaseOnClose(result, cs, connection);
+            }
+
             return result;
             
         } catch (SQLException e) {
 
             e.printStackTrace();
 
+            if (breaker != null) {
+                breaker.failure(start, e);
+            }
+
+            releaseConnection(connection, cs);
+
             throw new PersistenceException(e);
         }
         
@@ -204,8 +402,17 @@ public class StoredProcedureSession implements StoredProcedureIntf {
      */
     public <T extends StoredProcedureParam> void execStoredProcedure(String storedProcedureName, List<T> outParams, Object ... inParams) throws VexPersistenceException {
 
+        Connection connection = null;
+        CallableStatement cs = null;
+
+        CircuitBreaker breaker = getCircuitBreaker();
+
+        long start = ( (breaker != null) ? breaker.acquire() : 0 );
+
         try {
 
+            connection = getConnection();
+
             String call = "{call " + storedProcedureName;
             
             call += "(";
@@ -219,7 +426,7 @@ public class StoredProcedureSession implements StoredProcedureIntf {
             
             call += ")}";
             
-            CallableStatement cs = getConnection()
+            cs = connection
                     .prepareCall(
                         call, 
                         ResultSet.TYPE_SCROLL_INSENSITIVE, 
@@ -239,11 +446,27 @@ public class StoredProcedureSession implements StoredProcedureIntf {
                 
             cs.execute();
 
+            commit(connection);
+
+            if (breaker != null) {
+                breaker.success(start);
+            }
+
         } catch (SQLException e) {
 
             e.printStackTrace();
 
+            rollback(connection);
+
+            if (breaker != null) {
+                breaker.failure(start, e);
+            }
+
             throw new VexPersistenceException(e);
+
+        } finally {
+
+            releaseConnection(connection, cs);
         }
         
     }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.cache;
+
+import br.com.vexit.vexpersistence.Pessoa;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da admissão e das marcas de invalidação do
+ * {@link EntityCache <tt>EntityCache</tt>}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class EntityCacheTest {
+
+    // capacidade de 10 entidades: janela de 1 e área principal de 9.
+    private static final int MAXIMUM_SIZE = 10;
+
+    private EntityCache cache;
+
+    @Entity
+    public static class Cidade implements Serializable {
+
+        private String nome;
+
+        public Cidade() {
+        }
+
+        public Cidade(String nome) {
+            this.nome = nome;
+        }
+
+        public String getNome() {
+            return nome;
+        }
+
+        public void setNome(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    @Entity
+    public static class Capital extends Cidade {
+
+        public Capital() {
+        }
+
+        public Capital(String nome) {
+            super(nome);
+        }
+    }
+
+    @Before
+    public void setUp() {
+
+        cache = new EntityCache(MAXIMUM_SIZE);
+
+        cache.enable(Cidade.class, 0, TimeUnit.SECONDS);
+        cache.enable(Pessoa.class, 0, TimeUnit.SECONDS);
+    }
+
+    private void put(Object id) {
+
+        cache.put(Cidade.class, id, new Cidade("Cidade " + id), cache.mark(Cidade.class));
+    }
+
+    private void read(Object id, int times) {
+
+        for (int i = 0; i < times; i++) {
+            cache.get(Cidade.class, id);
+        }
+    }
+
+    @Test
+    public void returnsCopiesOfStoredEntity() {
+
+        Cidade cidade = new Cidade("Santos");
+
+        cache.put(Cidade.class, 1, cidade, cache.mark(Cidade.class));
+
+        cidade.setNome("Alterada");
+
+        Cidade first = cache.get(Cidade.class, 1);
+
+        assertEquals("Santos", first.getNome());
+
+        first.setNome("Alterada");
+
+        Cidade second = cache.get(Cidade.class, 1);
+
+        assertNotSame(first, second);
+        assertEquals("Santos", second.getNome());
+    }
+
+    @Test
+    public void ignoresClassesNotEnabled() {
+
+        cache.disable(Cidade.class);
+
+        put(1);
+
+        assertFalse(cache.isCacheable(Cidade.class));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void keepsFrequentEntitiesDuringScan() {
+
+        for (int id = 1; id <= MAXIMUM_SIZE; id++) {
+            put(id);
+        }
+
+        for (int id = 1; id <= MAXIMUM_SIZE; id++) {
+            read(id, 5);
+        }
+
+        // entidades lidas uma única vez não substituem as entidades frequentes.
+        for (int id = 100; id < 200; id++) {
+            put(id);
+        }
+
+        for (int id = 1; id < MAXIMUM_SIZE; id++) {
+            assertNotNull("id " + id, cache.get(Cidade.class, id));
+        }
+
+        for (int id = 100; id < 199; id++) {
+            assertNull("id " + id, cache.get(Cidade.class, id));
+        }
+
+        assertEquals(MAXIMUM_SIZE, cache.size());
+    }
+
+    @Test
+    public void admitsFrequentEntityOverLeastRecentVictim() {
+
+        for (int id = 1; id <= MAXIMUM_SIZE; id++) {
+            put(id);
+        }
+
+        // os acessos são contados mesmo antes da entidade estar no cache.
+        read(1000, 5);
+
+        put(1000);
+        put(1001);
+
+        assertNotNull(cache.get(Cidade.class, 1000));
+        assertNull(cache.get(Cidade.class, 1));
+        assertEquals(MAXIMUM_SIZE, cache.size());
+    }
+
+    @Test
+    public void rejectsPutAfterInvalidationOfSameHierarchy() {
+
+        long mark = cache.mark(Capital.class);
+
+        cache.invalidate(Cidade.class, 2);
+
+        cache.put(Capital.class, 1, new Capital("Brasília"), mark);
+
+        assertNull(cache.get(Capital.class, 1));
+
+        cache.put(Capital.class, 1, new Capital("Brasília"), cache.mark(Capital.class));
+
+        assertNotNull(cache.get(Capital.class, 1));
+    }
+
+    @Test
+    public void acceptsPutAfterInvalidationOfOtherHierarchy() {
+
+        long mark = cache.mark(Cidade.class);
+
+        cache.invalidate(Pessoa.class, Long.valueOf(1));
+        cache.invalidateAll(Pessoa.class);
+
+        assertEquals(mark, cache.mark(Cidade.class));
+
+        cache.put(Cidade.class, 1, new Cidade("Santos"), mark);
+
+        assertNotNull(cache.get(Cidade.class, 1));
+    }
+
+    @Test
+    public void rejectsPutAfterInvalidateAll() {
+
+        long mark = cache.mark(Cidade.class);
+
+        cache.invalidateAll(Cidade.class);
+
+        cache.put(Cidade.class, 1, new Cidade("Santos"), mark);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidatesSingleEntity() {
+
+        put(1);
+        put(2);
+
+        cache.invalidate(Cidade.class, 1);
+
+        assertNull(cache.get(Cidade.class, 1));
+        assertNotNull(cache.get(Cidade.class, 2));
+        assertEquals(1, cache.getStats().getInvalidationCount());
+    }
+
+    @Test
+    public void invalidatesAllOfSubclassOnly() {
+
+        put(1);
+
+        cache.put(Capital.class, 2, new Capital("Brasília"), cache.mark(Capital.class));
+
+        cache.invalidateAll(Capital.class);
+
+        assertNotNull(cache.get(Cidade.class, 1));
+        assertNull(cache.get(Cidade.class, 2));
+
+        cache.invalidateAll(Cidade.class);
+
+        assertNull(cache.get(Cidade.class, 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void doesNotReturnSuperclassEntryForSubclass() {
+
+        put(1);
+
+        assertNull(cache.get(Capital.class, 1));
+        assertNotNull(cache.get(Cidade.class, 1));
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import br.com.vexit.vexpersistence.exception.CircuitBreakerOpenException;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes das transições de estado do
+ * {@link CircuitBreaker <tt>CircuitBreaker</tt>}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class CircuitBreakerTest {
+
+    private static final long OPEN_TIMEOUT = 50;
+
+    private CircuitBreaker breaker;
+
+    @After
+    public void tearDown() {
+
+        if (breaker != null) {
+            breaker.close();
+        }
+    }
+
+    private CircuitBreaker create(Runnable probe) {
+
+        breaker = new CircuitBreaker("test", probe);
+
+        breaker.setWindowSize(4);
+        breaker.setMinimumCalls(4);
+        breaker.setFailureRateThreshold(50);
+        breaker.setOpenTimeout(OPEN_TIMEOUT);
+
+        return breaker;
+    }
+
+    private void succeeded(int times) {
+
+        for (int i = 0; i < times; i++) {
+            breaker.success(breaker.acquire());
+        }
+    }
+
+    private void failed(int times) {
+
+        for (int i = 0; i < times; i++) {
+            breaker.failure(breaker.acquire(), new PersistenceException("indisponível"));
+        }
+    }
+
+    private void await(CircuitBreaker.State state) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while ( (breaker.getState() != state) && (System.currentTimeMillis() < deadline) ) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(state, breaker.getState());
+    }
+
+    private void assertRejected() {
+
+        try {
+
+            breaker.acquire();
+
+            fail("a operação deveria ter sido recusada");
+
+        } catch (CircuitBreakerOpenException e) {
+        }
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+
+        create(null);
+
+        failed(3);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensWhenFailureRateReachesThreshold() {
+
+        create(null);
+
+        succeeded(2);
+        failed(2);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenCount());
+
+        assertRejected();
+
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRateThreshold() {
+
+        create(null);
+
+        succeeded(3);
+        failed(1);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void ignoresBusinessFailures() {
+
+        create(null);
+
+        for (int i = 0; i < 4; i++) {
+            breaker.failure(breaker.acquire(), new EntityNotFoundException());
+        }
+
+        for (int i = 0; i < 4; i++) {
+            breaker.failure(breaker.acquire(), new PersistenceException(new SQLException("duplicada", "23505")));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensWhenSlowCallRateReachesThreshold() {
+
+        create(null);
+
+        breaker.setSlowCallThreshold(10);
+        breaker.setSlowCallRateThreshold(50);
+
+        long slow = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20);
+
+        breaker.success(slow);
+        breaker.success(slow);
+
+        succeeded(2);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrialOperation() throws InterruptedException {
+
+        create(null);
+
+        failed(4);
+
+        assertRejected();
+
+        Thread.sleep(OPEN_TIMEOUT * 2);
+
+        // somente a primeira operação após o tempo de abertura é admitida.
+        long start = breaker.acquire();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertRejected();
+
+        breaker.success(start);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        succeeded(1);
+    }
+
+    @Test
+    public void reopensAfterFailedTrialOperation() throws InterruptedException {
+
+        create(null);
+
+        failed(4);
+
+        Thread.sleep(OPEN_TIMEOUT * 2);
+
+        breaker.failure(breaker.acquire(), new PersistenceException("indisponível"));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+
+        assertRejected();
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbe() throws InterruptedException {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        create(new Runnable() {
+
+            public void run() {
+
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        failed(4);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // com sondagem, nenhuma operação é admitida no estado meio-aberto.
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertRejected();
+
+        release.countDown();
+
+        await(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void reopensAfterFailedProbe() throws InterruptedException {
+
+        final AtomicBoolean available = new AtomicBoolean();
+        final CountDownLatch probed = new CountDownLatch(2);
+
+        create(new Runnable() {
+
+            public void run() {
+
+                probed.countDown();
+
+                if (!available.get()) {
+                    throw new PersistenceException("indisponível");
+                }
+            }
+        });
+
+        failed(4);
+
+        // a primeira sondagem falha e reabre o circuito, agendando uma nova sondagem.
+        assertTrue(probed.await(5, TimeUnit.SECONDS));
+
+        assertTrue(breaker.getOpenCount() >= 2);
+
+        available.set(true);
+
+        await(CircuitBreaker.State.CLOSED);
+    }
+
+}
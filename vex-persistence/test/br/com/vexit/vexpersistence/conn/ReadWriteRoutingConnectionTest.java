@@ -0,0 +1,280 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.conn;
+
+import br.com.vexit.vexpersistence.LocalSessionFacade;
+import br.com.vexit.vexpersistence.Pessoa;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import br.com.vexit.vexpersistence.dao.intf.DAOIntf;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do direcionamento de leituras e escritas da
+ * {@link ReadWriteRoutingConnection <tt>ReadWriteRoutingConnection</tt>}.
+ * <p>
+ * A primária e a réplica são bancos H2 em memória independentes, sem
+ * replicação entre eles: uma entidade gravada só é encontrada por uma leitura
+ * que foi direcionada para a primária.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class ReadWriteRoutingConnectionTest {
+
+    private static final String PERSISTENCE_UNIT_NAME = "vexpersistence-test";
+
+    private static LocalPersistenceConnection primary;
+    private static LocalPersistenceConnection replica;
+
+    private static long sequence;
+
+    private ReadWriteRoutingConnection conn;
+    private DAOIntf dao;
+
+    @BeforeClass
+    public static void startup() {
+
+        primary = connect("primary");
+        replica = connect("replica");
+    }
+
+    @AfterClass
+    public static void shutdown() {
+
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    private static LocalPersistenceConnection connect(String name) {
+
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        properties.put(ConnectionPool.UNIT, name);
+
+        return new LocalPersistenceConnection(PERSISTENCE_UNIT_NAME, properties);
+    }
+
+    @Before
+    public void setUp() {
+
+        conn = new ReadWriteRoutingConnection(primary, replica);
+        conn.setPinning(true);
+
+        dao = LocalSessionFacade.getInstance(conn).getDAOFactory().createDAO();
+    }
+
+    private Pessoa save() {
+
+        return dao.save(new Pessoa(Long.valueOf(++sequence), "Pessoa " + sequence));
+    }
+
+    private static Pessoa find(PersistenceConnection target, Long id) {
+
+        return LocalSessionFacade.getInstance(target).getDAOFactory().createDAO().get(Pessoa.class, id);
+    }
+
+    @Test
+    public void routesWritesToPrimary() {
+
+        Pessoa pessoa = save();
+
+        assertNotNull(find(primary, pessoa.getId()));
+        assertNull(find(replica, pessoa.getId()));
+    }
+
+    @Test
+    public void routesReadsToReplica() {
+
+        assertSame(replica, conn.route(true));
+        conn.release(replica);
+
+        assertSame(primary, conn.route(false));
+
+        Pessoa pessoa = save();
+
+        assertNull(dao.get(Pessoa.class, pessoa.getId()));
+    }
+
+    @Test
+    public void pinsReadsAfterWriteInsidePinScope() {
+
+        ReadWriteRoutingConnection.PinScope scope = conn.pin();
+
+        try {
+
+            assertFalse(conn.isPinned());
+
+            Pessoa pessoa = save();
+
+            assertTrue(conn.isPinned());
+            assertNotNull(dao.get(Pessoa.class, pessoa.getId()));
+
+        } finally {
+
+            scope.close();
+        }
+
+        assertFalse(conn.isPinned());
+    }
+
+    @Test
+    public void releasesPinOnClose() {
+
+        Pessoa pessoa;
+
+        ReadWriteRoutingConnection.PinScope scope = conn.pin();
+
+        try {
+
+            pessoa = save();
+
+        } finally {
+
+            scope.close();
+        }
+
+        assertNull(dao.get(Pessoa.class, pessoa.getId()));
+    }
+
+    @Test
+    public void keepsPinUntilOutermostScopeCloses() {
+
+        ReadWriteRoutingConnection.PinScope outer = conn.pin();
+
+        try {
+
+            ReadWriteRoutingConnection.PinScope inner = conn.pin();
+
+            Pessoa pessoa;
+
+            try {
+
+                pessoa = save();
+
+            } finally {
+
+                inner.close();
+            }
+
+            assertTrue(conn.isPinned());
+            assertNotNull(dao.get(Pessoa.class, pessoa.getId()));
+
+        } finally {
+
+            outer.close();
+        }
+
+        assertFalse(conn.isPinned());
+    }
+
+    @Test
+    public void unpinReturnsReadsToReplica() {
+
+        ReadWriteRoutingConnection.PinScope scope = conn.pin();
+
+        try {
+
+            Pessoa pessoa = save();
+
+            conn.unpin();
+
+            assertNull(dao.get(Pessoa.class, pessoa.getId()));
+
+        } finally {
+
+            scope.close();
+        }
+    }
+
+    @Test
+    public void doesNotPinOutsidePinScope() {
+
+        Pessoa pessoa = save();
+
+        assertFalse(conn.isPinned());
+        assertNull(dao.get(Pessoa.class, pessoa.getId()));
+    }
+
+    @Test
+    public void doesNotPinWhenPinningIsOff() {
+
+        conn.setPinning(false);
+
+        ReadWriteRoutingConnection.PinScope scope = conn.pin();
+
+        try {
+
+            Pessoa pessoa = save();
+
+            assertFalse(conn.isPinned());
+            assertNull(dao.get(Pessoa.class, pessoa.getId()));
+
+        } finally {
+
+            scope.close();
+        }
+    }
+
+    @Test
+    public void routesReadsInsideUnitOfWorkToPrimary() {
+
+        Pessoa pessoa;
+
+        conn.beginUnitOfWork();
+
+        try {
+
+            assertSame(primary, conn.route(true));
+
+            pessoa = save();
+
+            assertNotNull(dao.get(Pessoa.class, pessoa.getId()));
+
+            conn.endUnitOfWork(true);
+
+        } catch (RuntimeException e) {
+
+            conn.endUnitOfWork(false);
+
+            throw e;
+        }
+
+        assertSame(replica, conn.route(true));
+        conn.release(replica);
+
+        assertNull(dao.get(Pessoa.class, pessoa.getId()));
+        assertNotNull(find(primary, pessoa.getId()));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes dos comandos de inclusão ou atualização montados pelo
+ * {@link DatabaseDialect <tt>DatabaseDialect</tt>}.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class DatabaseDialectTest {
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "nome", "idade");
+
+    private static final String[] KEYS = { "id" };
+
+    private static final List<String> UPDATES = Arrays.asList("nome", "idade");
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void buildsPostgreSQLInsertOnConflictUpdate() {
+
+        assertEquals("insert into pessoa (id, nome, idade) values (?, ?, ?)"
+                + " on conflict (id) do update set nome = excluded.nome, idade = excluded.idade",
+                DatabaseDialect.POSTGRESQL.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+    }
+
+    @Test
+    public void buildsPostgreSQLInsertOnConflictDoNothing() {
+
+        assertEquals("insert into pessoa (id, nome, idade) values (?, ?, ?) on conflict (id) do nothing",
+                DatabaseDialect.POSTGRESQL.upsert("pessoa", COLUMNS, KEYS, NONE));
+    }
+
+    @Test
+    public void listsCompositeKeyInPostgreSQLConflictTarget() {
+
+        assertEquals("insert into item (pedido, linha, qtde) values (?, ?, ?)"
+                + " on conflict (pedido, linha) do update set qtde = excluded.qtde",
+                DatabaseDialect.POSTGRESQL.upsert("item", Arrays.asList("pedido", "linha", "qtde"),
+                        new String[] { "pedido", "linha" }, Arrays.asList("qtde")));
+    }
+
+    @Test
+    public void buildsMySQLInsertOnDuplicateKeyUpdate() {
+
+        assertEquals("insert into pessoa (id, nome, idade) values (?, ?, ?)"
+                + " on duplicate key update nome = values(nome), idade = values(idade)",
+                DatabaseDialect.MYSQL.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+    }
+
+    @Test
+    public void assignsKeyToItselfInMySQLWithoutUpdates() {
+
+        assertEquals("insert into pessoa (id, nome, idade) values (?, ?, ?) on duplicate key update id = id",
+                DatabaseDialect.MYSQL.upsert("pessoa", COLUMNS, KEYS, NONE));
+    }
+
+    @Test
+    public void buildsH2MergeByKey() {
+
+        assertEquals("merge into pessoa (id, nome, idade) key (id) values (?, ?, ?)",
+                DatabaseDialect.H2.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+
+        assertEquals("merge into item (pedido, linha, qtde) key (pedido, linha) values (?, ?, ?)",
+                DatabaseDialect.H2.upsert("item", Arrays.asList("pedido", "linha", "qtde"),
+                        new String[] { "pedido", "linha" }, Arrays.asList("qtde")));
+    }
+
+    @Test
+    public void returnsNullWithoutUpsertStatement() {
+
+        assertNull(DatabaseDialect.ORACLE.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+        assertNull(DatabaseDialect.SQLSERVER.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+        assertNull(DatabaseDialect.DB2.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+        assertNull(DatabaseDialect.GENERIC.upsert("pessoa", COLUMNS, KEYS, UPDATES));
+    }
+
+    @Test
+    public void buildsPlainInsert() {
+
+        assertEquals("insert into pessoa (id, nome, idade) values (?, ?, ?)",
+                DatabaseDialect.insert(new StringBuilder(), "pessoa", COLUMNS).toString());
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2008 Roberto Vezzoni
+ *
+ * Este arquivo é parte da biblioteca vex-persistence.
+ *
+ * vex-persistence é um software livre; você pode redistribuí-la e/ou
+ * modificá-la dentro dos termos da Licença Pública Geral Menor GNU como
+ * publicada pela Fundação do Software Livre (FSF); na versão 2 da
+ * Licença, ou (na sua opnião) qualquer versão.
+ *
+ * Esta biblioteca é distribuida na esperança que possa ser útil,
+ * mas SEM NENHUMA GARANTIA; sem uma garantia implícita de ADEQUAÇÃO a qualquer
+ * MERCADO ou APLICAÇÃO EM PARTICULAR. Veja a
+ * Licença Pública Geral Menor GNU para mais detalhes.
+ *
+ * Você deve ter recebido uma cópia da Licença Pública Geral Menor GNU
+ * junto com esta biblioteca, se não, escreva para a Fundação do Software
+ * Livre(FSF) Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package br.com.vexit.vexpersistence.dao.impl;
+
+import br.com.vexit.vexpersistence.Pessoa;
+import br.com.vexit.vexpersistence.conn.LocalPersistenceConnection;
+import br.com.vexit.vexpersistence.conn.pool.ConnectionPool;
+import br.com.vexit.vexpersistence.dao.intf.Page;
+import br.com.vexit.vexpersistence.exception.VexPersistenceException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da paginação por chave da {@link KeysetQuery <tt>KeysetQuery</tt>}
+ * sobre um banco H2 em memória, com valores repetidos no atributo de
+ * ordenação desempatados pela chave primária.
+ *
+ * @version 1.5, 17/10/26
+ *
+ * @since 1.5
+ *
+ * @author Roberto Vezzoni
+ */
+public class KeysetQueryTest {
+
+    // ordem esperada por (nome, id): Ana 2, 5, 7; Bruno 1, 4; Carla 3, 6.
+    private static final String[] NOMES = { "Bruno", "Ana", "Carla", "Bruno", "Ana", "Carla", "Ana" };
+
+    private static final Long[] ORDEM = { 2L, 5L, 7L, 1L, 4L, 3L, 6L };
+
+    private static LocalPersistenceConnection conn;
+
+    private EntityManager em;
+
+    @BeforeClass
+    public static void startup() {
+
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put("hibernate.connection.url", "jdbc:h2:mem:keyset;DB_CLOSE_DELAY=-1");
+        properties.put(ConnectionPool.UNIT, "keyset");
+
+        conn = new LocalPersistenceConnection("vexpersistence-test", properties);
+
+        EntityManager em = conn.createEntityManager();
+
+        try {
+
+            em.getTransaction().begin();
+
+            for (int i = 0; i < NOMES.length; i++) {
+                em.persist(new Pessoa(Long.valueOf(i + 1), NOMES[i]));
+            }
+
+            em.getTransaction().commit();
+
+        } finally {
+
+            em.close();
+        }
+    }
+
+    @AfterClass
+    public static void shutdown() {
+
+        conn.shutdown();
+    }
+
+    @Before
+    public void setUp() {
+
+        em = conn.createEntityManager();
+    }
+
+    @After
+    public void tearDown() {
+
+        em.close();
+    }
+
+    private static Field field(String name) throws NoSuchFieldException {
+
+        return Pessoa.class.getDeclaredField(name);
+    }
+
+    private List<Long> readAll(KeysetQuery query, int limit) {
+
+        List<Long> ids = new ArrayList<Long>();
+
+        Object afterKey = null;
+
+        do {
+
+            Page<Pessoa> page = query.getPage(em, afterKey, limit);
+
+            assertTrue(page.size() <= limit);
+
+            for (Pessoa p: page.getContent()) {
+                ids.add(p.getId());
+            }
+
+            afterKey = page.getNextKey();
+
+            em.clear();
+
+        } while (afterKey != null);
+
+        return ids;
+    }
+
+    @Test
+    public void breaksTiesByPrimaryKeyAcrossPages() throws Exception {
+
+        KeysetQuery query = new KeysetQuery(Pessoa.class, field("nome"));
+
+        for (int limit = 1; limit <= ORDEM.length + 1; limit++) {
+            assertArrayEquals("limit " + limit, ORDEM, readAll(query, limit).toArray());
+        }
+    }
+
+    @Test
+    public void returnsNameAndIdAsNextKey() throws Exception {
+
+        Page<Pessoa> page = new KeysetQuery(Pessoa.class, field("nome")).getPage(em, null, 2);
+
+        assertTrue(page.hasNext());
+        assertArrayEquals(new Object[] { "Ana", 5L }, page.getNextKey());
+
+        page = new KeysetQuery(Pessoa.class, field("nome")).getPage(em, page.getNextKey(), 2);
+
+        assertEquals(Long.valueOf(7), page.getContent().get(0).getId());
+        assertEquals(Long.valueOf(1), page.getContent().get(1).getId());
+    }
+
+    @Test
+    public void doesNotRepeatPrimaryKeyAlreadyInOrder() throws Exception {
+
+        KeysetQuery query = new KeysetQuery(Pessoa.class, field("nome"), field("id"));
+
+        Page<Pessoa> page = query.getPage(em, null, 3);
+
+        assertEquals(2, page.getNextKey().length);
+
+        assertArrayEquals(ORDEM, readAll(query, 3).toArray());
+    }
+
+    @Test
+    public void acceptsSingleValueKeyForPrimaryKeyOrder() throws Exception {
+
+        Page<Pessoa> page = new KeysetQuery(Pessoa.class, field("id")).getPage(em, Long.valueOf(5), 10);
+
+        assertFalse(page.hasNext());
+        assertEquals(2, page.size());
+        assertEquals(Long.valueOf(6), page.getContent().get(0).getId());
+        assertEquals(Long.valueOf(7), page.getContent().get(1).getId());
+    }
+
+    @Test
+    public void returnsLastPageWithoutNextKey() throws Exception {
+
+        Page<Pessoa> page = new KeysetQuery(Pessoa.class, field("nome")).getPage(em, new Object[] { "Carla", 3L }, 1);
+
+        assertEquals(1, page.size());
+        assertEquals(Long.valueOf(6), page.getContent().get(0).getId());
+        assertFalse(page.hasNext());
+        assertNull(page.getNextKey());
+    }
+
+    @Test(expected = VexPersistenceException.class)
+    public void rejectsKeyWithWrongLength() throws Exception {
+
+        new KeysetQuery(Pessoa.class, field("nome")).getPage(em, "Ana", 2);
+    }
+
+}